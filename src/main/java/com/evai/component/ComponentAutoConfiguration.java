@@ -1,22 +1,53 @@
 package com.evai.component;
 
 import com.evai.component.cache.*;
+import com.evai.component.cache.bloom.BloomFilters;
+import com.evai.component.cache.codec.CacheCodec;
+import com.evai.component.cache.codec.CacheCodecs;
+import com.evai.component.cache.codec.CborCacheCodec;
+import com.evai.component.cache.codec.JsonCacheCodec;
+import com.evai.component.cache.codec.SmileCacheCodec;
+import com.evai.component.cache.delay.DelayedInvalidator;
+import com.evai.component.cache.enums.KeyHashAlgorithm;
+import com.evai.component.cache.flight.DistributedSingleFlight;
+import com.evai.component.cache.flight.SingleFlight;
+import com.evai.component.cache.key.KeyHasher;
+import com.evai.component.cache.key.Md5KeyHasher;
+import com.evai.component.cache.key.Murmur3KeyHasher;
+import com.evai.component.cache.hotkey.HotKeyDetector;
+import com.evai.component.cache.hotkey.HotKeyEndpoint;
+import com.evai.component.cache.local.DiskCache;
+import com.evai.component.cache.local.NearCache;
+import com.evai.component.cache.metrics.CacheMetrics;
+import com.evai.component.cache.namespace.NamespaceGeneration;
+import com.evai.component.cache.purge.KeyPurger;
+import com.evai.component.cache.script.RedisScripts;
+import com.evai.component.cache.refresh.RefreshScheduler;
 import com.evai.component.cache.lock.CacheLock;
 import com.evai.component.cache.lock.RedisLock;
+import com.evai.component.cache.ttl.AdaptiveTtl;
 import com.evai.component.cache.utils.CacheKeyUtil;
-import com.evai.component.utils.concurrent.ThreadPoolUtil;
+import com.evai.component.cache.version.VersionModeVerifier;
+import com.evai.component.cache.warm.CacheWarmer;
+import com.evai.component.cache.writebehind.WriteBehindBuffer;
+import com.evai.component.mybatis.MybatisBatchExecutor;
+import org.apache.ibatis.session.SqlSessionFactory;
 import org.redisson.api.RedissonClient;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author Evai
@@ -46,13 +77,19 @@ public class ComponentAutoConfiguration {
     }
 
     @Bean
-    public ExecutorService cacheExecutor(CacheProperties cacheProperties) {
-        return ThreadPoolUtil.newThreadPoolExecutor("redis-cacheExecutor", ThreadPoolUtil.CORE_POOL_SIZE, ThreadPoolUtil.CORE_POOL_SIZE * 2, 30L, TimeUnit.SECONDS, 500, new ThreadPoolExecutor.AbortPolicy());
+    @ConditionalOnMissingBean(KeyHasher.class)
+    public KeyHasher keyHasher(CacheProperties cacheProperties) {
+        return cacheProperties.getKey().getHashAlgorithm() == KeyHashAlgorithm.MD5 ? new Md5KeyHasher() : new Murmur3KeyHasher();
     }
 
     @Bean
-    public CacheKeyUtil cacheKeyUtil(CacheProperties cacheProperties) {
-        return new CacheKeyUtil(cacheProperties);
+    public NamespaceGeneration namespaceGeneration(CacheProperties cacheProperties) {
+        return new NamespaceGeneration(cacheProperties, redisTemplate);
+    }
+
+    @Bean
+    public CacheKeyUtil cacheKeyUtil(CacheProperties cacheProperties, KeyHasher keyHasher, NamespaceGeneration namespaceGeneration) {
+        return new CacheKeyUtil(cacheProperties, keyHasher, namespaceGeneration);
     }
 
     @Bean
@@ -66,18 +103,149 @@ public class ComponentAutoConfiguration {
     }
 
     @Bean
-    public CacheComponent cacheComponent(RedisService redisService, CacheProperties cacheProperties, CacheKeyUtil cacheKeyUtil, CacheLock cacheLock, ExecutorService cacheExecutor) {
-        return new CacheComponent(redisService, cacheProperties, redisTemplate, cacheKeyUtil, cacheLock, cacheExecutor);
+    public CacheMetrics cacheMetrics() {
+        return new CacheMetrics();
+    }
+
+    @Bean
+    public SingleFlight singleFlight(CacheProperties cacheProperties, CacheMetrics cacheMetrics) {
+        return new SingleFlight(cacheProperties, cacheMetrics);
+    }
+
+    @Bean
+    public DistributedSingleFlight distributedSingleFlight(CacheProperties cacheProperties, CacheLock cacheLock, CacheMetrics cacheMetrics) {
+        return new DistributedSingleFlight(cacheProperties, cacheLock, redisTemplate, cacheMetrics);
+    }
+
+    @Bean
+    public RefreshScheduler refreshScheduler(CacheProperties cacheProperties, CacheMetrics cacheMetrics) {
+        return new RefreshScheduler(cacheProperties, redisTemplate, cacheMetrics);
+    }
+
+    /**
+     * 兼容注入 cacheExecutor 的代码，提交的任务和缓存刷新任务共用刷新线程池
+     *
+     * @deprecated 缓存刷新已改由 RefreshScheduler 调度，业务任务请使用自己的线程池
+     */
+    @Deprecated
+    @Bean
+    public ExecutorService cacheExecutor(RefreshScheduler refreshScheduler) {
+        return refreshScheduler.asExecutorService();
+    }
+
+    @Bean
+    public KeyPurger keyPurger(CacheProperties cacheProperties, RedisService redisService) {
+        return new KeyPurger(cacheProperties, redisService, redisTemplate);
     }
 
     @Bean
-    public CacheAbleAspect cacheAbleAspect(CacheComponent cacheComponent, CacheKeyUtil cacheKeyUtil) {
-        return new CacheAbleAspect(cacheComponent, cacheKeyUtil);
+    public BloomFilters bloomFilters(CacheProperties cacheProperties, CacheMetrics cacheMetrics) {
+        return new BloomFilters(cacheProperties, redisTemplate, cacheMetrics);
     }
 
     @Bean
-    public CacheAbleEntityAspect cacheAbleEntityAspect(CacheComponent cacheComponent, CacheKeyUtil cacheKeyUtil) {
-        return new CacheAbleEntityAspect(cacheComponent, cacheKeyUtil);
+    public RedisScripts redisScripts() {
+        return new RedisScripts(redisTemplate);
+    }
+
+    @Bean
+    public DelayedInvalidator delayedInvalidator(CacheProperties cacheProperties, RedisScripts redisScripts, NearCache nearCache) {
+        return new DelayedInvalidator(cacheProperties, redisTemplate, redisScripts, nearCache);
+    }
+
+    @Bean
+    public HotKeyDetector hotKeyDetector(CacheProperties cacheProperties) {
+        return new HotKeyDetector(cacheProperties);
+    }
+
+    @Bean
+    public DiskCache diskCache(CacheProperties cacheProperties) {
+        return new DiskCache(cacheProperties);
+    }
+
+    @Bean
+    public NearCache nearCache(CacheProperties cacheProperties, DiskCache diskCache) {
+        return new NearCache(cacheProperties, redisTemplate, diskCache);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer cacheMessageListenerContainer(RedisConnectionFactory redisConnectionFactory, NearCache nearCache, DistributedSingleFlight distributedSingleFlight) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(distributedSingleFlight, new ChannelTopic(CacheConstant.COMPUTED_CHANNEL));
+        if (nearCache.isSubscribed()) {
+            container.addMessageListener(nearCache, Arrays.asList(new ChannelTopic(CacheConstant.LOCAL_INVALIDATE_CHANNEL), new ChannelTopic(CacheConstant.LOCAL_INVALIDATE_PATTERN_CHANNEL)));
+        }
+        return container;
+    }
+
+    @Bean
+    public JsonCacheCodec jsonCacheCodec() {
+        return new JsonCacheCodec();
+    }
+
+    @Bean
+    public SmileCacheCodec smileCacheCodec() {
+        return new SmileCacheCodec();
+    }
+
+    @Bean
+    public CborCacheCodec cborCacheCodec() {
+        return new CborCacheCodec();
+    }
+
+    @Bean
+    public CacheCodecs cacheCodecs(List<CacheCodec> cacheCodecs, CacheProperties cacheProperties, CacheMetrics cacheMetrics) {
+        return new CacheCodecs(cacheCodecs, cacheProperties, cacheMetrics);
+    }
+
+    @Bean
+    public CacheComponent cacheComponent(RedisService redisService, CacheProperties cacheProperties, CacheKeyUtil cacheKeyUtil, RefreshScheduler refreshScheduler, NearCache nearCache, SingleFlight singleFlight, DistributedSingleFlight distributedSingleFlight, CacheCodecs cacheCodecs, NamespaceGeneration namespaceGeneration, KeyPurger keyPurger, BloomFilters bloomFilters, RedisScripts redisScripts, DelayedInvalidator delayedInvalidator, DiskCache diskCache, HotKeyDetector hotKeyDetector) {
+        return new CacheComponent(redisService, cacheProperties, redisTemplate, cacheKeyUtil, refreshScheduler, nearCache, singleFlight, distributedSingleFlight, cacheCodecs, namespaceGeneration, keyPurger, bloomFilters, redisScripts, delayedInvalidator, diskCache, hotKeyDetector);
+    }
+
+    @Bean
+    public CacheWarmer cacheWarmer(CacheProperties cacheProperties, CacheComponent cacheComponent, CacheKeyUtil cacheKeyUtil, ApplicationContext applicationContext) {
+        return new CacheWarmer(cacheProperties, cacheComponent, cacheKeyUtil, applicationContext);
+    }
+
+    @Bean
+    public VersionModeVerifier versionModeVerifier(CacheProperties cacheProperties, ApplicationContext applicationContext) {
+        return new VersionModeVerifier(cacheProperties, applicationContext);
+    }
+
+    @Bean
+    public AdaptiveTtl adaptiveTtl(CacheProperties cacheProperties) {
+        return new AdaptiveTtl(cacheProperties);
+    }
+
+    @Bean
+    public CacheAbleAspect cacheAbleAspect(CacheComponent cacheComponent, CacheKeyUtil cacheKeyUtil, AdaptiveTtl adaptiveTtl) {
+        return new CacheAbleAspect(cacheComponent, cacheKeyUtil, adaptiveTtl);
+    }
+
+    @Bean
+    public WriteBehindBuffer writeBehindBuffer(CacheProperties cacheProperties, RedisService redisService, RedisScripts redisScripts, NearCache nearCache, CacheKeyUtil cacheKeyUtil, CacheComponent cacheComponent, SqlSessionFactory sqlSessionFactory) {
+        return new WriteBehindBuffer(cacheProperties, redisTemplate, redisService, redisScripts, nearCache, cacheKeyUtil, new MybatisBatchExecutor(sqlSessionFactory), cacheComponent, sqlSessionFactory);
+    }
+
+    @Bean
+    public CacheAbleEntityAspect cacheAbleEntityAspect(CacheComponent cacheComponent, CacheKeyUtil cacheKeyUtil, WriteBehindBuffer writeBehindBuffer, AdaptiveTtl adaptiveTtl) {
+        return new CacheAbleEntityAspect(cacheComponent, cacheKeyUtil, writeBehindBuffer, adaptiveTtl);
+    }
+
+    /**
+     * 引入 actuator 时注册热点key监控端点
+     */
+    @Configuration
+    @ConditionalOnClass(Endpoint.class)
+    static class HotKeyEndpointConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public HotKeyEndpoint hotKeyEndpoint(HotKeyDetector hotKeyDetector) {
+            return new HotKeyEndpoint(hotKeyDetector);
+        }
     }
 
 }
@@ -4,14 +4,13 @@ import com.evai.component.cache.annotation.CacheAble;
 import com.evai.component.cache.enums.KeyFormat;
 import com.evai.component.cache.exception.IllegalAnnotationException;
 import com.evai.component.cache.exception.IllegalKeyIdException;
+import com.evai.component.cache.plan.CacheInvocationPlan;
+import com.evai.component.cache.ttl.AdaptiveTtl;
 import com.evai.component.cache.utils.CacheKeyUtil;
 import com.evai.component.utils.BeanUtil;
 import com.evai.component.utils.CommonUtil;
-import com.evai.component.utils.JacksonUtil;
-import com.fasterxml.jackson.databind.JavaType;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.Signature;
@@ -22,8 +21,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,6 +41,7 @@ public class CacheAbleAspect {
 
     private final CacheComponent cacheComponent;
     private final CacheKeyUtil cacheKeyUtil;
+    private final AdaptiveTtl adaptiveTtl;
 
     @Around(value = "@annotation(cacheAble)")
     public Object around(ProceedingJoinPoint pjp, CacheAble cacheAble) throws Throwable {
@@ -50,140 +51,81 @@ public class CacheAbleAspect {
         Signature signature = pjp.getSignature();
         MethodSignature methodSignature = (MethodSignature) signature;
 
-        int expiredSeconds = cacheKeyUtil.randomExpired(expired);
-
-        // 方法返回类型
-        Class returnType = methodSignature.getReturnType();
-
-        JavaType javaType;
-        if (Map.class.equals(returnType) || List.class.equals(returnType) || Set.class.equals(returnType)) {
-            Type[] types = BeanUtil.getMethodGenericClass(methodSignature);
-            Class[] classes = BeanUtil.toArray(types, Class.class);
-            javaType = JacksonUtil.getJavaType(returnType, classes);
-        } else {
-            javaType = JacksonUtil.getJavaType(returnType);
+        // 方法执行计划，keyId表达式及返回类型只解析一次
+        CacheInvocationPlan plan = cacheKeyUtil.getPlan(pjp, methodSignature, cacheAble);
+        String keyName = plan.getKeyName();
+        int expiredSeconds = adaptiveTtl.resolve(keyName, expired, cacheKeyUtil.randomExpired(expired));
+        if (cacheAble.batch()) {
+            return getCacheBatch(pjp, cacheAble, methodSignature, plan, expiredSeconds);
         }
+        String key = cacheKeyUtil.assembleFinalCacheKey(plan, pjp.getArgs());
+        String legacyKey = cacheKeyUtil.assembleLegacyCacheKey(plan, pjp.getArgs());
 
-        return cacheComponent.getCache(assembleFinalCacheKey(pjp, cacheAble, methodSignature), expiredSeconds, asyncSeconds, javaType, () -> this.proceed(pjp));
-    }
-
-    /**
-     * 执行业务逻辑
-     *
-     * @param pjp
-     * @return
-     */
-    private Object proceed(ProceedingJoinPoint pjp) {
-        try {
-            return pjp.proceed();
-        } catch (Throwable throwable) {
-            CommonUtil.doThrow(throwable);
-            return null;
-        }
+        adaptiveTtl.recordAccess(keyName, 1);
+        return cacheComponent.getCache(key, legacyKey, expiredSeconds, asyncSeconds, cacheAble.localSeconds(), cacheAble.missMode(), cacheAble.codec(), plan.getJavaType(), adaptiveTtl.timed(keyName, () -> this.proceed(pjp)));
     }
 
     /**
-     * 组合为最终的缓存key
+     * 按集合元素分别缓存
      *
      * @param pjp
      * @param cacheAble
      * @param methodSignature
+     * @param plan
+     * @param expiredSeconds
      * @return
-     * @throws IllegalAccessException
      */
-    private String assembleFinalCacheKey(ProceedingJoinPoint pjp, CacheAble cacheAble, MethodSignature methodSignature) throws IllegalAccessException {
-        // 去除所有空格
-        String keyId = cacheAble.keyId().replaceAll(CacheConstant.REG_SPACE, "");
-        if (StringUtils.isBlank(keyId)) {
-            throw new IllegalAnnotationException("缓存id不能为空");
+    @SuppressWarnings("unchecked")
+    private Object getCacheBatch(ProceedingJoinPoint pjp, CacheAble cacheAble, MethodSignature methodSignature, CacheInvocationPlan plan, int expiredSeconds) {
+        Object[] args = pjp.getArgs();
+        int index = plan.getFirstParamIndex();
+        if (index < 0 || (args[index] != null && !(args[index] instanceof Collection)) || !Map.class.isAssignableFrom(methodSignature.getReturnType())) {
+            throw new IllegalAnnotationException("按集合元素缓存时keyId必须为集合参数，且返回值为Map");
         }
-        // 完整的缓存keyName
-        String cacheKey = cacheKeyUtil.getCacheKeyName(cacheAble, pjp);
-        // 最终完整的缓存keyId
-        keyId = assembleCacheKeyId(pjp, keyId, methodSignature);
-        // 最终完整的key，cacheName + cacheKeyId
-        String finalKey = cacheKey + keyId;
-        log.debug("assembleFinalCacheKey finalKey: [{}]", finalKey);
-        return finalKey;
+        if (args[index] == null) {
+            return this.proceed(pjp);
+        }
+        // 去重，保持顺序
+        List<Object> elements = new ArrayList<>(new LinkedHashSet<>((Collection<Object>) args[index]));
+        Class<?> paramType = methodSignature.getParameterTypes()[index];
+        adaptiveTtl.recordAccess(plan.getKeyName(), elements.size());
+        return cacheComponent.getCacheBatch(elements, element -> cacheKeyUtil.assembleElementCacheKey(plan, args, index, element),
+                expiredSeconds, cacheAble.localSeconds(), cacheAble.codec(), plan.getJavaType().getContentType(),
+                missElements -> adaptiveTtl.load(plan.getKeyName(), missElements.size(),
+                        () -> (Map<Object, Object>) this.proceed(pjp, index, Set.class.isAssignableFrom(paramType) ? new LinkedHashSet<>(missElements) : missElements)));
     }
 
     /**
-     * 组合缓存id
+     * 替换集合参数后执行业务逻辑
      *
      * @param pjp
-     * @param keyId
-     * @param methodSignature
-     * @return String
-     * @throws IllegalAccessException
+     * @param index
+     * @param missElements
+     * @return
      */
-    private String assembleCacheKeyId(ProceedingJoinPoint pjp, String keyId, MethodSignature methodSignature) throws IllegalAccessException {
-        String[] parameterNames = methodSignature.getParameterNames();
-
-        // 表达式解析
-        Object[] args = pjp.getArgs();
-        // 分割keyId
-        String[] keyIdExp = keyId.split(CacheConstant.REG_PLUS);
-
-        StringBuilder keyIdValue = new StringBuilder(StringUtils.EMPTY);
-        // #user.id + #id
-        for (String target : keyIdExp) {
-            if (StringUtils.isNotBlank(target)) {
-                analyzeKeyIdExp(target, parameterNames, args, keyIdValue);
-                keyIdValue.append(CacheConstant.AND);
-            }
-        }
-        // 去除末尾连接符
-        if (keyIdValue.charAt(keyIdValue.length() - 1) == CacheConstant.AND) {
-            keyIdValue = new StringBuilder(keyIdValue.substring(0, keyIdValue.length() - 1));
+    private Object proceed(ProceedingJoinPoint pjp, int index, Collection<Object> missElements) {
+        Object[] args = pjp.getArgs().clone();
+        args[index] = missElements;
+        try {
+            return pjp.proceed(args);
+        } catch (Throwable throwable) {
+            CommonUtil.doThrow(throwable);
+            return null;
         }
-        // 转为MD5
-        keyIdValue.replace(0, keyIdValue.length(), CommonUtil.getStringMD5(keyIdValue.toString()));
-        return keyIdValue.toString();
     }
 
     /**
-     * 解析 keyId 表达式
+     * 执行业务逻辑
      *
-     * @param target
-     * @param parameterNames
-     * @param args
-     * @param keyIdValue
-     * @throws IllegalAccessException
+     * @param pjp
+     * @return
      */
-    private void analyzeKeyIdExp(String target, String[] parameterNames, Object[] args, StringBuilder keyIdValue) throws IllegalAccessException {
-        // #user.id + id
-        if (target.charAt(0) != CacheConstant.EL) {
-            // 不是表达式，直接赋值
-            keyIdValue.append(target);
-            return;
-        }
-        // 参数名称，去掉#
-        target = target.substring(1);
-        // user.id
-        String[] targetExp = target.split(CacheConstant.REG_DOT);
-        if (targetExp.length >= CacheConstant.KEY_LEN) {
-            String targetObj = targetExp[0];
-            String targetField = targetExp[1];
-            // 获取方法参数名称, user
-            int index = ArrayUtils.indexOf(parameterNames, targetObj);
-            if (index < 0) {
-                throw new IllegalArgumentException("未找到对应的方法参数名称，当前表达式为: #" + target);
-            }
-            // 获取对象的属性, id
-            Object object = args[index];
-            Object value = cacheKeyUtil.getFieldValue(object, targetObj, targetField);
-            String valueStr = BeanUtil.beanToString(value);
-            keyIdValue.append(valueStr);
-        } else {
-            // id 或 user
-            int index = ArrayUtils.indexOf(parameterNames, target);
-            if (index < 0) {
-                throw new IllegalArgumentException("未找到对应的方法参数名称，当前表达式为: #" + target);
-            }
-            // 直接得到方法参数对象
-            Object obj = args[index];
-            String valueStr = BeanUtil.beanToString(obj);
-            keyIdValue.append(valueStr);
+    private Object proceed(ProceedingJoinPoint pjp) {
+        try {
+            return pjp.proceed();
+        } catch (Throwable throwable) {
+            CommonUtil.doThrow(throwable);
+            return null;
         }
     }
 
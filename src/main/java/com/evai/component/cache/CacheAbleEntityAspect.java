@@ -2,7 +2,14 @@ package com.evai.component.cache;
 
 import com.evai.component.cache.annotation.CacheAbleEntity;
 import com.evai.component.cache.enums.CacheAction;
+import com.evai.component.cache.exception.IllegalAnnotationException;
+import com.evai.component.cache.exception.IllegalKeyIdException;
+import com.evai.component.cache.plan.CacheInvocationPlan;
+import com.evai.component.cache.ttl.AdaptiveTtl;
 import com.evai.component.cache.utils.CacheKeyUtil;
+import com.evai.component.cache.writebehind.WriteBehindBuffer;
+import com.evai.component.mybatis.PrimaryKey;
+import com.evai.component.mybatis.utils.ReflectUtil;
 import com.evai.component.utils.CommonUtil;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -15,6 +22,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+import java.io.Serializable;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -30,7 +44,10 @@ public class CacheAbleEntityAspect {
 
     private final CacheComponent cacheComponent;
     private final CacheKeyUtil cacheKeyUtil;
+    private final WriteBehindBuffer writeBehindBuffer;
+    private final AdaptiveTtl adaptiveTtl;
 
+    @SuppressWarnings("unchecked")
     @Around(value = "@annotation(cacheAbleEntity)")
     public Object around(ProceedingJoinPoint pjp, CacheAbleEntity cacheAbleEntity) throws Throwable {
         int asyncSeconds = cacheAbleEntity.asyncSeconds();
@@ -40,24 +57,187 @@ public class CacheAbleEntityAspect {
 
         Signature signature = pjp.getSignature();
         MethodSignature methodSignature = (MethodSignature) signature;
+        CacheInvocationPlan plan = cacheKeyUtil.getPlan(pjp, methodSignature, cacheAbleEntity);
+        String keyName = plan.getKeyName();
 
         switch (cacheAction) {
             case INSERT_AUTO:
                 return cacheComponent.insertAutoData(pjp, cacheAbleEntity, methodSignature, lockSeconds, () -> proceed(pjp));
             case DEL:
-                return cacheComponent.writeData(cacheKeyUtil.assembleFinalCacheKey(pjp, cacheAbleEntity, methodSignature), lockSeconds, () -> proceed(pjp));
+                int sourceIndex = plan.getFirstArgIndex();
+                Object source = sourceIndex < 0 ? null : pjp.getArgs()[sourceIndex];
+                adaptiveTtl.recordWrite(keyName, 1);
+                return cacheComponent.writeData(cacheKeyUtil.assembleFinalEntityKey(plan, pjp.getArgs()), lockSeconds, cacheAbleEntity, source, () -> proceed(pjp));
+            case PATCH:
+                int patchIndex = plan.getFirstArgIndex();
+                Object patch = patchIndex < 0 ? null : pjp.getArgs()[patchIndex];
+                adaptiveTtl.recordWrite(keyName, 1);
+                return cacheComponent.patchData(cacheKeyUtil.assembleFinalEntityKey(plan, pjp.getArgs()), lockSeconds, patch, cacheAbleEntity, () -> proceed(pjp));
+            case WRITE_BEHIND:
+                int behindIndex = plan.getFirstArgIndex();
+                Object behind = behindIndex < 0 ? null : pjp.getArgs()[behindIndex];
+                adaptiveTtl.recordWrite(keyName, 1);
+                CacheKeyDTO behindKey = cacheKeyUtil.assembleFinalEntityKey(plan, pjp.getArgs());
+                Serializable behindId = behind == null ? null : ReflectUtil.getPrimaryValue(behind);
+                if (behindKey.getPrimaryKey() == null || behindId == null) {
+                    return cacheComponent.writeData(behindKey, lockSeconds, cacheAbleEntity, behind, () -> proceed(pjp));
+                }
+                writeBehindBuffer.buffer(keyName, cacheKeyUtil.getGenericType(pjp.getTarget(), 0), behindId, behind, behindKey, cacheAbleEntity,
+                        adaptiveTtl.resolve(keyName, expired, cacheKeyUtil.randomExpired(expired)));
+                return bufferedResult(methodSignature.getReturnType());
+            case DEL_BATCH:
+                return writeBatch(pjp, plan, methodSignature, cacheAbleEntity, lockSeconds);
             case DEL_PATTERN:
                 Object result = pjp.proceed();
-                String key = cacheKeyUtil.getCacheKeyName(cacheAbleEntity, pjp);
-                cacheComponent.delPattern(key);
+                adaptiveTtl.recordWrite(keyName, 1);
+                cacheComponent.delPattern(keyName);
                 return result;
+            case SELECT_BATCH:
+                int batchExpiredSeconds = adaptiveTtl.resolve(keyName, expired, cacheKeyUtil.randomExpired(expired));
+                int idsIndex = getIdsIndex(plan, pjp.getArgs());
+                Collection<? extends Serializable> ids = (Collection<? extends Serializable>) pjp.getArgs()[idsIndex];
+                Class<?> paramType = methodSignature.getParameterTypes()[idsIndex];
+                if (ids != null) {
+                    adaptiveTtl.recordAccess(keyName, ids.size());
+                }
+                return cacheComponent.getEntityCacheBatch(keyName, ids, batchExpiredSeconds, getEntityClass(pjp, methodSignature), cacheAbleEntity,
+                        missIds -> adaptiveTtl.load(keyName, missIds.size(),
+                                () -> (Collection) proceed(pjp, idsIndex, Set.class.isAssignableFrom(paramType) ? new LinkedHashSet<>(missIds) : missIds)));
             case SELECT:
             default:
                 // 方法返回类型
                 Class returnType = methodSignature.getReturnType();
 
-                int expiredSeconds = cacheKeyUtil.randomExpired(expired);
-                return cacheComponent.getEntityCache(cacheKeyUtil.assembleFinalCacheKey(pjp, cacheAbleEntity, methodSignature), expiredSeconds, asyncSeconds, returnType, cacheAbleEntity, () -> proceed(pjp));
+                int expiredSeconds = adaptiveTtl.resolve(keyName, expired, cacheKeyUtil.randomExpired(expired));
+                adaptiveTtl.recordAccess(keyName, 1);
+                return cacheComponent.getEntityCache(cacheKeyUtil.assembleFinalEntityKey(plan, pjp.getArgs()), expiredSeconds, asyncSeconds, returnType, cacheAbleEntity, adaptiveTtl.timed(keyName, () -> proceed(pjp)));
+        }
+    }
+
+    /**
+     * 按批加写锁、删除缓存后执行方法，方法参数只传入当前批次
+     *
+     * @param pjp
+     * @param plan
+     * @param methodSignature
+     * @param cacheAbleEntity
+     * @param lockSeconds
+     * @return 返回值为 boolean 时所有批次都成功才返回true，为数字时返回各批次之和，否则返回最后一批的结果
+     */
+    @SuppressWarnings("unchecked")
+    private Object writeBatch(ProceedingJoinPoint pjp, CacheInvocationPlan plan, MethodSignature methodSignature, CacheAbleEntity cacheAbleEntity, long lockSeconds) {
+        int index = getIdsIndex(plan, pjp.getArgs());
+        Collection<Object> elements = (Collection<Object>) pjp.getArgs()[index];
+        if (elements == null || elements.isEmpty()) {
+            return proceed(pjp);
+        }
+        Class<?> paramType = methodSignature.getParameterTypes()[index];
+        List<Object> results = cacheComponent.writeDataBatch(new ArrayList<>(elements), element -> cacheKeyUtil.assembleIdKey(plan.getKeyName(), getElementId(element)), lockSeconds, cacheAbleEntity, part -> proceed(pjp, index, Set.class.isAssignableFrom(paramType) ? new LinkedHashSet<>(part) : part));
+        return mergeResults(methodSignature.getReturnType(), results);
+    }
+
+    /**
+     * 批量更新或删除时元素的主键值，实体类取主键字段，数字或字符串元素本身就是主键值
+     * 取不到主键值时抛出异常，否则拼出的key永远删不到真正的缓存
+     *
+     * @param element
+     * @return
+     */
+    private Serializable getElementId(Object element) {
+        PrimaryKey primaryKey = ReflectUtil.getPrimaryKey(element);
+        if (primaryKey.getKey() != null) {
+            if (primaryKey.getValue() == null) {
+                throw new IllegalKeyIdException("实体类主键值不能为空，当前实体类为: [" + element.getClass().getName() + "]");
+            }
+            return primaryKey.getValue();
+        }
+        if (element instanceof Number || element instanceof CharSequence) {
+            return (Serializable) element;
+        }
+        throw new IllegalKeyIdException("批量更新或删除的元素必须为实体类或主键值，当前元素为: [" + element + "]");
+    }
+
+    /**
+     * 写入缓冲区后的返回值，boolean 返回true，数字返回1，否则返回null
+     *
+     * @param returnType
+     * @return
+     */
+    private Object bufferedResult(Class<?> returnType) {
+        if (boolean.class.equals(returnType) || Boolean.class.equals(returnType)) {
+            return Boolean.TRUE;
+        }
+        if (int.class.equals(returnType) || Integer.class.equals(returnType)) {
+            return 1;
+        }
+        if (long.class.equals(returnType) || Long.class.equals(returnType)) {
+            return 1L;
+        }
+        return null;
+    }
+
+    private Object mergeResults(Class<?> returnType, List<Object> results) {
+        if (boolean.class.equals(returnType) || Boolean.class.equals(returnType)) {
+            return results.stream().allMatch(Boolean.TRUE::equals);
+        }
+        if (int.class.equals(returnType) || Integer.class.equals(returnType)) {
+            return results.stream().mapToInt(result -> result == null ? 0 : ((Number) result).intValue()).sum();
+        }
+        if (long.class.equals(returnType) || Long.class.equals(returnType)) {
+            return results.stream().mapToLong(result -> result == null ? 0L : ((Number) result).longValue()).sum();
+        }
+        return results.isEmpty() ? null : results.get(results.size() - 1);
+    }
+
+    /**
+     * 批量操作的主键集合参数下标，取 keyId 中第一个方法参数
+     *
+     * @param plan
+     * @param args
+     * @return
+     */
+    private int getIdsIndex(CacheInvocationPlan plan, Object[] args) {
+        int index = plan.getFirstParamIndex();
+        if (index < 0 || (args[index] != null && !(args[index] instanceof Collection))) {
+            throw new IllegalAnnotationException("批量操作的keyId必须为主键或实体类集合参数");
+        }
+        return index;
+    }
+
+    /**
+     * 批量查询的实体类，优先取方法返回值的泛型，否则取 ServiceImpl 的泛型实体类
+     *
+     * @param pjp
+     * @param methodSignature
+     * @return
+     */
+    private Class getEntityClass(ProceedingJoinPoint pjp, MethodSignature methodSignature) {
+        Type genericReturnType = methodSignature.getMethod().getGenericReturnType();
+        if (genericReturnType instanceof ParameterizedType) {
+            Type type = ((ParameterizedType) genericReturnType).getActualTypeArguments()[0];
+            if (type instanceof Class) {
+                return (Class) type;
+            }
+        }
+        return cacheKeyUtil.getGenericType(pjp.getTarget(), 1);
+    }
+
+    /**
+     * 替换集合参数后执行业务逻辑
+     *
+     * @param pjp
+     * @param idsIndex
+     * @param elements
+     * @return
+     */
+    private Object proceed(ProceedingJoinPoint pjp, int idsIndex, Collection<?> elements) {
+        Object[] args = pjp.getArgs().clone();
+        args[idsIndex] = elements;
+        try {
+            return pjp.proceed(args);
+        } catch (Throwable throwable) {
+            CommonUtil.doThrow(throwable);
+            return null;
         }
     }
 
@@ -7,8 +7,13 @@ import com.evai.component.mybatis.BaseEntity;
 import com.evai.component.mybatis.BaseService;
 import com.evai.component.mybatis.PrimaryKey;
 import com.evai.component.mybatis.utils.ReflectUtil;
+import org.springframework.util.CollectionUtils;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author crh
@@ -32,6 +37,21 @@ public interface CacheAbleService<T extends BaseEntity> extends BaseService<T> {
         return getById(id);
     }
 
+    /**
+     * 根据主键批量查询缓存，只从数据库查询未命中的主键并放入缓存
+     * 返回结果和 ids 顺序相同，不存在的主键不在返回结果中
+     *
+     * @param ids
+     * @return
+     */
+    @CacheAbleEntity(action = CacheAction.SELECT_BATCH, keyId = "#ids")
+    default List<T> cacheSelectByIds(Collection<? extends Serializable> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(listByIds(ids));
+    }
+
     /**
      * 新增数据，并根据主键删除缓存
      * keyId取 entity 的自增id值
@@ -66,6 +86,67 @@ public interface CacheAbleService<T extends BaseEntity> extends BaseService<T> {
         return updateById(entity);
     }
 
+    /**
+     * 更新数据，并把非空字段写入缓存中的实体类，缓存已被其它请求修改时删除缓存
+     * keyId取 entity 的id值
+     *
+     * @param entity
+     * @return
+     */
+    @CacheAbleEntity(action = CacheAction.PATCH, keyId = "#entity.id")
+    default boolean cachePatchById(T entity) {
+        if (entity == null) {
+            return false;
+        }
+        return updateById(entity);
+    }
+
+    /**
+     * 更新数据写入缓冲区，立即把非空字段写入缓存中的实体类，由后台按批写入数据库
+     * 同一主键的多次更新按字段合并后写入，适用于计数、最后访问时间等高频更新且允许延迟写入数据库的数据
+     * keyId取 entity 的id值
+     *
+     * @param entity
+     * @return
+     */
+    @CacheAbleEntity(action = CacheAction.WRITE_BEHIND, keyId = "#entity.id")
+    default boolean cacheUpdateBehindById(T entity) {
+        if (entity == null) {
+            return false;
+        }
+        return updateById(entity);
+    }
+
+    /**
+     * 批量更新数据，并根据主键批量删除缓存
+     * 按批加写锁及删除缓存，每批更新后释放写锁
+     *
+     * @param entityList
+     * @return
+     */
+    @CacheAbleEntity(action = CacheAction.DEL_BATCH, keyId = "#entityList")
+    default boolean cacheUpdateBatchById(Collection<T> entityList) {
+        if (CollectionUtils.isEmpty(entityList)) {
+            return false;
+        }
+        return updateBatchById(entityList);
+    }
+
+    /**
+     * 根据主键批量删除数据及缓存
+     * 按批加写锁及删除缓存，每批删除后释放写锁
+     *
+     * @param ids
+     * @return
+     */
+    @CacheAbleEntity(action = CacheAction.DEL_BATCH, keyId = "#ids")
+    default boolean cacheDeleteBatchByIds(Collection<? extends Serializable> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return false;
+        }
+        return removeByIds(ids);
+    }
+
     /**
      * 根据主键删除缓存
      * keyId取 id 值
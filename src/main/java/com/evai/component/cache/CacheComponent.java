@@ -2,22 +2,42 @@ package com.evai.component.cache;
 
 import com.baomidou.mybatisplus.annotation.TableName;
 import com.evai.component.cache.annotation.CacheAbleEntity;
+import com.evai.component.cache.bloom.BloomFilters;
+import com.evai.component.cache.codec.CacheCodec;
+import com.evai.component.cache.codec.CacheCodecs;
+import com.evai.component.cache.delay.DelayedInvalidator;
+import com.evai.component.cache.enums.ConsistencyMode;
 import com.evai.component.cache.enums.KeyFormat;
-import com.evai.component.cache.exception.GetLockFailedException;
+import com.evai.component.cache.enums.MissMode;
 import com.evai.component.cache.exception.IllegalParamException;
-import com.evai.component.cache.lock.CacheLock;
+import com.evai.component.cache.flight.DistributedSingleFlight;
+import com.evai.component.cache.flight.SingleFlight;
+import com.evai.component.cache.hotkey.HotKeyDetector;
+import com.evai.component.cache.local.DiskCache;
+import com.evai.component.cache.local.NearCache;
+import com.evai.component.cache.namespace.NamespaceGeneration;
+import com.evai.component.cache.plan.FieldAccessor;
+import com.evai.component.cache.purge.KeyPurger;
+import com.evai.component.cache.script.RedisScripts;
+import com.evai.component.cache.refresh.RefreshScheduler;
 import com.evai.component.cache.utils.CacheKeyUtil;
+import com.evai.component.cache.version.EntityVersion;
 import com.evai.component.mybatis.BaseEntity;
 import com.evai.component.mybatis.utils.ReflectUtil;
 import com.evai.component.utils.BeanUtil;
+import com.evai.component.utils.CommonUtil;
+import com.evai.component.utils.JacksonUtil;
 import com.fasterxml.jackson.databind.JavaType;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
@@ -25,14 +45,20 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import java.io.Serializable;
-import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * @author crh
@@ -47,11 +73,54 @@ public class CacheComponent {
     private final CacheProperties cacheProperties;
     private final RedisTemplate<String, String> redisTemplate;
     private final CacheKeyUtil cacheKeyUtil;
-    private final CacheLock cacheLock;
     /**
-     * 异步更新缓存线程池
+     * 异步更新缓存调度器
      */
-    private final ExecutorService cacheExecutor;
+    private final RefreshScheduler refreshScheduler;
+    /**
+     * 本地缓存
+     */
+    private final NearCache nearCache;
+    /**
+     * 单机请求合并
+     */
+    private final SingleFlight singleFlight;
+    /**
+     * 集群请求合并
+     */
+    private final DistributedSingleFlight distributedSingleFlight;
+    /**
+     * 缓存值编解码器
+     */
+    private final CacheCodecs cacheCodecs;
+    /**
+     * 命名空间代数
+     */
+    private final NamespaceGeneration namespaceGeneration;
+    /**
+     * 后台删除
+     */
+    private final KeyPurger keyPurger;
+    /**
+     * 实体类主键布隆过滤器
+     */
+    private final BloomFilters bloomFilters;
+    /**
+     * lua 脚本注册表
+     */
+    private final RedisScripts redisScripts;
+    /**
+     * 延迟双删
+     */
+    private final DelayedInvalidator delayedInvalidator;
+    /**
+     * 本地磁盘缓存
+     */
+    private final DiskCache diskCache;
+    /**
+     * 热点key探测，热点key提升到本地缓存
+     */
+    private final HotKeyDetector hotKeyDetector;
 
     /**
      * 自增锁次数并设置过期时间
@@ -62,8 +131,7 @@ public class CacheComponent {
      * @return
      */
     public Long incrByEx(String key, long step, long seconds) {
-        return redisTemplate.execute((RedisCallback<Long>) redisConnection ->
-                redisConnection.eval(CacheConstant.LuaScript.INCRBY_EXPIRE.getBytes(), ReturnType.INTEGER, 2, key.getBytes(), StringUtils.EMPTY.getBytes(), String.valueOf(step).getBytes(), String.valueOf(seconds).getBytes()));
+        return redisScripts.eval(CacheConstant.LuaScript.INCRBY_EXPIRE, ReturnType.INTEGER, 2, key.getBytes(), StringUtils.EMPTY.getBytes(), String.valueOf(step).getBytes(), String.valueOf(seconds).getBytes());
     }
 
     /**
@@ -74,8 +142,7 @@ public class CacheComponent {
      * @return
      */
     public Long decrByRelease(String key, long step) {
-        return redisTemplate.execute((RedisCallback<Long>) redisConnection ->
-                redisConnection.eval(CacheConstant.LuaScript.DECRBY_RELEASE.getBytes(), ReturnType.INTEGER, 1, key.getBytes(), String.valueOf(step).getBytes()));
+        return redisScripts.eval(CacheConstant.LuaScript.DECRBY_RELEASE, ReturnType.INTEGER, 1, key.getBytes(), String.valueOf(step).getBytes());
     }
 
     /**
@@ -88,9 +155,19 @@ public class CacheComponent {
      * @param <T>
      */
     public <T> Boolean setExWithNotExist(String writeKey, String key, T value, long seconds) {
-        String result = BeanUtil.beanToString(value);
-        return redisTemplate.execute((RedisCallback<Boolean>) redisConnection ->
-                redisConnection.eval(CacheConstant.LuaScript.SET_WITH_NOT_EXIST.getBytes(), ReturnType.BOOLEAN, 2, writeKey.getBytes(), key.getBytes(), String.valueOf(seconds).getBytes(), result.getBytes()));
+        return this.setExWithNotExist(writeKey, key, cacheCodecs.encode(cacheCodecs.get(null), value), seconds);
+    }
+
+    /**
+     * 设置编码后的值并设置过期时间
+     *
+     * @param writeKey 锁key
+     * @param key      存入数据key
+     * @param value    编码后的值
+     * @param seconds  过期时间
+     */
+    public Boolean setExWithNotExist(String writeKey, String key, byte[] value, long seconds) {
+        return redisScripts.eval(CacheConstant.LuaScript.SET_WITH_NOT_EXIST, ReturnType.BOOLEAN, 2, writeKey.getBytes(), key.getBytes(), String.valueOf(seconds).getBytes(), value);
     }
 
     /**
@@ -120,36 +197,247 @@ public class CacheComponent {
      * 同时检查该缓存是否即将到期，并延长过期时间，防止缓存穿透
      *
      * @param key
-     * @param javaType
+     * @param legacyKey    迁移模式下旧格式的key，未开启迁移模式时为null
      * @param seconds
+     * @param asyncSeconds
+     * @param localSeconds 本地缓存时间，-1 使用全局配置
+     * @param missMode     缓存未命中时的处理方式
+     * @param codecName    缓存值编码器名称，为空时使用全局配置
+     * @param javaType
      * @param supplier
      * @param <T>
      * @return
      */
-    public <T> T getCache(String key, int seconds, int asyncSeconds, JavaType javaType, Supplier<T> supplier) {
-        String value = redisService.get(key);
+    public <T> T getCache(String key, String legacyKey, int seconds, int asyncSeconds, int localSeconds, MissMode missMode, String codecName, JavaType javaType, Supplier<T> supplier) {
+        int nearSeconds = hotKeyDetector.promote(key, nearCache.resolveSeconds(localSeconds));
+        if (nearSeconds > 0) {
+            NearCache.LocalValue localValue = nearCache.get(key);
+            if (localValue != null) {
+                return localValue.getValue();
+            }
+        }
+        CacheCodec codec = cacheCodecs.get(codecName);
+        boolean fromDisk = false;
+        byte[] value = diskCache.get(key, v -> probeDisk(key, getWriteLockKey(key), v));
+        if (value != null) {
+            fromDisk = true;
+        } else {
+            value = redisService.getBytes(key);
+        }
+        if (value == null && legacyKey != null) {
+            value = copyLegacyValue(legacyKey, key, seconds);
+        }
         // 缓存值不存在或已失效
         if (value == null) {
-            T result = supplier.get();
-            redisService.set(key, BeanUtil.beanToString(result), seconds);
-            return result;
+            return singleFlight.execute(key, () -> missMode == MissMode.WAIT
+                    ? distributedSingleFlight.execute(key, () -> loadCache(key, seconds, asyncSeconds, nearSeconds, codec, supplier), () -> reloadCache(key, seconds, asyncSeconds, nearSeconds, codec, javaType, supplier),
+                    () -> nearCache.getStale(key, cacheProperties.getFlight().getStaleMillis()))
+                    : loadCache(key, seconds, asyncSeconds, nearSeconds, codec, supplier));
         } else {
-            // 如果到期时间 < 设置的到期时间，更新缓存数据，防止缓存穿透
-            Long expired = redisTemplate.getExpire(key, TimeUnit.SECONDS);
-            if (expired == null || expired < asyncSeconds) {
+            CacheEnvelope envelope = CacheEnvelope.decode(value);
+            if (envelope != null && !fromDisk) {
+                // 磁盘缓存只保存到逻辑过期时间，之后重新读取 redis
+                diskCache.put(key, value, (envelope.getSoftExpireAt() - System.currentTimeMillis()) / 1000L);
+            }
+            boolean refresh;
+            if (envelope != null) {
+                // 根据信封中的逻辑过期时间和计算耗时，在本地判断是否提前刷新
+                refresh = envelope.shouldRefresh(cacheProperties.getRefreshBeta());
+            } else {
+                // 旧格式数据，如果到期时间 < 设置的到期时间，更新缓存数据，防止缓存穿透
+                Long expired = redisTemplate.getExpire(key, TimeUnit.SECONDS);
+                refresh = expired == null || expired < asyncSeconds;
+            }
+            if (refresh) {
                 // 异步更新方法
-                Runnable runnable = () -> {
-                    T result = supplier.get();
-                    redisService.set(key, BeanUtil.beanToString(result), seconds);
-                };
-                asyncUpdateCache(key, runnable);
+                refreshScheduler.submit(key, () -> loadCache(key, seconds, asyncSeconds, nearSeconds, codec, supplier));
             }
-            // 说明数据库没有该值，无需重复查询数据库
-            if (StringUtils.equals(value, CacheConstant.NULL)) {
-                return null;
+            return toResult(key, value, CacheEnvelope.payloadOffset(envelope), javaType, nearSeconds);
+        }
+    }
+
+    /**
+     * 按集合元素批量查询缓存，每个元素单独缓存，一次 MGET 读取
+     * 只把未命中的元素交给 loader 执行，结果中不存在的元素缓存空值，返回结果和 elements 顺序相同
+     *
+     * @param elements     集合元素，已去重
+     * @param keyFunction  元素对应的缓存key
+     * @param seconds
+     * @param localSeconds 本地缓存时间，-1 使用全局配置
+     * @param codecName    缓存值编码器名称，为空时使用全局配置
+     * @param valueType    Map 值类型
+     * @param loader       根据未命中的元素执行业务逻辑
+     * @param <K>
+     * @param <V>
+     * @return
+     */
+    public <K, V> Map<K, V> getCacheBatch(List<K> elements, Function<K, String> keyFunction, int seconds, int localSeconds, String codecName, JavaType valueType, Function<List<K>, Map<K, V>> loader) {
+        Map<K, V> result = new LinkedHashMap<>();
+        if (elements.isEmpty()) {
+            return result;
+        }
+        int nearSeconds = nearCache.resolveSeconds(localSeconds);
+        // 热点key提升后的本地缓存时间
+        Map<String, Integer> promoted = new HashMap<>();
+        // 元素 -> 缓存值，值为null表示业务逻辑没有返回该元素
+        Map<K, V> found = Maps.newHashMapWithExpectedSize(elements.size());
+        Map<K, String> remoteKeys = new LinkedHashMap<>();
+        for (K element : elements) {
+            String key = keyFunction.apply(element);
+            int keySeconds = promote(key, nearSeconds, promoted);
+            NearCache.LocalValue localValue = keySeconds > 0 ? nearCache.get(key) : null;
+            if (localValue != null) {
+                found.put(element, localValue.getValue());
+            } else {
+                remoteKeys.put(element, key);
             }
-            return BeanUtil.stringToBean(value, javaType);
         }
+        Map<K, String> missKeys = new LinkedHashMap<>();
+        if (!remoteKeys.isEmpty()) {
+            List<byte[]> values = redisService.multiGetBytes(new ArrayList<>(remoteKeys.values()));
+            int i = 0;
+            for (Map.Entry<K, String> entry : remoteKeys.entrySet()) {
+                byte[] value = values == null ? null : values.get(i);
+                i++;
+                if (value == null) {
+                    missKeys.put(entry.getKey(), entry.getValue());
+                    continue;
+                }
+                V v = cacheCodecs.decode(value, 0, valueType);
+                found.put(entry.getKey(), v);
+                nearCache.put(entry.getValue(), v, value.length, promoted.getOrDefault(entry.getValue(), nearSeconds));
+            }
+        }
+        if (!missKeys.isEmpty()) {
+            Map<K, V> loaded = loader.apply(new ArrayList<>(missKeys.keySet()));
+            // 按字符串匹配，避免 Integer 和 Long 等类型不一致
+            Map<String, V> loadedMap = Maps.newHashMapWithExpectedSize(missKeys.size());
+            if (loaded != null) {
+                loaded.forEach((k, v) -> loadedMap.put(BeanUtil.beanToString(k), v));
+            }
+            CacheCodec codec = cacheCodecs.get(codecName);
+            Map<String, byte[]> values = Maps.newHashMapWithExpectedSize(missKeys.size());
+            Map<String, byte[]> nullValues = new HashMap<>();
+            for (Map.Entry<K, String> entry : missKeys.entrySet()) {
+                V v = loadedMap.get(BeanUtil.beanToString(entry.getKey()));
+                byte[] bytes = cacheCodecs.encode(codec, v);
+                if (v == null) {
+                    nullValues.put(entry.getValue(), bytes);
+                } else {
+                    values.put(entry.getValue(), bytes);
+                    nearCache.put(entry.getValue(), v, bytes.length, promoted.getOrDefault(entry.getValue(), nearSeconds));
+                }
+                found.put(entry.getKey(), v);
+            }
+            redisService.multiSetBytes(values, seconds);
+            // 不存在的元素只缓存较短的时间
+            redisService.multiSetBytes(nullValues, CacheConstant.SECOND_OF_10);
+        }
+        for (K element : elements) {
+            V v = found.get(element);
+            if (v != null) {
+                result.put(element, v);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量查询中记录一次读取，热点key提升后的本地缓存时间记录到 promoted
+     *
+     * @param key
+     * @param nearSeconds
+     * @param promoted
+     * @return
+     */
+    private int promote(String key, int nearSeconds, Map<String, Integer> promoted) {
+        int keySeconds = hotKeyDetector.promote(key, nearSeconds);
+        if (keySeconds != nearSeconds) {
+            promoted.put(key, keySeconds);
+        }
+        return keySeconds;
+    }
+
+    /**
+     * 读取旧格式key的值，存在则按剩余过期时间复制到新key，旧key自然过期
+     *
+     * @param legacyKey
+     * @param key
+     * @param seconds
+     * @return 旧key不存在返回null
+     */
+    private byte[] copyLegacyValue(String legacyKey, String key, int seconds) {
+        byte[] value = redisService.getBytes(legacyKey);
+        if (value != null) {
+            Long expired = redisService.getExpire(legacyKey, TimeUnit.SECONDS);
+            redisService.setBytes(key, value, expired != null && expired > 0 ? expired : seconds);
+            log.debug("copy legacy key: [{}] to key: [{}]", legacyKey, key);
+        }
+        return value;
+    }
+
+    /**
+     * 其它节点计算完成后重新读取缓存，缓存仍不存在时执行业务逻辑
+     *
+     * @param key
+     * @param seconds
+     * @param asyncSeconds
+     * @param nearSeconds
+     * @param codec
+     * @param javaType
+     * @param supplier
+     * @param <T>
+     * @return
+     */
+    private <T> T reloadCache(String key, int seconds, int asyncSeconds, int nearSeconds, CacheCodec codec, JavaType javaType, Supplier<T> supplier) {
+        byte[] value = redisService.getBytes(key);
+        if (value == null) {
+            return loadCache(key, seconds, asyncSeconds, nearSeconds, codec, supplier);
+        }
+        return toResult(key, value, CacheEnvelope.payloadOffset(CacheEnvelope.decode(value)), javaType, nearSeconds);
+    }
+
+    /**
+     * 反序列化缓存值并放入本地缓存
+     *
+     * @param key
+     * @param value
+     * @param offset   缓存值开始位置
+     * @param javaType
+     * @param nearSeconds
+     * @param <T>
+     * @return
+     */
+    private <T> T toResult(String key, byte[] value, int offset, JavaType javaType, int nearSeconds) {
+        // 值为 "null" 说明数据库没有该值，无需重复查询数据库
+        T result = cacheCodecs.decode(value, offset, javaType);
+        nearCache.put(key, result, value.length - offset, nearSeconds);
+        return result;
+    }
+
+    /**
+     * 执行业务逻辑并以信封格式写入缓存
+     * 缓存的实际过期时间为 seconds，逻辑过期时间为 seconds - asyncSeconds
+     *
+     * @param key
+     * @param seconds
+     * @param asyncSeconds
+     * @param nearSeconds
+     * @param codec
+     * @param supplier
+     * @param <T>
+     * @return
+     */
+    private <T> T loadCache(String key, int seconds, int asyncSeconds, int nearSeconds, CacheCodec codec, Supplier<T> supplier) {
+        long start = System.currentTimeMillis();
+        T result = supplier.get();
+        long delta = System.currentTimeMillis() - start;
+        byte[] bytes = cacheCodecs.encode(codec, result);
+        byte[] value = CacheEnvelope.encode(bytes, seconds - asyncSeconds, delta);
+        redisService.setBytes(key, value, seconds);
+        diskCache.put(key, value, seconds - asyncSeconds);
+        nearCache.put(key, result, bytes.length, nearSeconds);
+        return result;
     }
 
     /**
@@ -166,120 +454,558 @@ public class CacheComponent {
         if (!BaseEntity.class.equals(clazz.getSuperclass()) && clazz.getDeclaredAnnotation(TableName.class) == null) {
             throw new IllegalParamException("无效的查询方法返回类型，请指定具体实体类");
         }
-        // 通过索引key查询到主键key
-        String primaryKey = redisService.get(cacheKeyDTO.getIndexKey());
+        // 按主键查询时先判断主键是否可能存在
+        if (cacheKeyDTO.getPrimaryKey() != null && !bloomFilters.mightContain(clazz, cacheKeyDTO.getParamMap().get(CacheConstant.PK))) {
+            return null;
+        }
+        int nearSeconds = hotKeyDetector.promote(cacheKeyDTO.getIndexKey(), nearCache.resolveSeconds(cacheAbleEntity.localSeconds()));
+        if (nearSeconds > 0) {
+            NearCache.LocalValue localIndex = nearCache.get(cacheKeyDTO.getIndexKey());
+            if (localIndex != null) {
+                String localPrimaryKey = localIndex.getValue();
+                if (StringUtils.equals(localPrimaryKey, CacheConstant.NULL)) {
+                    return null;
+                }
+                NearCache.LocalValue localEntity = nearCache.get(localPrimaryKey);
+                if (localEntity != null) {
+                    T entity = localEntity.getValue();
+                    if (entity == null || !isIndexChanged(cacheKeyDTO, entity)) {
+                        return entity;
+                    }
+                }
+            }
+        }
+        T diskEntity = getDiskEntity(cacheKeyDTO, clazz, nearSeconds);
+        if (diskEntity != null) {
+            return diskEntity;
+        }
+        // 一次请求通过索引key查询到主键key及实体类，并在服务端延长索引key的过期时间
+        EntityReply reply = getEntityReply(cacheKeyDTO.getIndexKey(), seconds, asyncSeconds);
+        if (reply == null && cacheKeyDTO.getLegacyIndexKey() != null) {
+            reply = getLegacyEntityReply(cacheKeyDTO, seconds, asyncSeconds);
+        }
         // 不存在或已失效
-        if (primaryKey == null) {
-            return getEntityResult(cacheKeyDTO, seconds, cacheAbleEntity, supplier);
+        if (reply == null) {
+            return loadEntity(cacheKeyDTO, seconds, asyncSeconds, nearSeconds, clazz, cacheAbleEntity, supplier);
         } else {
+            String primaryKey = reply.primaryKey;
             // 说明数据库没有该值，无需重复查询数据库
             if (StringUtils.equals(primaryKey, CacheConstant.NULL)) {
                 return null;
             }
 
-            // 如果存在主键key，查询是否有值
-            String entityJson = redisService.get(primaryKey);
-            // 如果不存在，执行业务逻辑查询数据
-            if (entityJson == null) {
-                return getEntityResult(cacheKeyDTO, seconds, cacheAbleEntity, supplier);
+            byte[] entityBytes = reply.entity;
+            // 如果主键key不存在，执行业务逻辑查询数据
+            if (entityBytes == null) {
+                return loadEntity(cacheKeyDTO, seconds, asyncSeconds, nearSeconds, clazz, cacheAbleEntity, supplier);
             }
             // 如果到期时间 < 设置的到期时间，更新缓存数据，防止缓存穿透
-            Long primaryKeyExpired = redisService.getExpire(primaryKey, TimeUnit.SECONDS);
-            Long indexKeyExpired = redisService.getExpire(cacheKeyDTO.getIndexKey(), TimeUnit.SECONDS);
-            if (indexKeyExpired == null || indexKeyExpired < asyncSeconds) {
-                redisService.expire(cacheKeyDTO.getIndexKey(), seconds, TimeUnit.SECONDS);
-            }
-            if (primaryKeyExpired == null || primaryKeyExpired < asyncSeconds) {
+            if (reply.refresh) {
                 // 异步更新方法
-                Runnable runnable = () -> getEntityResult(cacheKeyDTO, seconds, cacheAbleEntity, supplier);
-                asyncUpdateCache(primaryKey, runnable);
+                Runnable runnable = () -> getEntityResult(cacheKeyDTO, seconds, nearSeconds, cacheAbleEntity, supplier);
+                refreshScheduler.submit(primaryKey, runnable);
             }
 
             // 说明数据库没有该值，无需重复查询数据库
-            if (StringUtils.equals(entityJson, CacheConstant.NULL)) {
+            if (CacheCodecs.isNull(entityBytes, 0)) {
+                nearCache.put(primaryKey, null, entityBytes.length, nearSeconds);
+                nearCache.put(cacheKeyDTO.getIndexKey(), primaryKey, primaryKey.length(), nearSeconds);
                 return null;
             }
 
-            T entity = BeanUtil.stringToBean(entityJson, clazz);
+            T entity = cacheCodecs.decode(entityBytes, 0, JacksonUtil.getJavaType(clazz));
             if (entity != null) {
                 // 如果查询结果实体类中字段值和当前查询字段值不一样，说明已经更改过，重新进行索引查询
-                List<Field> fieldList = BeanUtil.getAllFields(entity.getClass());
-                for (Field field : fieldList) {
-                    Object val = cacheKeyDTO.getParamMap().get(field.getName());
-                    field.setAccessible(true);
-                    try {
-                        if (val != null && !val.equals(field.get(entity))) {
-                            return getEntityResult(cacheKeyDTO, seconds, cacheAbleEntity, supplier);
-                        }
-                    } catch (IllegalAccessException e) {
-                        //
-                    }
+                if (isIndexChanged(cacheKeyDTO, entity)) {
+                    return loadEntity(cacheKeyDTO, seconds, asyncSeconds, nearSeconds, clazz, cacheAbleEntity, supplier);
                 }
+                nearCache.put(primaryKey, entity, entityBytes.length, nearSeconds);
+                nearCache.put(cacheKeyDTO.getIndexKey(), primaryKey, primaryKey.length(), nearSeconds);
+                diskCache.put(cacheKeyDTO.getIndexKey(), primaryKey.getBytes(StandardCharsets.UTF_8), seconds);
+                diskCache.put(primaryKey, entityBytes, seconds);
             }
             return entity;
         }
     }
 
-    private void asyncUpdateCache(String key, Runnable runnable) {
-        // 先查询是否已经有该key的读锁，如果有直接返回，避免不必要的查询给数据库造成压力
-        final String readKey = getReadLockKey(key);
+    /**
+     * 查询本地磁盘缓存中的实体类，只缓存存在的实体类
+     *
+     * @param cacheKeyDTO
+     * @param clazz
+     * @param nearSeconds
+     * @param <T>
+     * @return 未命中或索引字段已修改返回null
+     */
+    private <T> T getDiskEntity(CacheKeyDTO cacheKeyDTO, Class<T> clazz, int nearSeconds) {
+        String indexKey = cacheKeyDTO.getIndexKey();
+        byte[] primaryKeyBytes = diskCache.get(indexKey, v -> probeDisk(indexKey, getWriteLockKey(new String(v, StandardCharsets.UTF_8)), v));
+        if (primaryKeyBytes == null) {
+            return null;
+        }
+        String primaryKey = new String(primaryKeyBytes, StandardCharsets.UTF_8);
+        byte[] entityBytes = diskCache.get(primaryKey, v -> probeDisk(primaryKey, getWriteLockKey(primaryKey), v));
+        if (entityBytes == null || CacheCodecs.isNull(entityBytes, 0)) {
+            return null;
+        }
+        T entity = cacheCodecs.decode(entityBytes, 0, JacksonUtil.getJavaType(clazz));
+        if (entity == null || isIndexChanged(cacheKeyDTO, entity)) {
+            return null;
+        }
+        nearCache.put(primaryKey, entity, entityBytes.length, nearSeconds);
+        nearCache.put(cacheKeyDTO.getIndexKey(), primaryKey, primaryKey.length(), nearSeconds);
+        return entity;
+    }
+
+    /**
+     * 校验重启后恢复的磁盘缓存，节点停止期间错过的失效通知由 redis 中的值和写锁判断
+     *
+     * @param key
+     * @param lockKey 写锁key
+     * @param value   磁盘缓存值
+     * @return 写锁不存在且 redis 中的值未修改返回true，校验出错时不使用磁盘缓存
+     */
+    private boolean probeDisk(String key, String lockKey, byte[] value) {
         try {
-            cacheLock.tryLock(readKey, CacheConstant.SECOND_OF_10, () -> {
-                try {
-                    // 异步更新值
-                    cacheExecutor.execute(() -> {
-                        try {
-                            runnable.run();
-                        } catch (Exception e) {
-                            log.error("asyncUpdateCache error", e);
-                        }
-                    });
-                } catch (RejectedExecutionException e) {
-                    // 当队列任务无法继续执行时，直接让主线程更新缓存
-                    runnable.run();
+            Long valid = redisScripts.eval(CacheConstant.LuaScript.PROBE_UNCHANGED, ReturnType.INTEGER, 2,
+                    key.getBytes(StandardCharsets.UTF_8), lockKey.getBytes(StandardCharsets.UTF_8), CommonUtil.sha1Hex(value).getBytes());
+            return Long.valueOf(1L).equals(valid);
+        } catch (Exception e) {
+            log.warn("probe disk cache key: [{}] error: [{}]", key, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 根据主键批量查询实体类缓存，一次 MGET 读取所有主键key
+     * 只把未命中的主键交给 loader 一次性查询，并通过管道批量写入缓存（写锁存在时不写入），返回结果和 ids 顺序相同
+     *
+     * @param keyName         完整的缓存名称
+     * @param ids             主键集合
+     * @param seconds         过期时间
+     * @param clazz           实体类
+     * @param cacheAbleEntity
+     * @param loader          根据未命中的主键查询数据库
+     * @param <T>
+     * @return 不存在的主键不在返回结果中
+     */
+    public <T> List<T> getEntityCacheBatch(String keyName, Collection<? extends Serializable> ids, int seconds, Class<T> clazz, CacheAbleEntity cacheAbleEntity, Function<List<Serializable>, Collection<T>> loader) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return Collections.emptyList();
+        }
+        int nearSeconds = nearCache.resolveSeconds(cacheAbleEntity.localSeconds());
+        // 热点key提升后的本地缓存时间
+        Map<String, Integer> promoted = new HashMap<>();
+        // 去重，保持顺序
+        Map<String, Serializable> idMap = new LinkedHashMap<>();
+        for (Serializable id : ids) {
+            if (id != null && bloomFilters.mightContain(clazz, id)) {
+                idMap.putIfAbsent(BeanUtil.beanToString(id), id);
+            }
+        }
+        if (idMap.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 主键值 -> 实体类，值为null表示数据库不存在
+        Map<String, T> found = Maps.newHashMapWithExpectedSize(idMap.size());
+        Map<String, CacheKeyDTO> remoteKeys = new LinkedHashMap<>();
+        for (Map.Entry<String, Serializable> entry : idMap.entrySet()) {
+            CacheKeyDTO cacheKeyDTO = cacheKeyUtil.assembleIdKey(keyName, entry.getValue());
+            int keySeconds = promote(cacheKeyDTO.getPrimaryKey(), nearSeconds, promoted);
+            NearCache.LocalValue localValue = keySeconds > 0 ? nearCache.get(cacheKeyDTO.getPrimaryKey()) : null;
+            if (localValue != null) {
+                found.put(entry.getKey(), localValue.getValue());
+            } else {
+                remoteKeys.put(entry.getKey(), cacheKeyDTO);
+            }
+        }
+        Map<String, CacheKeyDTO> missKeys = new LinkedHashMap<>();
+        if (!remoteKeys.isEmpty()) {
+            List<String> primaryKeys = remoteKeys.values().stream().map(CacheKeyDTO::getPrimaryKey).collect(Collectors.toList());
+            List<byte[]> values = redisService.multiGetBytes(primaryKeys);
+            JavaType javaType = JacksonUtil.getJavaType(clazz);
+            int i = 0;
+            for (Map.Entry<String, CacheKeyDTO> entry : remoteKeys.entrySet()) {
+                byte[] value = values == null ? null : values.get(i);
+                i++;
+                if (value == null) {
+                    missKeys.put(entry.getKey(), entry.getValue());
+                    continue;
+                }
+                T entity = cacheCodecs.decode(value, 0, javaType);
+                found.put(entry.getKey(), entity);
+                nearCache.put(entry.getValue().getPrimaryKey(), entity, value.length, promoted.getOrDefault(entry.getValue().getPrimaryKey(), nearSeconds));
+            }
+        }
+        if (!missKeys.isEmpty()) {
+            List<Serializable> missIds = missKeys.keySet().stream().map(idMap::get).collect(Collectors.toList());
+            Collection<T> loaded = loader.apply(missIds);
+            Map<String, T> loadedMap = Maps.newHashMapWithExpectedSize(missIds.size());
+            if (loaded != null) {
+                for (T entity : loaded) {
+                    if (entity != null) {
+                        loadedMap.put(BeanUtil.beanToString(ReflectUtil.getPrimaryValue(entity)), entity);
+                    }
                 }
-            });
-        } catch (GetLockFailedException e) {
-            log.warn("getReadLock key: [{}] failed", key);
+            }
+            setEntityBatch(missKeys, loadedMap, seconds, cacheAbleEntity, nearSeconds, promoted);
+            for (String id : missKeys.keySet()) {
+                found.put(id, loadedMap.get(id));
+            }
+        }
+        List<T> result = new ArrayList<>(idMap.size());
+        for (Serializable id : ids) {
+            T entity = id == null ? null : found.get(BeanUtil.beanToString(id));
+            if (entity != null) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 通过管道批量写入实体类及索引key，写锁存在的主键不写入，数据库不存在的主键写入空值
+     *
+     * @param missKeys
+     * @param loadedMap
+     * @param seconds
+     * @param cacheAbleEntity
+     * @param nearSeconds
+     * @param promoted        热点主键key提升后的本地缓存时间
+     * @param <T>
+     */
+    private <T> void setEntityBatch(Map<String, CacheKeyDTO> missKeys, Map<String, T> loadedMap, int seconds, CacheAbleEntity cacheAbleEntity, int nearSeconds, Map<String, Integer> promoted) {
+        CacheCodec codec = cacheCodecs.get(cacheAbleEntity.codec());
+        List<CacheKeyDTO> keys = new ArrayList<>(missKeys.size());
+        List<byte[]> values = new ArrayList<>(missKeys.size());
+        List<Long> versions = new ArrayList<>(missKeys.size());
+        for (Map.Entry<String, CacheKeyDTO> entry : missKeys.entrySet()) {
+            T entity = loadedMap.get(entry.getKey());
+            keys.add(entry.getValue());
+            values.add(cacheCodecs.encode(codec, entity));
+            versions.add(EntityVersion.of(entity, cacheAbleEntity.versionField()));
+        }
+        int[] expired = new int[keys.size()];
+        Arrays.fill(expired, seconds);
+        List<Object> results = setEntities(keys, values, versions, expired);
+        for (int i = 0; i < keys.size(); i++) {
+            Object success = i < results.size() ? results.get(i) : null;
+            if (Boolean.TRUE.equals(success) || Long.valueOf(1L).equals(success)) {
+                String primaryKey = keys.get(i).getPrimaryKey();
+                T entity = loadedMap.get(BeanUtil.beanToString(keys.get(i).getParamMap().get(CacheConstant.PK)));
+                int keySeconds = promoted.getOrDefault(primaryKey, nearSeconds);
+                nearCache.put(primaryKey, entity, values.get(i).length, entity == null ? Math.min(keySeconds, (int) CacheConstant.SECOND_OF_10) : keySeconds);
+            }
+        }
+    }
+
+    /**
+     * 预热实体类缓存，通过管道写入主键key及id索引key，不写入本地缓存
+     * 写锁存在（版本号方案中已有更新的版本）的实体类不写入
+     *
+     * @param keyName      缓存名称
+     * @param entities     实体类
+     * @param expired      缓存过期随机时间
+     * @param versionField 版本字段名称
+     * @param <T>
+     * @return 写入的数量
+     */
+    public <T> int warmEntities(String keyName, List<T> entities, int[] expired, String versionField) {
+        CacheCodec codec = cacheCodecs.get(null);
+        List<CacheKeyDTO> keys = new ArrayList<>(entities.size());
+        List<byte[]> values = new ArrayList<>(entities.size());
+        List<Long> versions = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            Serializable id = ReflectUtil.getPrimaryValue(entity);
+            if (id != null) {
+                keys.add(cacheKeyUtil.assembleIdKey(keyName, id));
+                values.add(cacheCodecs.encode(codec, entity));
+                versions.add(EntityVersion.of(entity, versionField));
+            }
+        }
+        int[] seconds = new int[keys.size()];
+        for (int i = 0; i < seconds.length; i++) {
+            seconds[i] = cacheKeyUtil.randomExpired(expired);
+        }
+        int count = 0;
+        for (Object success : setEntities(keys, values, versions, seconds)) {
+            if (Boolean.TRUE.equals(success) || Long.valueOf(1L).equals(success)) {
+                count++;
+            }
         }
+        return count;
     }
 
-    private <T> T getEntityResult(CacheKeyDTO cacheKeyDTO, int seconds, CacheAbleEntity cacheAbleEntity, Supplier<T> supplier) {
+    /**
+     * 通过管道写入实体类及索引key，写锁存在（版本号方案中已有更新的版本）的主键不写入
+     *
+     * @param keys
+     * @param values   编码后的实体类
+     * @param versions 版本号方案中实体类的版本
+     * @param seconds  每个实体类的过期时间
+     * @return 每个实体类是否写入
+     */
+    private List<Object> setEntities(List<CacheKeyDTO> keys, List<byte[]> values, List<Long> versions, int[] seconds) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return redisScripts.executePipelined((RedisCallback<Object>) redisConnection -> {
+            for (int i = 0; i < keys.size(); i++) {
+                CacheKeyDTO cacheKeyDTO = keys.get(i);
+                String primaryKey = cacheKeyDTO.getPrimaryKey();
+                byte[] value = values.get(i);
+                // 数据库不存在的主键只缓存较短的时间
+                long expired = CacheCodecs.isNull(value, 0) ? CacheConstant.SECOND_OF_10 : seconds[i];
+                Long version = versions.get(i);
+                if (isVersionMode() && version != null) {
+                    redisScripts.evalSha(redisConnection, CacheConstant.LuaScript.SET_ENTITY_IF_NEWER, ReturnType.INTEGER, 4,
+                            getVersionKey(primaryKey).getBytes(StandardCharsets.UTF_8),
+                            primaryKey.getBytes(StandardCharsets.UTF_8),
+                            cacheKeyDTO.getIndexKey().getBytes(StandardCharsets.UTF_8),
+                            getWriteLockKey(primaryKey).getBytes(StandardCharsets.UTF_8),
+                            String.valueOf(expired).getBytes(),
+                            value,
+                            primaryKey.getBytes(StandardCharsets.UTF_8),
+                            String.valueOf(version).getBytes());
+                    continue;
+                }
+                redisScripts.evalSha(redisConnection, CacheConstant.LuaScript.SET_ENTITY_WITH_NOT_EXIST, ReturnType.BOOLEAN, 3,
+                        getWriteLockKey(primaryKey).getBytes(StandardCharsets.UTF_8),
+                        primaryKey.getBytes(StandardCharsets.UTF_8),
+                        cacheKeyDTO.getIndexKey().getBytes(StandardCharsets.UTF_8),
+                        String.valueOf(expired).getBytes(),
+                        value,
+                        primaryKey.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 执行 GET_ENTITY 脚本，集群连接中脚本访问的主键key没有通过 KEYS 声明，改为分别查询索引key和主键key
+     *
+     * @param indexKey
+     * @param seconds
+     * @param asyncSeconds
+     * @return 索引key不存在返回null
+     */
+    @SuppressWarnings("unchecked")
+    private EntityReply getEntityReply(String indexKey, int seconds, int asyncSeconds) {
+        List<Object> result = redisTemplate.execute((RedisCallback<List<Object>>) redisConnection -> {
+            if (redisConnection instanceof RedisClusterConnection) {
+                return getEntityByKeys(redisConnection, indexKey.getBytes(StandardCharsets.UTF_8), seconds, asyncSeconds);
+            }
+            return redisScripts.eval(redisConnection, CacheConstant.LuaScript.GET_ENTITY, ReturnType.MULTI, 1, indexKey.getBytes(StandardCharsets.UTF_8), String.valueOf(seconds).getBytes(), String.valueOf(asyncSeconds).getBytes(), CacheConstant.NULL.getBytes());
+        });
+        if (CollectionUtils.isEmpty(result)) {
+            return null;
+        }
+        EntityReply reply = new EntityReply();
+        reply.primaryKey = new String((byte[]) result.get(0), StandardCharsets.UTF_8);
+        if (result.size() > 1 && result.get(1) != null) {
+            reply.entity = (byte[]) result.get(1);
+            reply.refresh = result.size() > 2 && ((Number) result.get(2)).longValue() == 1L;
+        }
+        return reply;
+    }
+
+    /**
+     * 分别查询索引key和主键key，返回结果和 GET_ENTITY 脚本一致
+     *
+     * @param redisConnection
+     * @param indexKey
+     * @param seconds
+     * @param asyncSeconds
+     * @return 索引key不存在返回null
+     */
+    private List<Object> getEntityByKeys(RedisConnection redisConnection, byte[] indexKey, int seconds, int asyncSeconds) {
+        byte[] primaryKey = redisConnection.get(indexKey);
+        if (primaryKey == null) {
+            return null;
+        }
+        if (CacheConstant.NULL.equals(new String(primaryKey, StandardCharsets.UTF_8))) {
+            return Collections.singletonList(primaryKey);
+        }
+        byte[] entity = redisConnection.get(primaryKey);
+        if (entity == null) {
+            return Collections.singletonList(primaryKey);
+        }
+        Long indexTtl = redisConnection.ttl(indexKey);
+        if (indexTtl != null && indexTtl < asyncSeconds) {
+            redisConnection.expire(indexKey, seconds);
+        }
+        Long ttl = redisConnection.ttl(primaryKey);
+        return Arrays.asList(primaryKey, entity, ttl != null && ttl < asyncSeconds ? 1L : 0L);
+    }
+
+    /**
+     * 迁移模式下通过旧格式的索引key查询，存在则把主键key复制到新的索引key
+     *
+     * @param cacheKeyDTO
+     * @param seconds
+     * @param asyncSeconds
+     * @return
+     */
+    private EntityReply getLegacyEntityReply(CacheKeyDTO cacheKeyDTO, int seconds, int asyncSeconds) {
+        EntityReply reply = getEntityReply(cacheKeyDTO.getLegacyIndexKey(), seconds, asyncSeconds);
+        if (reply != null && !StringUtils.equals(reply.primaryKey, CacheConstant.NULL)) {
+            redisService.set(cacheKeyDTO.getIndexKey(), reply.primaryKey, seconds);
+        }
+        return reply;
+    }
+
+    /**
+     * GET_ENTITY 脚本返回结果
+     */
+    private static class EntityReply {
+        /**
+         * 主键key，数据库无该值时为 "null"
+         */
+        private String primaryKey;
+        /**
+         * 编码后的实体类，主键key不存在时为null
+         */
+        private byte[] entity;
+        /**
+         * 主键key是否即将到期，需要异步刷新
+         */
+        private boolean refresh;
+    }
+
+    /**
+     * 查询结果实体类中字段值和当前查询字段值是否不一样
+     *
+     * @param cacheKeyDTO
+     * @param entity
+     * @return
+     */
+    private boolean isIndexChanged(CacheKeyDTO cacheKeyDTO, Object entity) {
+        for (FieldAccessor accessor : FieldAccessor.getAll(entity.getClass())) {
+            Object val = cacheKeyDTO.getParamMap().get(accessor.getName());
+            if (val != null && !val.equals(accessor.get(entity))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 缓存未命中时同步查询，同一个索引key的并发请求合并为一次查询
+     * MissMode.WAIT 时整个集群只有一个节点查询
+     *
+     * @param cacheKeyDTO
+     * @param seconds
+     * @param asyncSeconds
+     * @param nearSeconds     本地缓存时间，热点key为提升后的时间
+     * @param clazz
+     * @param cacheAbleEntity
+     * @param supplier
+     * @param <T>
+     * @return
+     */
+    private <T> T loadEntity(CacheKeyDTO cacheKeyDTO, int seconds, int asyncSeconds, int nearSeconds, Class<T> clazz, CacheAbleEntity cacheAbleEntity, Supplier<T> supplier) {
+        String indexKey = cacheKeyDTO.getIndexKey();
+        return singleFlight.execute(indexKey, () -> cacheAbleEntity.missMode() == MissMode.WAIT
+                ? distributedSingleFlight.execute(indexKey, () -> getEntityResult(cacheKeyDTO, seconds, nearSeconds, cacheAbleEntity, supplier), () -> reloadEntity(cacheKeyDTO, seconds, asyncSeconds, nearSeconds, clazz, cacheAbleEntity, supplier),
+                () -> getStaleEntity(cacheKeyDTO))
+                : getEntityResult(cacheKeyDTO, seconds, nearSeconds, cacheAbleEntity, supplier));
+    }
+
+    /**
+     * 本地缓存中按时间过期的实体类副本，索引字段已修改时不返回
+     *
+     * @param cacheKeyDTO
+     * @return
+     */
+    private NearCache.LocalValue getStaleEntity(CacheKeyDTO cacheKeyDTO) {
+        long staleMillis = cacheProperties.getFlight().getStaleMillis();
+        NearCache.LocalValue staleIndex = nearCache.getStale(cacheKeyDTO.getIndexKey(), staleMillis);
+        if (staleIndex == null) {
+            return null;
+        }
+        String primaryKey = staleIndex.getValue();
+        // 空值没有实体类副本，等待其它节点的计算结果
+        if (StringUtils.equals(primaryKey, CacheConstant.NULL)) {
+            return null;
+        }
+        NearCache.LocalValue staleEntity = nearCache.getStale(primaryKey, staleMillis);
+        if (staleEntity == null || (staleEntity.getValue() != null && isIndexChanged(cacheKeyDTO, staleEntity.getValue()))) {
+            return null;
+        }
+        return staleEntity;
+    }
+
+    /**
+     * 其它节点计算完成后重新读取实体类缓存，缓存仍不存在时执行业务逻辑
+     *
+     * @param cacheKeyDTO
+     * @param seconds
+     * @param asyncSeconds
+     * @param nearSeconds     本地缓存时间，热点key为提升后的时间
+     * @param clazz
+     * @param cacheAbleEntity
+     * @param supplier
+     * @param <T>
+     * @return
+     */
+    private <T> T reloadEntity(CacheKeyDTO cacheKeyDTO, int seconds, int asyncSeconds, int nearSeconds, Class<T> clazz, CacheAbleEntity cacheAbleEntity, Supplier<T> supplier) {
+        EntityReply reply = getEntityReply(cacheKeyDTO.getIndexKey(), seconds, asyncSeconds);
+        if (reply == null) {
+            return getEntityResult(cacheKeyDTO, seconds, nearSeconds, cacheAbleEntity, supplier);
+        }
+        if (StringUtils.equals(reply.primaryKey, CacheConstant.NULL)) {
+            return null;
+        }
+        if (reply.entity == null) {
+            return getEntityResult(cacheKeyDTO, seconds, nearSeconds, cacheAbleEntity, supplier);
+        }
+        T entity = cacheCodecs.decode(reply.entity, 0, JacksonUtil.getJavaType(clazz));
+        if (entity != null && isIndexChanged(cacheKeyDTO, entity)) {
+            return getEntityResult(cacheKeyDTO, seconds, nearSeconds, cacheAbleEntity, supplier);
+        }
+        return entity;
+    }
+
+    private <T> T getEntityResult(CacheKeyDTO cacheKeyDTO, int seconds, int nearSeconds, CacheAbleEntity cacheAbleEntity, Supplier<T> supplier) {
         T result = supplier.get();
-        String primaryKey = null;
         // 这里存索引key，值为主键key
         if (result == null) {
             setNullValue(cacheKeyDTO.getIndexKey());
+            nearCache.put(cacheKeyDTO.getIndexKey(), CacheConstant.NULL, CacheConstant.NULL.length(), Math.min(nearSeconds, (int) CacheConstant.SECOND_OF_10));
             return null;
-        } else if (cacheKeyDTO.getPrimaryKey() != null) {
-            primaryKey = cacheKeyDTO.getPrimaryKey();
-        } else {
-            Serializable id = ReflectUtil.getPrimaryValue(result);
-            if (id != null) {
-                String keyPrefix = StringUtils.isNotBlank(cacheAbleEntity.keyNamePrefix()) ? cacheAbleEntity.keyNamePrefix() : cacheProperties.getKeyNamePrefix();
-                String keySuffix = StringUtils.isNotBlank(cacheAbleEntity.keyNameSuffix()) ? cacheAbleEntity.keyNameSuffix() : cacheProperties.getKeyNameSuffix();
-                KeyFormat keyFormat = cacheAbleEntity.keyNameFormat();
-                String cacheKey = BeanUtil.formatKey(result.getClass(), keyFormat);
-                // 添加前缀
-                cacheKey = cacheKeyUtil.setPrefix(keyPrefix, cacheKey);
-                // 添加后缀
-                cacheKey = cacheKeyUtil.setSuffix(keySuffix, cacheKey);
-                primaryKey = new StringBuilder(cacheKey)
-                        .append(CacheConstant.COLON)
-                        .append(CacheConstant.PK)
-                        .append(CacheConstant.COLON)
-                        .append(id)
-                        .toString();
-            }
         }
+        // keyId 不含主键时按主键值组合，和主键查询使用相同的缓存名称及命名空间代数
+        String primaryKey = cacheKeyUtil.assemblePrimaryKey(cacheKeyDTO, result);
         if (primaryKey == null) {
             return result;
         }
-        // 判断写锁是否存在，存在则不放入缓存，这里存的是实体类
-        Boolean isSuccess = this.setExWithNotExist(getWriteLockKey(primaryKey), primaryKey, result, seconds);
-        if (BooleanUtils.isTrue(isSuccess)) {
-            // 这里存索引key，值为主键key
-            redisService.set(cacheKeyDTO.getIndexKey(), primaryKey, seconds);
+        byte[] entityBytes = cacheCodecs.encode(cacheCodecs.get(cacheAbleEntity.codec()), result);
+        boolean isSuccess;
+        Long version = isVersionMode() ? EntityVersion.of(result, cacheAbleEntity.versionField()) : null;
+        if (version != null) {
+            // 只替换更旧的版本，同时写入索引key
+            Long success = redisScripts.eval(CacheConstant.LuaScript.SET_ENTITY_IF_NEWER, ReturnType.INTEGER, 4,
+                    getVersionKey(primaryKey).getBytes(StandardCharsets.UTF_8),
+                    primaryKey.getBytes(StandardCharsets.UTF_8),
+                    cacheKeyDTO.getIndexKey().getBytes(StandardCharsets.UTF_8),
+                    getWriteLockKey(primaryKey).getBytes(StandardCharsets.UTF_8),
+                    String.valueOf(seconds).getBytes(),
+                    entityBytes,
+                    primaryKey.getBytes(StandardCharsets.UTF_8),
+                    String.valueOf(version).getBytes());
+            isSuccess = Long.valueOf(1L).equals(success);
+        } else {
+            // 写锁方案，或版本号方案中取不到版本号的实体类
+            // 判断写锁是否存在，存在则不放入缓存，这里存的是实体类
+            isSuccess = BooleanUtils.isTrue(this.setExWithNotExist(getWriteLockKey(primaryKey), primaryKey, entityBytes, seconds));
+            if (isSuccess) {
+                // 这里存索引key，值为主键key
+                redisService.set(cacheKeyDTO.getIndexKey(), primaryKey, seconds);
+            }
+        }
+        if (isSuccess) {
+            nearCache.put(primaryKey, result, entityBytes.length, nearSeconds);
+            nearCache.put(cacheKeyDTO.getIndexKey(), primaryKey, primaryKey.length(), nearSeconds);
         }
         return result;
     }
@@ -294,85 +1020,422 @@ public class CacheComponent {
      * 3.更新数据库
      * 4.释放写锁
      *
+     * 版本号方案中更新参数带有版本号时不加写锁，更新数据库后删除缓存并留下墓碑版本，否则按写锁方案处理
+     *
      * @param cacheKeyDTO
-     * @param lockSeconds 加锁时间，单位秒
-     * @param supplier    更新持久层方法
+     * @param lockSeconds     加锁时间，单位秒
+     * @param cacheAbleEntity
+     * @param source          更新的实体类或主键，用于读取更新后的版本号
+     * @param supplier        更新持久层方法
      * @param <T>
      * @return
      */
-    <T> T writeData(CacheKeyDTO cacheKeyDTO, long lockSeconds, Supplier<T> supplier) {
+    <T> T writeData(CacheKeyDTO cacheKeyDTO, long lockSeconds, CacheAbleEntity cacheAbleEntity, Object source, Supplier<T> supplier) {
         if (cacheKeyDTO.getPrimaryKey() == null) {
             return supplier.get();
         }
+        Long version = isVersionMode() ? EntityVersion.of(source, cacheAbleEntity.versionField()) : null;
+        if (version != null) {
+            try {
+                return supplier.get();
+            } finally {
+                this.deleteWithTombstone(cacheKeyDTO, writtenVersion(source, cacheAbleEntity, version));
+            }
+        }
         String primaryKey = cacheKeyDTO.getPrimaryKey();
         String lockKey = getWriteLockKey(primaryKey);
-        Long lockNum = this.tryWriteLock(lockKey, lockSeconds);
+        // 新增写锁的同时删除之前的缓存
+        Long lockNum = this.lockAndDelete(lockKey, lockSeconds, cacheKeyDTO);
         log.info("write lock increment key: [{}], lockNum: [{}]", lockKey, lockNum);
         try {
-            // 先删除之前的缓存
-            this.delete(cacheKeyDTO);
             // 数据库增删改后的值
             return supplier.get();
         } finally {
             lockNum = this.releaseWriteLock(lockKey);
             log.info("write lock decrement key: [{}], lockNum: [{}]", lockKey, lockNum);
+            delayedInvalidator.schedule(getCacheKeys(cacheKeyDTO));
+        }
+    }
+
+    /**
+     * 更新后把非空字段写入缓存：
+     * 1.新增写锁，期间其它请求查询数据库后不会写入缓存
+     * 2.更新数据库
+     * 3.读取缓存中的实体类合并非空字段，缓存值未被修改时写入，否则删除缓存
+     * 4.释放写锁
+     * 版本号方案中更新参数带有版本号时不加写锁，写入时同时记录更新后的版本，无法写入时删除缓存并留下墓碑版本，否则按写锁方案处理
+     *
+     * @param cacheKeyDTO
+     * @param lockSeconds     加锁时间，单位秒
+     * @param patch           包含修改字段的实体类
+     * @param cacheAbleEntity
+     * @param supplier        更新持久层方法
+     * @param <T>
+     * @return
+     */
+    <T> T patchData(CacheKeyDTO cacheKeyDTO, long lockSeconds, Object patch, CacheAbleEntity cacheAbleEntity, Supplier<T> supplier) {
+        if (cacheKeyDTO.getPrimaryKey() == null || patch == null) {
+            return writeData(cacheKeyDTO, lockSeconds, cacheAbleEntity, patch, supplier);
+        }
+        String primaryKey = cacheKeyDTO.getPrimaryKey();
+        Long version = isVersionMode() ? EntityVersion.of(patch, cacheAbleEntity.versionField()) : null;
+        if (version != null) {
+            boolean patched = false;
+            try {
+                T result = supplier.get();
+                patched = !Boolean.FALSE.equals(result) && patchEntity(primaryKey, patch, cacheAbleEntity, writtenVersion(patch, cacheAbleEntity, version));
+                return result;
+            } finally {
+                if (!patched) {
+                    this.deleteWithTombstone(cacheKeyDTO, writtenVersion(patch, cacheAbleEntity, version));
+                }
+            }
+        }
+        String lockKey = getWriteLockKey(primaryKey);
+        Long lockNum = this.tryWriteLock(lockKey, lockSeconds);
+        log.info("write lock increment key: [{}], lockNum: [{}]", lockKey, lockNum);
+        boolean patched = false;
+        try {
+            T result = supplier.get();
+            patched = !Boolean.FALSE.equals(result) && patchEntity(primaryKey, patch, cacheAbleEntity, null);
+            return result;
+        } finally {
+            if (!patched) {
+                this.deleteAndSchedule(getCacheKeys(cacheKeyDTO));
+            }
+            lockNum = this.releaseWriteLock(lockKey);
+            log.info("write lock decrement key: [{}], lockNum: [{}]", lockKey, lockNum);
+        }
+    }
+
+    /**
+     * 写入缓冲区后更新缓存，不执行持久层方法
+     * 缓存中有实体类时只写入非空字段；没有缓存或缓存已被其它请求修改时，写入 loader 返回的完整实体类，
+     * 避免读请求从数据库读到缺少缓冲区字段的旧数据
+     *
+     * @param cacheKeyDTO
+     * @param patch           包含修改字段的实体类，为空时直接写入 loader 返回的实体类
+     * @param seconds         写入完整实体类时的过期时间，单位秒
+     * @param cacheAbleEntity
+     * @param loader          数据库中的实体类合并缓冲区字段后的结果
+     */
+    public void writeBehindCache(CacheKeyDTO cacheKeyDTO, Object patch, int seconds, CacheAbleEntity cacheAbleEntity, Supplier<Object> loader) {
+        String primaryKey = cacheKeyDTO.getPrimaryKey();
+        if (primaryKey == null) {
+            return;
+        }
+        if (patch != null && patchEntity(primaryKey, patch, cacheAbleEntity, null)) {
+            return;
+        }
+        nearCache.invalidate(Collections.singletonList(primaryKey));
+        getEntityResult(cacheKeyDTO, seconds, hotKeyDetector.resolve(cacheKeyDTO.getIndexKey(), nearCache.resolveSeconds(cacheAbleEntity.localSeconds())), cacheAbleEntity, loader);
+    }
+
+    /**
+     * 合并非空字段后按 sha1 比较写入，带有版本号时同时写入版本key
+     *
+     * @param primaryKey
+     * @param patch
+     * @param cacheAbleEntity
+     * @param version         更新后的版本号，写锁方案为null
+     * @return 是否写入
+     */
+    private boolean patchEntity(String primaryKey, Object patch, CacheAbleEntity cacheAbleEntity, Long version) {
+        byte[] current = redisService.getBytes(primaryKey);
+        if (current == null || CacheCodecs.isNull(current, 0)) {
+            return false;
+        }
+        Object entity = cacheCodecs.decode(current, 0, JacksonUtil.getJavaType(patch.getClass()));
+        if (entity == null) {
+            return false;
+        }
+        for (FieldAccessor accessor : FieldAccessor.getAll(patch.getClass())) {
+            Object value = accessor.get(patch);
+            if (value != null) {
+                accessor.set(entity, value);
+            }
         }
+        byte[] value = cacheCodecs.encode(cacheCodecs.get(cacheAbleEntity.codec()), entity);
+        byte[] sha1 = CommonUtil.sha1Hex(current).getBytes();
+        Long success = version == null
+                ? redisScripts.eval(CacheConstant.LuaScript.PATCH_IF_UNCHANGED, ReturnType.INTEGER, 1,
+                primaryKey.getBytes(StandardCharsets.UTF_8), sha1, value)
+                : redisScripts.eval(CacheConstant.LuaScript.PATCH_IF_NEWER, ReturnType.INTEGER, 2,
+                primaryKey.getBytes(StandardCharsets.UTF_8), getVersionKey(primaryKey).getBytes(StandardCharsets.UTF_8), sha1, value, String.valueOf(version).getBytes());
+        nearCache.invalidate(Collections.singletonList(primaryKey));
+        return Long.valueOf(1L).equals(success);
     }
 
-    <T> T insertAutoData(ProceedingJoinPoint pjp, CacheAbleEntity cacheAbleEntity, MethodSignature methodSignature, long lockSeconds, Supplier<T> supplier) throws IllegalAccessException {
+    /**
+     * 批量写入，按批执行：
+     * 1.通过管道新增写锁并删除缓存
+     * 2.执行当前批次的数据库更新
+     * 3.通过管道释放写锁
+     * 版本号方案中当前批次的元素都带有版本号时不加写锁，执行当前批次后通过管道删除缓存并留下墓碑版本，否则按写锁方案处理
+     *
+     * @param elements        主键或实体类集合
+     * @param keyFunction     元素对应的缓存key，主键为空时返回null
+     * @param lockSeconds     加锁时间，单位秒
+     * @param cacheAbleEntity
+     * @param writer          更新持久层方法，参数为当前批次的元素
+     * @param <E>
+     * @param <T>
+     * @return 每批的执行结果
+     */
+    <E, T> List<T> writeDataBatch(List<E> elements, Function<E, CacheKeyDTO> keyFunction, long lockSeconds, CacheAbleEntity cacheAbleEntity, Function<List<E>, T> writer) {
+        List<T> results = new ArrayList<>();
+        for (List<E> part : Lists.partition(elements, Math.max(1, cacheProperties.getWriteBatchSize()))) {
+            List<CacheKeyDTO> cacheKeyDTOList = new ArrayList<>(part.size());
+            List<E> keyedElements = new ArrayList<>(part.size());
+            boolean versioned = isVersionMode();
+            for (E element : part) {
+                CacheKeyDTO cacheKeyDTO = keyFunction.apply(element);
+                if (cacheKeyDTO != null && cacheKeyDTO.getPrimaryKey() != null) {
+                    cacheKeyDTOList.add(cacheKeyDTO);
+                    keyedElements.add(element);
+                    versioned = versioned && EntityVersion.of(element, cacheAbleEntity.versionField()) != null;
+                }
+            }
+            if (versioned) {
+                try {
+                    results.add(writer.apply(part));
+                } finally {
+                    // 更新后再读取版本号，乐观锁更新会把新版本写回实体类
+                    List<Long> versions = keyedElements.stream().map(element -> EntityVersion.of(element, cacheAbleEntity.versionField())).collect(Collectors.toList());
+                    deleteWithTombstoneBatch(cacheKeyDTOList, versions);
+                }
+                continue;
+            }
+            List<String> lockKeys = cacheKeyDTOList.stream().map(cacheKeyDTO -> getWriteLockKey(cacheKeyDTO.getPrimaryKey())).collect(Collectors.toList());
+            if (!lockKeys.isEmpty()) {
+                redisScripts.executePipelined((RedisCallback<Object>) redisConnection -> {
+                    for (int i = 0; i < lockKeys.size(); i++) {
+                        byte[][] keysAndArgs = lockAndDeleteArgs(lockKeys.get(i), lockSeconds, cacheKeyDTOList.get(i));
+                        redisScripts.evalSha(redisConnection, CacheConstant.LuaScript.LOCK_AND_DELETE, ReturnType.INTEGER, keysAndArgs.length - 2, keysAndArgs);
+                        delayedInvalidator.schedule(redisConnection, getCacheKeys(cacheKeyDTOList.get(i)), TimeUnit.SECONDS.toMillis(lockSeconds));
+                    }
+                    return null;
+                });
+                nearCache.invalidate(cacheKeyDTOList.stream().flatMap(cacheKeyDTO -> getCacheKeys(cacheKeyDTO).stream()).collect(Collectors.toList()));
+            }
+            log.info("write lock increment batch size: [{}]", lockKeys.size());
+            try {
+                results.add(writer.apply(part));
+            } finally {
+                if (!lockKeys.isEmpty()) {
+                    redisScripts.executePipelined((RedisCallback<Object>) redisConnection -> {
+                        for (String lockKey : lockKeys) {
+                            redisScripts.evalSha(redisConnection, CacheConstant.LuaScript.DECRBY_RELEASE, ReturnType.INTEGER, 1, lockKey.getBytes(StandardCharsets.UTF_8), String.valueOf(1).getBytes());
+                        }
+                        return null;
+                    });
+                }
+                log.info("write lock decrement batch size: [{}]", lockKeys.size());
+                cacheKeyDTOList.forEach(cacheKeyDTO -> delayedInvalidator.schedule(getCacheKeys(cacheKeyDTO)));
+            }
+        }
+        return results;
+    }
+
+    <T> T insertAutoData(ProceedingJoinPoint pjp, CacheAbleEntity cacheAbleEntity, MethodSignature methodSignature, long lockSeconds, Supplier<T> supplier) {
         // 先执行插入逻辑后取到自增id
         T result = supplier.get();
+        if (bloomFilters.isEnabled() && !Boolean.FALSE.equals(result)) {
+            for (Object arg : pjp.getArgs()) {
+                bloomFilters.put(arg);
+            }
+        }
         CacheKeyDTO cacheKeyDTO = cacheKeyUtil.assembleFinalCacheKey(pjp, cacheAbleEntity, methodSignature);
         String primaryKey = cacheKeyDTO.getPrimaryKey();
-        if (cacheKeyDTO.getPrimaryKey() != null) {
+        Long version = isVersionMode() ? Arrays.stream(pjp.getArgs()).map(arg -> EntityVersion.of(arg, cacheAbleEntity.versionField())).filter(Objects::nonNull).findFirst().orElse(null) : null;
+        if (primaryKey != null && version != null) {
+            this.deleteWithTombstone(cacheKeyDTO, version);
+        } else if (primaryKey != null) {
             String lockKey = getWriteLockKey(primaryKey);
-            Long lockNum = this.tryWriteLock(lockKey, lockSeconds);
+            // 新增写锁的同时删除之前的缓存，删除后立即释放写锁
+            Long lockNum = this.lockAndDelete(lockKey, lockSeconds, cacheKeyDTO);
             log.info("write lock increment key: [{}], lockNum: [{}]", lockKey, lockNum);
-            // 先删除之前的缓存
-            try {
-                this.delete(cacheKeyDTO);
-            } finally {
-                lockNum = this.releaseWriteLock(lockKey);
-                log.info("write lock decrement key: [{}], lockNum: [{}]", lockKey, lockNum);
-            }
+            lockNum = this.releaseWriteLock(lockKey);
+            log.info("write lock decrement key: [{}], lockNum: [{}]", lockKey, lockNum);
         }
         return result;
     }
 
     /**
-     * 读锁key
+     * 写锁key
      *
      * @param key
      * @return
      */
-    private String getReadLockKey(String key) {
-        return CacheConstant.READ_LOCK + key;
+    private String getWriteLockKey(String key) {
+        return CacheConstant.WRITE_LOCK + key;
     }
 
     /**
-     * 写锁key
+     * 版本key
      *
      * @param key
      * @return
      */
-    private String getWriteLockKey(String key) {
-        return CacheConstant.WRITE_LOCK + key;
+    private String getVersionKey(String key) {
+        return CacheConstant.VERSION + key;
+    }
+
+    private boolean isVersionMode() {
+        return cacheProperties.getConsistency().getMode() == ConsistencyMode.VERSION;
+    }
+
+    /**
+     * 更新后的墓碑版本号，取数据库行的版本：乐观锁更新成功后会把新版本写回更新参数，不使用应用服务器时间
+     *
+     * @param source
+     * @param cacheAbleEntity
+     * @param before          更新前参数中的版本号
+     * @return
+     */
+    private long writtenVersion(Object source, CacheAbleEntity cacheAbleEntity, long before) {
+        Long version = EntityVersion.of(source, cacheAbleEntity.versionField());
+        return version == null ? before : Math.max(version, before);
     }
 
-    private void delete(CacheKeyDTO cacheKeyDTO) {
-        redisService.unlink(Lists.newArrayList(cacheKeyDTO.getPrimaryKey(), cacheKeyDTO.getIndexKey()));
+    /**
+     * 删除主键key及索引key并留下墓碑版本，同一管道中登记延迟双删
+     *
+     * @param cacheKeyDTO
+     * @param version
+     */
+    private void deleteWithTombstone(CacheKeyDTO cacheKeyDTO, long version) {
+        byte[][] keysAndArgs = deleteWithTombstoneArgs(cacheKeyDTO, version);
+        List<String> keys = getCacheKeys(cacheKeyDTO);
+        redisScripts.executePipelined((RedisCallback<Object>) redisConnection -> {
+            redisScripts.evalSha(redisConnection, CacheConstant.LuaScript.DELETE_WITH_TOMBSTONE, ReturnType.INTEGER, keysAndArgs.length - 2, keysAndArgs);
+            delayedInvalidator.schedule(redisConnection, keys, 0L);
+            return null;
+        });
+        nearCache.invalidate(keys);
+    }
+
+    /**
+     * 删除缓存，同一管道中登记延迟双删
+     *
+     * @param keys
+     */
+    private void deleteAndSchedule(List<String> keys) {
+        redisScripts.executePipelined((RedisCallback<Object>) redisConnection -> {
+            redisConnection.unlink(keys.stream().map(key -> key.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new));
+            delayedInvalidator.schedule(redisConnection, keys, 0L);
+            return null;
+        });
+        nearCache.invalidate(keys);
     }
 
-    public void delPattern(String key) {
-        long cursorId = 0L;
-        for (;;) {
-            ScanCursor<String> scanCursor = redisService.scan(cursorId, "*" + key + "*");
-            if (scanCursor.getCursorId() == 0L || CollectionUtils.isEmpty(scanCursor.getItems())) {
-                break;
+    /**
+     * 通过管道批量删除缓存并留下墓碑版本
+     *
+     * @param cacheKeyDTOList
+     * @param versions        更新后的版本号，和 cacheKeyDTOList 一一对应，调用方保证不为空
+     */
+    private void deleteWithTombstoneBatch(List<CacheKeyDTO> cacheKeyDTOList, List<Long> versions) {
+        if (cacheKeyDTOList.isEmpty()) {
+            return;
+        }
+        redisScripts.executePipelined((RedisCallback<Object>) redisConnection -> {
+            for (int i = 0; i < cacheKeyDTOList.size(); i++) {
+                byte[][] keysAndArgs = deleteWithTombstoneArgs(cacheKeyDTOList.get(i), versions.get(i));
+                redisScripts.evalSha(redisConnection, CacheConstant.LuaScript.DELETE_WITH_TOMBSTONE, ReturnType.INTEGER, keysAndArgs.length - 2, keysAndArgs);
+                delayedInvalidator.schedule(redisConnection, getCacheKeys(cacheKeyDTOList.get(i)), 0L);
             }
-            redisService.unlink(scanCursor.getItems());
-            cursorId = scanCursor.getCursorId();
+            return null;
+        });
+        nearCache.invalidate(cacheKeyDTOList.stream().flatMap(cacheKeyDTO -> getCacheKeys(cacheKeyDTO).stream()).collect(Collectors.toList()));
+    }
+
+    /**
+     * DELETE_WITH_TOMBSTONE 脚本参数，版本key及需要删除的key，最后两个为参数
+     *
+     * @param cacheKeyDTO
+     * @param version
+     * @return
+     */
+    private byte[][] deleteWithTombstoneArgs(CacheKeyDTO cacheKeyDTO, long version) {
+        List<String> keys = getCacheKeys(cacheKeyDTO);
+        byte[][] keysAndArgs = new byte[keys.size() + 3][];
+        keysAndArgs[0] = getVersionKey(cacheKeyDTO.getPrimaryKey()).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < keys.size(); i++) {
+            keysAndArgs[i + 1] = keys.get(i).getBytes(StandardCharsets.UTF_8);
         }
+        keysAndArgs[keys.size() + 1] = String.valueOf(version).getBytes();
+        keysAndArgs[keys.size() + 2] = String.valueOf(cacheProperties.getConsistency().getTombstoneSeconds()).getBytes();
+        return keysAndArgs;
+    }
+
+    /**
+     * 新增写锁并删除主键key及索引key，同一管道中登记延迟双删，第一次删除在数据库更新之前，到期时间再加上写锁时间兜底
+     *
+     * @param lockKey
+     * @param lockSeconds
+     * @param cacheKeyDTO
+     * @return 写锁次数
+     */
+    private Long lockAndDelete(String lockKey, long lockSeconds, CacheKeyDTO cacheKeyDTO) {
+        byte[][] keysAndArgs = lockAndDeleteArgs(lockKey, lockSeconds, cacheKeyDTO);
+        List<String> keys = getCacheKeys(cacheKeyDTO);
+        List<Object> results = redisScripts.executePipelined((RedisCallback<Object>) redisConnection -> {
+            redisScripts.evalSha(redisConnection, CacheConstant.LuaScript.LOCK_AND_DELETE, ReturnType.INTEGER, keysAndArgs.length - 2, keysAndArgs);
+            delayedInvalidator.schedule(redisConnection, keys, TimeUnit.SECONDS.toMillis(lockSeconds));
+            return null;
+        });
+        nearCache.invalidate(keys);
+        return (Long) results.get(0);
+    }
+
+    /**
+     * LOCK_AND_DELETE 脚本参数，写锁及需要删除的key，最后两个为参数
+     *
+     * @param lockKey
+     * @param lockSeconds
+     * @param cacheKeyDTO
+     * @return
+     */
+    private byte[][] lockAndDeleteArgs(String lockKey, long lockSeconds, CacheKeyDTO cacheKeyDTO) {
+        List<String> keys = getCacheKeys(cacheKeyDTO);
+        byte[][] keysAndArgs = new byte[keys.size() + 3][];
+        keysAndArgs[0] = lockKey.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < keys.size(); i++) {
+            keysAndArgs[i + 1] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        keysAndArgs[keys.size() + 1] = String.valueOf(1).getBytes();
+        keysAndArgs[keys.size() + 2] = String.valueOf(lockSeconds).getBytes();
+        return keysAndArgs;
+    }
+
+    /**
+     * 主键key、索引key及迁移模式下旧格式的索引key
+     *
+     * @param cacheKeyDTO
+     * @return
+     */
+    private List<String> getCacheKeys(CacheKeyDTO cacheKeyDTO) {
+        List<String> keys = Lists.newArrayList(cacheKeyDTO.getPrimaryKey(), cacheKeyDTO.getIndexKey());
+        if (cacheKeyDTO.getLegacyIndexKey() != null) {
+            keys.add(cacheKeyDTO.getLegacyIndexKey());
+        }
+        return keys;
+    }
+
+    /**
+     * 删除 keyName 下的所有缓存，开启命名空间代数时只把代数加1，否则提交后台删除任务
+     *
+     * @param keyName
+     */
+    public void delPattern(String keyName) {
+        if (namespaceGeneration.isEnabled()) {
+            namespaceGeneration.increment(keyName);
+            nearCache.invalidatePattern(keyName + "*");
+            return;
+        }
+        nearCache.invalidatePattern("*" + keyName + "*");
+        keyPurger.submit("*" + keyName + "*");
     }
 
     /**
@@ -382,11 +1445,16 @@ public class CacheComponent {
      * @param keyNameSuffix
      * @param keyNameClass
      * @param keyFormat
+     * @return 开启命名空间代数时返回新的代数，否则返回0，删除进度通过 KeyPurger 查询
      */
     public Long deleteByKeyNamePattern(String keyNamePrefix, String keyNameSuffix, Class keyNameClass, KeyFormat keyFormat) {
         String keyName = cacheKeyUtil.generateKeyName(keyNamePrefix, keyNameSuffix, keyNameClass, keyFormat);
-        Set<String> keys = redisService.keys(keyName + "*");
-        return redisService.unlink(keys);
+        nearCache.invalidatePattern(keyName + "*");
+        if (namespaceGeneration.isEnabled()) {
+            return namespaceGeneration.increment(keyName);
+        }
+        keyPurger.submit(keyName + "*");
+        return 0L;
     }
 
     /**
@@ -399,7 +1467,10 @@ public class CacheComponent {
      */
     public Long deleteByKey(String keyNamePrefix, String keyNameSuffix, Class keyNameClass, KeyFormat keyFormat, Object keyObj) {
         String key = cacheKeyUtil.assembleKey(keyNamePrefix, keyNameSuffix, keyNameClass, keyFormat, keyObj);
-        return redisService.unlink(Collections.singleton(key));
+        String legacyKey = cacheKeyUtil.assembleLegacyKey(keyNamePrefix, keyNameSuffix, keyNameClass, keyFormat, keyObj);
+        List<String> keys = legacyKey == null ? Collections.singletonList(key) : Lists.newArrayList(key, legacyKey);
+        nearCache.invalidate(keys);
+        return redisService.unlink(keys);
     }
 
 }
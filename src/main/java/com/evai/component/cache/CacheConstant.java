@@ -44,6 +44,32 @@ public interface CacheConstant {
     String READ_LOCK = "readLock:";
     String WRITE_LOCK = "writeLock:";
 
+    /**
+     * 集群请求合并的锁，同时作为"计算中"标识
+     */
+    String COMPUTE_LOCK = "computeLock:";
+
+    /**
+     * 命名空间代数key前缀及拼接到最终key中的代数标识
+     */
+    String NAMESPACE_GENERATION = "nsGen:";
+    String GENERATION = "v";
+
+    /**
+     * 后台删除任务进度key前缀
+     */
+    String PURGE_JOB = "purgeJob:";
+
+    /**
+     * 实体类缓存版本号（及更新后的墓碑版本）key前缀
+     */
+    String VERSION = "version:";
+
+    /**
+     * 实体类更新写入缓冲区key前缀
+     */
+    String WRITE_BEHIND = "writeBehind:";
+
     /**
      * 所有缓存前缀
      */
@@ -66,6 +92,8 @@ public interface CacheConstant {
 
     long SECOND_OF_AN_HOUR = 60 * 60L;
 
+    long SECOND_OF_A_DAY = 24 * 60 * 60L;
+
     /**
      * 创建分表锁
      */
@@ -76,6 +104,37 @@ public interface CacheConstant {
      */
     String SPLIT_TABLE_LIST = "split_table_list:";
 
+    /**
+     * 多个key的消息分隔符
+     */
+    String LINE_SEPARATOR = "\n";
+
+    /**
+     * 本地缓存失效通知频道
+     */
+    String LOCAL_INVALIDATE_CHANNEL = CACHE_PREFIX + "local:invalidate";
+
+    /**
+     * 本地缓存按匹配规则失效通知频道
+     */
+    String LOCAL_INVALIDATE_PATTERN_CHANNEL = CACHE_PREFIX + "local:invalidatePattern";
+
+    /**
+     * 集群请求合并计算完成通知频道
+     */
+    String COMPUTED_CHANNEL = CACHE_PREFIX + "computed";
+
+    /**
+     * 延迟双删有序集合，score 为到期时间
+     */
+    String DOUBLE_DELETE = CACHE_PREFIX + "doubleDelete";
+
+    /**
+     * 实体类主键布隆过滤器位图key前缀及参数key后缀
+     */
+    String BLOOM_FILTER = CACHE_PREFIX + "bloom:";
+    String BLOOM_FILTER_META = ":meta";
+
     interface LuaScript {
         /**
          * 自增锁次数并设置过期时间
@@ -87,10 +146,113 @@ public interface CacheConstant {
          */
         String DECRBY_RELEASE = "local current = redis.call('decrBy', KEYS[1], tonumber(ARGV[1])); if current <= 0 then redis.call('del', KEYS[1]) end; return current";
 
+        /**
+         * 自增写锁次数并设置过期时间，同时删除缓存key，返回写锁次数
+         * KEYS[1] 写锁，KEYS[2..n] 需要删除的key，ARGV[1] 自增步长，ARGV[2] 过期时间
+         */
+        String LOCK_AND_DELETE = "local current = redis.call('incrBy', KEYS[1], tonumber(ARGV[1])); redis.call('expire', KEYS[1], tonumber(ARGV[2])); " +
+                "if #KEYS > 1 then redis.call('unlink', unpack(KEYS, 2)) end; return current";
+
+        /**
+         * 磁盘缓存恢复的记录是否仍然有效：写锁不存在且 redis 中的值未被修改（sha1 相同），返回1有效
+         * KEYS[1] 缓存key，KEYS[2] 写锁，ARGV[1] 磁盘缓存值的 sha1
+         */
+        String PROBE_UNCHANGED = "if redis.call('exists', KEYS[2]) == 1 then return 0 end; " +
+                "local current = redis.call('get', KEYS[1]); if current and redis.sha1hex(current) == ARGV[1] then return 1 end; return 0";
+
+        /**
+         * 缓存值未被修改时（sha1 相同）写入新值并保留原过期时间，否则删除缓存，返回是否写入
+         * KEYS[1] 主键key，ARGV[1] 读取时缓存值的 sha1，ARGV[2] 新值
+         */
+        String PATCH_IF_UNCHANGED = "local current = redis.call('get', KEYS[1]); " +
+                "if current and redis.sha1hex(current) == ARGV[1] then local ttl = redis.call('pttl', KEYS[1]); " +
+                "if ttl > 0 then redis.call('set', KEYS[1], ARGV[2], 'PX', ttl) return 1 end end; " +
+                "redis.call('del', KEYS[1]); return 0";
+
+        /**
+         * 版本号方案中的 PATCH_IF_UNCHANGED：已记录更新的版本时删除缓存；否则缓存值未被修改时写入新值并保留原过期时间，
+         * 新版本大于已记录的版本时同时写入版本key，之前读取到旧版本的请求无法再覆盖，返回是否写入
+         * KEYS[1] 主键key，KEYS[2] 版本key，ARGV[1] 读取时缓存值的 sha1，ARGV[2] 新值，ARGV[3] 新版本号
+         */
+        String PATCH_IF_NEWER = "local v = redis.call('get', KEYS[2]); " +
+                "if not v or tonumber(v) <= tonumber(ARGV[3]) then local current = redis.call('get', KEYS[1]); " +
+                "if current and redis.sha1hex(current) == ARGV[1] then local ttl = redis.call('pttl', KEYS[1]); " +
+                "if ttl > 0 then redis.call('set', KEYS[1], ARGV[2], 'PX', ttl); " +
+                "if not v or tonumber(v) < tonumber(ARGV[3]) then redis.call('set', KEYS[2], ARGV[3], 'PX', ttl) end; return 1 end end end; " +
+                "redis.call('del', KEYS[1]); return 0";
+
         /**
          * 判断是否存在写锁，不存在则写入缓存
          */
         String SET_WITH_NOT_EXIST = "if (redis.call('exists', KEYS[1]) <= 0) then redis.call('setEx', KEYS[2], ARGV[1], ARGV[2]) return 1 else return 0 end";
+
+        /**
+         * 写锁不存在时同时设置主键key（实体类）及索引key（主键key）
+         * KEYS[1] 写锁，KEYS[2] 主键key，KEYS[3] 索引key，ARGV[1] 过期时间，ARGV[2] 实体类，ARGV[3] 主键key
+         */
+        String SET_ENTITY_WITH_NOT_EXIST = "if (redis.call('exists', KEYS[1]) <= 0) then redis.call('setEx', KEYS[2], ARGV[1], ARGV[2]) redis.call('setEx', KEYS[3], ARGV[1], ARGV[3]) return 1 else return 0 end";
+
+        /**
+         * 写锁不存在且版本号不小于已记录的版本时同时设置版本号、主键key（实体类）及索引key（主键key）
+         * 取不到版本号的更新按写锁方案处理，所以同时判断写锁
+         * KEYS[1] 版本key，KEYS[2] 主键key，KEYS[3] 索引key，KEYS[4] 写锁，ARGV[1] 过期时间，ARGV[2] 实体类，ARGV[3] 主键key，ARGV[4] 版本号
+         */
+        String SET_ENTITY_IF_NEWER = "if redis.call('exists', KEYS[4]) == 1 then return 0 end; local v = redis.call('get', KEYS[1]); if v and tonumber(v) > tonumber(ARGV[4]) then return 0 end; " +
+                "redis.call('setEx', KEYS[1], ARGV[1], ARGV[4]) redis.call('setEx', KEYS[2], ARGV[1], ARGV[2]) redis.call('setEx', KEYS[3], ARGV[1], ARGV[3]) return 1";
+
+        /**
+         * 删除缓存并留下墓碑版本（取已记录版本和新版本的较大值）
+         * KEYS[1] 版本key，KEYS[2..n] 需要删除的key，ARGV[1] 新版本号，ARGV[2] 墓碑过期时间
+         */
+        String DELETE_WITH_TOMBSTONE = "local v = redis.call('get', KEYS[1]); if not v or tonumber(v) < tonumber(ARGV[1]) then v = ARGV[1] end; " +
+                "redis.call('setEx', KEYS[1], ARGV[2], v); if #KEYS > 1 then redis.call('unlink', unpack(KEYS, 2)) end; return 1";
+
+        /**
+         * 写入更新缓冲区并记录最早的更新时间，返回缓冲区字段数
+         * KEYS[1] 缓冲区，KEYS[2] 最早更新时间，ARGV[1] 当前时间，ARGV[2..n] 字段及值
+         */
+        String WRITE_BEHIND_BUFFER = "for i = 2, #ARGV, 2 do redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) end; " +
+                "redis.call('set', KEYS[2], ARGV[1], 'NX'); return redis.call('hlen', KEYS[1])";
+
+        /**
+         * 存在"写入中"的数据（上次写入失败，重试次数未超过上限）时直接返回，否则把缓冲区改名为"写入中"，返回是否有需要写入的数据
+         * KEYS[1] 缓冲区，KEYS[2] 写入中，KEYS[3] 最早更新时间
+         */
+        String WRITE_BEHIND_CLAIM = "if redis.call('exists', KEYS[2]) == 1 then return 1 end; if redis.call('exists', KEYS[1]) == 0 then return 0 end; " +
+                "redis.call('rename', KEYS[1], KEYS[2]); redis.call('del', KEYS[3]); return 1";
+
+        /**
+         * 把"写入中"的数据合并到死信 hash，同一字段保留最后一次更新，删除"写入中"及重试次数，返回移入的字段数
+         * KEYS[1] 写入中，KEYS[2] 死信，KEYS[3] 重试次数
+         */
+        String WRITE_BEHIND_DEAD_LETTER = "local entries = redis.call('hgetall', KEYS[1]); " +
+                "for i = 1, #entries, 2 do redis.call('hset', KEYS[2], entries[i], entries[i + 1]) end; " +
+                "redis.call('del', KEYS[1], KEYS[3]); return #entries / 2";
+
+        /**
+         * 从有序集合中认领到期的key并删除，返回已删除的key
+         * KEYS[1] 有序集合，ARGV[1] 当前时间，ARGV[2] 每批数量
+         */
+        String POP_DUE_AND_DELETE = "local keys = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2])); " +
+                "if #keys > 0 then redis.call('zrem', KEYS[1], unpack(keys)) redis.call('unlink', unpack(keys)) end; return keys";
+
+        /**
+         * 值相同时删除，用于释放自己持有的锁
+         */
+        String RELEASE_IF_EQUAL = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
+        /**
+         * 通过索引key查询主键key及实体类，返回 {主键key, 实体类, 是否需要刷新}
+         * 索引key即将到期时延长过期时间；索引key不存在返回nil，主键key为空值或不存在时只返回主键key
+         * ARGV[1] 过期时间，ARGV[2] 异步更新阈值，ARGV[3] 空值标识
+         * 注意：主键key由索引key的值得到，没有通过 KEYS 声明，集群中两个key可能不在同一个槽，只能在单机或主从模式下执行，
+         * 集群连接改为分别查询索引key和主键key
+         */
+        String GET_ENTITY = "local pk = redis.call('get', KEYS[1]); if not pk then return nil end; if pk == ARGV[3] then return {pk} end; " +
+                "local entity = redis.call('get', pk); if not entity then return {pk} end; " +
+                "if redis.call('ttl', KEYS[1]) < tonumber(ARGV[2]) then redis.call('expire', KEYS[1], tonumber(ARGV[1])) end; " +
+                "local refresh = 0; if redis.call('ttl', pk) < tonumber(ARGV[2]) then refresh = 1 end; " +
+                "return {pk, entity, refresh}";
     }
 
 }
@@ -0,0 +1,139 @@
+package com.evai.component.cache;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author crh
+ * @date 2019-12-08
+ * @description @CacheAble 缓存值信封，和缓存值一起存放逻辑过期时间、重新计算耗时和格式版本
+ * 格式：\u001e版本|逻辑过期时间戳|计算耗时毫秒|缓存值（编码后的字节）
+ * 读取时在本地根据概率提前刷新（XFetch），无需再查询key的过期时间
+ */
+@Getter
+public class CacheEnvelope {
+
+    /**
+     * 信封开头标识，json、编码器标识及普通字符串不会以该字符开头
+     */
+    private static final byte MARK = 0x1e;
+
+    private static final byte SEPARATOR = '|';
+
+    private static final int VERSION = 1;
+
+    /**
+     * 格式版本
+     */
+    private int version;
+    /**
+     * 逻辑过期时间戳，毫秒
+     */
+    private long softExpireAt;
+    /**
+     * 重新计算缓存值的耗时，毫秒
+     */
+    private long delta;
+    /**
+     * 缓存值在原始字节数组中的开始位置，避免复制
+     */
+    private int payloadOffset;
+
+    /**
+     * 封装缓存值
+     *
+     * @param payload     编码后的缓存值
+     * @param softSeconds 逻辑过期时间，单位秒
+     * @param delta       重新计算缓存值的耗时，毫秒
+     * @return
+     */
+    public static byte[] encode(byte[] payload, long softSeconds, long delta) {
+        long softExpireAt = System.currentTimeMillis() + Math.max(softSeconds, 0L) * 1000L;
+        byte[] header = new StringBuilder(32)
+                .append((char) MARK)
+                .append(VERSION)
+                .append((char) SEPARATOR)
+                .append(softExpireAt)
+                .append((char) SEPARATOR)
+                .append(delta)
+                .append((char) SEPARATOR)
+                .toString()
+                .getBytes(StandardCharsets.US_ASCII);
+        byte[] result = new byte[header.length + payload.length];
+        System.arraycopy(header, 0, result, 0, header.length);
+        System.arraycopy(payload, 0, result, header.length, payload.length);
+        return result;
+    }
+
+    /**
+     * 解析缓存值
+     *
+     * @param value
+     * @return 不是信封格式（旧数据）返回null
+     */
+    public static CacheEnvelope decode(byte[] value) {
+        if (value == null || value.length == 0 || value[0] != MARK) {
+            return null;
+        }
+        int versionEnd = indexOf(value, 1);
+        int softExpireEnd = versionEnd < 0 ? -1 : indexOf(value, versionEnd + 1);
+        int deltaEnd = softExpireEnd < 0 ? -1 : indexOf(value, softExpireEnd + 1);
+        if (deltaEnd < 0) {
+            return null;
+        }
+        CacheEnvelope envelope = new CacheEnvelope();
+        envelope.version = (int) parseLong(value, 1, versionEnd);
+        envelope.softExpireAt = parseLong(value, versionEnd + 1, softExpireEnd);
+        envelope.delta = parseLong(value, softExpireEnd + 1, deltaEnd);
+        envelope.payloadOffset = deltaEnd + 1;
+        return envelope;
+    }
+
+    /**
+     * 缓存值开始位置，不是信封格式时为0
+     *
+     * @param envelope
+     * @return
+     */
+    public static int payloadOffset(CacheEnvelope envelope) {
+        return envelope == null ? 0 : envelope.payloadOffset;
+    }
+
+    private static int indexOf(byte[] value, int from) {
+        // 头部长度有限，避免在缓存值中查找
+        int end = Math.min(value.length, from + 20);
+        for (int i = from; i < end; i++) {
+            if (value[i] == SEPARATOR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long parseLong(byte[] value, int from, int to) {
+        long result = 0L;
+        for (int i = from; i < to; i++) {
+            int digit = value[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return 0L;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * 概率提前刷新（XFetch）：now - delta * beta * ln(random) >= 逻辑过期时间
+     * 计算耗时越长、越接近逻辑过期时间，刷新的概率越大，超过逻辑过期时间必定刷新
+     *
+     * @param beta 大于1倾向于更早刷新，小于1倾向于更晚刷新
+     * @return
+     */
+    public boolean shouldRefresh(double beta) {
+        double random = 1.0D - ThreadLocalRandom.current().nextDouble();
+        return System.currentTimeMillis() - delta * beta * Math.log(random) >= softExpireAt;
+    }
+
+}
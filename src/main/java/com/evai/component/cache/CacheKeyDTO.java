@@ -11,6 +11,11 @@ import java.util.Map;
  */
 @Data
 public class CacheKeyDTO {
+    /**
+     * 缓存名称，不含命名空间代数
+     */
+    private String keyName;
+
     /**
      * 主键key，存放实体类对象
      */
@@ -21,6 +26,11 @@ public class CacheKeyDTO {
      */
     private String indexKey;
 
+    /**
+     * 迁移模式下旧格式（MD5）的索引key，keyId无需摘要或未开启迁移模式时为null
+     */
+    private String legacyIndexKey;
+
     /**
      * 参数键值对
      */
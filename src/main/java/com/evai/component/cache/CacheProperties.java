@@ -1,10 +1,17 @@
 package com.evai.component.cache;
 
+import com.evai.component.cache.codec.JsonCacheCodec;
+import com.evai.component.cache.enums.ConsistencyMode;
 import com.evai.component.cache.enums.KeyFormat;
+import com.evai.component.cache.enums.KeyHashAlgorithm;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+
 /**
  * @author crh
  * @date 2019-07-12
@@ -19,4 +26,432 @@ public class CacheProperties {
     private Integer[] expired;
     private Integer asyncSeconds;
 
+    /**
+     * CacheAble 注解概率提前刷新（XFetch）系数，大于1倾向于更早刷新，小于1倾向于更晚刷新
+     */
+    private double refreshBeta = 1.0D;
+
+    /**
+     * 默认缓存值编码器名称，json、smile、cbor 或自定义 CacheCodec 的名称
+     */
+    private String codec = JsonCacheCodec.NAME;
+
+    /**
+     * 批量更新或删除时每批的数据量，每批通过管道加写锁、删除缓存及释放写锁
+     */
+    private int writeBatchSize = 500;
+
+    /**
+     * 缓存值压缩配置
+     */
+    private Compression compression = new Compression();
+
+    /**
+     * 本地缓存（一级缓存）配置
+     */
+    private Local local = new Local();
+
+    /**
+     * 本地磁盘缓存配置
+     */
+    private Disk disk = new Disk();
+
+    /**
+     * 单机请求合并配置
+     */
+    private Flight flight = new Flight();
+
+    /**
+     * 缓存keyId摘要配置
+     */
+    private Key key = new Key();
+
+    /**
+     * 提前刷新配置
+     */
+    private Refresh refresh = new Refresh();
+
+    /**
+     * 命名空间代数配置
+     */
+    private Namespace namespace = new Namespace();
+
+    /**
+     * 按匹配规则后台删除配置
+     */
+    private Purge purge = new Purge();
+
+    /**
+     * 实体类主键布隆过滤器配置
+     */
+    private Bloom bloom = new Bloom();
+
+    /**
+     * 实体类缓存一致性配置
+     */
+    private Consistency consistency = new Consistency();
+
+    /**
+     * 更新写入缓冲区（write-behind）配置
+     */
+    private WriteBehind writeBehind = new WriteBehind();
+
+    /**
+     * 延迟双删配置
+     */
+    private DoubleDelete doubleDelete = new DoubleDelete();
+
+    /**
+     * 实体类缓存预热配置
+     */
+    private Warm warm = new Warm();
+
+    /**
+     * 自适应过期时间配置
+     */
+    private Ttl ttl = new Ttl();
+
+    /**
+     * 热点key探测配置
+     */
+    private HotKey hotKey = new HotKey();
+
+    @Data
+    public static class Local {
+        /**
+         * 是否开启本地缓存
+         */
+        private boolean enabled = false;
+        /**
+         * 注解未指定本地缓存时间时使用的默认时间，单位秒，0 表示不使用本地缓存
+         */
+        private int seconds = 5;
+        /**
+         * 最大缓存条数
+         */
+        private long maximumSize = 10000L;
+        /**
+         * 最大缓存权重（按序列化后的字符长度计算），大于0时代替 maximumSize 生效
+         */
+        private long maximumWeight = 0L;
+    }
+
+    @Data
+    public static class Disk {
+        /**
+         * 是否开启本地磁盘缓存，开启后重启的节点可直接使用重启前的缓存
+         */
+        private boolean enabled = false;
+        /**
+         * 分段文件目录，每个进程需使用不同的目录
+         */
+        private String directory = System.getProperty("java.io.tmpdir") + "/cacheAble";
+        /**
+         * 每个分段文件的大小，单位字节
+         */
+        private int segmentBytes = 64 * 1024 * 1024;
+        /**
+         * 最多保留的分段数量，超过时整理最旧的分段
+         */
+        private int maxSegments = 8;
+        /**
+         * 最长缓存时间，单位秒
+         */
+        private long maxSeconds = 600L;
+        /**
+         * 超过该大小的缓存值不写入磁盘，单位字节
+         */
+        private int maxValueBytes = 1024 * 1024;
+        /**
+         * 节点停止超过该时间后启动时清空磁盘缓存，期间的失效通知已丢失，单位秒
+         */
+        private long maxOfflineSeconds = 30L;
+    }
+
+    @Data
+    public static class Flight {
+        /**
+         * 是否开启缓存未命中时的请求合并
+         */
+        private boolean enabled = true;
+        /**
+         * 等待其它线程结果的超时时间，超时后自行执行业务逻辑，单位毫秒
+         */
+        private long timeoutMillis = 3000L;
+        /**
+         * 集群请求合并（MissMode.WAIT）的锁及"计算中"标识过期时间，单位秒
+         */
+        private long lockSeconds = 10L;
+        /**
+         * 集群请求合并中等待其它节点计算结果的超时时间，超时后自行执行业务逻辑，单位毫秒
+         */
+        private long waitMillis = 3000L;
+        /**
+         * 其它节点计算中时可以返回的本地过期副本的最长过期时间，单位毫秒，0 表示不返回过期副本
+         * 失效通知会直接删除本地副本，过期副本只会是按时间过期的数据
+         */
+        private long staleMillis = 60000L;
+    }
+
+    @Data
+    public static class Compression {
+        /**
+         * 是否压缩大缓存值，开启前需确保所有节点已升级到支持解压的版本
+         */
+        private boolean enabled = false;
+        /**
+         * 编码后超过该字节数才压缩，小值压缩收益低且浪费CPU
+         */
+        private int threshold = 16 * 1024;
+        /**
+         * Deflater 压缩级别，1 速度最快，9 压缩率最高
+         */
+        private int level = Deflater.BEST_SPEED;
+    }
+
+    @Data
+    public static class Key {
+        /**
+         * keyId摘要算法，自定义 KeyHasher bean 时无效
+         */
+        private KeyHashAlgorithm hashAlgorithm = KeyHashAlgorithm.MURMUR3;
+        /**
+         * 迁移模式：新格式key未命中时再读取旧的 MD5 格式key，并复制到新key，旧key自然过期
+         * 删除缓存时同时删除新旧两种格式的key，所有节点升级且旧key过期后关闭
+         */
+        private boolean legacyRead = false;
+    }
+
+    @Data
+    public static class Refresh {
+        /**
+         * 刷新线程数
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+        /**
+         * 刷新队列容量，队列满时丢弃新的刷新任务
+         */
+        private int queueCapacity = 500;
+        /**
+         * 集群内刷新令牌的过期时间，过期前其它节点不会重复刷新同一个key，单位毫秒
+         */
+        private long lockMillis = 10000L;
+    }
+
+    @Data
+    public static class Namespace {
+        /**
+         * 是否开启命名空间代数，开启后按 keyName 批量删除缓存只需把代数加1，不再扫描key
+         */
+        private boolean enabled = false;
+        /**
+         * 本地代数重新校验时间，单位毫秒
+         */
+        private long revalidateMillis = 1000L;
+    }
+
+    @Data
+    public static class Purge {
+        /**
+         * 本节点所有删除任务每秒最多删除的key数量
+         */
+        private double opsPerSecond = 5000D;
+        /**
+         * 每次 SCAN 的 COUNT
+         */
+        private int scanCount = 500;
+        /**
+         * 管道中每条 UNLINK 命令的key数量
+         */
+        private int unlinkBatch = 100;
+        /**
+         * 每处理多少批保存一次进度
+         */
+        private int checkpointBatches = 10;
+        /**
+         * 同时执行的删除任务数
+         */
+        private int threads = 2;
+    }
+
+    @Data
+    public static class Bloom {
+        /**
+         * 是否开启布隆过滤器，开启后对标注 CacheBloomFilter 的实体类生效
+         */
+        private boolean enabled = false;
+        /**
+         * 本地位图副本重新读取间隔，单位秒
+         */
+        private long refreshSeconds = 60L;
+        /**
+         * 初始化时每批读取的主键数量
+         */
+        private int rebuildBatch = 5000;
+    }
+
+    @Data
+    public static class Consistency {
+        /**
+         * 一致性方案，VERSION 需要实体类有标注 @Version 的数字版本字段（CacheAbleEntity.versionField），启动时校验
+         */
+        private ConsistencyMode mode = ConsistencyMode.LOCK;
+        /**
+         * 更新后墓碑版本的保留时间，期间读到旧版本数据的请求不会回写缓存，单位秒
+         */
+        private long tombstoneSeconds = 30L;
+    }
+
+    @Data
+    public static class WriteBehind {
+        /**
+         * 检查缓冲区的间隔时间，单位毫秒
+         */
+        private long flushIntervalMillis = 1000L;
+        /**
+         * 最早的更新超过该时间未写入数据库时立即写入，单位毫秒
+         */
+        private long maxLagMillis = 5000L;
+        /**
+         * 缓冲区字段数达到该值时立即写入
+         */
+        private int maxPending = 10000;
+        /**
+         * 每次 flushStatements 的sql数量
+         */
+        private int batchSize = 100;
+        /**
+         * 集群内写入锁的过期时间，单位毫秒，需大于一次写入数据库的时间
+         */
+        private long lockMillis = 60000L;
+        /**
+         * "写入中"的数据连续写入失败的最大次数，超过后移入死信 hash（writeBehind:deadLetter:keyName），需人工处理
+         */
+        private int maxRetries = 5;
+    }
+
+    @Data
+    public static class DoubleDelete {
+        /**
+         * 是否开启延迟双删，开启后实体类更新或删除后延迟再删除一次缓存
+         */
+        private boolean enabled = false;
+        /**
+         * 第二次删除的延迟时间，需大于从库延迟，单位毫秒
+         */
+        private long delayMillis = 1000L;
+        /**
+         * 轮询间隔，也是合并重复key的时间窗口，单位毫秒
+         */
+        private long pollIntervalMillis = 200L;
+        /**
+         * 每次认领到期key的数量
+         */
+        private int batchSize = 500;
+    }
+
+    @Data
+    public static class Warm {
+        /**
+         * 应用启动完成后自动预热的实体类，类的 SimpleName 或全限定名
+         */
+        private Set<String> startupEntities = new HashSet<>();
+        /**
+         * 每个预热任务并行读取的主键区间数量，也是预热线程数
+         */
+        private int parallelism = 4;
+        /**
+         * 每批读取的数据量
+         */
+        private int batchSize = 1000;
+        /**
+         * 本节点所有预热任务每秒最多读取的数据量
+         */
+        private double rowsPerSecond = 20000D;
+        /**
+         * 缓存过期随机时间，单位秒，需大于预热全部数据的时间
+         */
+        private int[] expired = {1800, 3600};
+        /**
+         * 实体类版本字段名称，component.cache.consistency.mode 为 VERSION 时有效
+         */
+        private String versionField = "version";
+    }
+
+    @Data
+    public static class Ttl {
+        /**
+         * 是否开启自适应过期时间，开启后在注解声明的 expired 范围内按统计值调整过期时间
+         */
+        private boolean enabled = false;
+        /**
+         * 统计窗口，单位秒
+         */
+        private long windowSeconds = 10L;
+        /**
+         * 每个窗口的平滑系数，越大越偏向最近的窗口
+         */
+        private double smoothing = 0.3D;
+        /**
+         * 累计读取次数达到该值后才调整过期时间
+         */
+        private long minSamples = 100L;
+        /**
+         * 每秒读取次数达到该值时热度系数为0.5
+         */
+        private double hotAccessPerSecond = 10D;
+        /**
+         * 业务逻辑耗时达到该值时耗时系数为0.5，单位毫秒
+         */
+        private double expensiveLoadMillis = 50D;
+        /**
+         * 更新次数相对读取次数的权重，越大频繁更新的缓存过期时间越短
+         */
+        private double writePenalty = 10D;
+        /**
+         * 计算结果附近保留的随机范围，占 expired 范围的比例
+         */
+        private double jitter = 0.1D;
+        /**
+         * 最多统计的 keyName 数量
+         */
+        private int maxKeyNames = 1000;
+    }
+
+    @Data
+    public static class HotKey {
+        /**
+         * 是否开启热点key探测，开启后热点key自动保存到本地缓存，不需要开启 component.cache.local.enabled
+         */
+        private boolean enabled = false;
+        /**
+         * 抽样比例，1 表示记录所有读取请求
+         */
+        private double sampleRatio = 0.1D;
+        /**
+         * 本节点每秒请求数超过该值时成为热点key，低于一半时取消
+         */
+        private double thresholdQps = 1000D;
+        /**
+         * 滑动窗口分片数量，窗口时间为 slices * sliceMillis
+         */
+        private int slices = 5;
+        /**
+         * 每个分片的时间，单位毫秒
+         */
+        private long sliceMillis = 1000L;
+        /**
+         * Count-Min Sketch 每行的计数器数量，向上取2的幂
+         */
+        private int width = 4096;
+        /**
+         * 最多同时存在的热点key数量
+         */
+        private int maxHotKeys = 100;
+        /**
+         * 热点key在本地缓存中的时间，单位秒
+         */
+        private int localSeconds = 2;
+    }
+
 }
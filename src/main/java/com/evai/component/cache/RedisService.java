@@ -2,13 +2,17 @@ package com.evai.component.cache;
 
 import com.evai.component.utils.BeanUtil;
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisClusterNode;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.SessionCallback;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 /**
  * @author crh
@@ -21,6 +25,39 @@ public interface RedisService {
 
     void set(String key, String value, long seconds);
 
+    /**
+     * 获取原始字节值，不经过字符串转换
+     *
+     * @param key
+     * @return
+     */
+    byte[] getBytes(String key);
+
+    /**
+     * 设置原始字节值并设置过期时间
+     *
+     * @param key
+     * @param value
+     * @param seconds
+     */
+    void setBytes(String key, byte[] value, long seconds);
+
+    /**
+     * 批量获取原始字节值，顺序和 keys 相同，不存在的key为null
+     *
+     * @param keys
+     * @return
+     */
+    List<byte[]> multiGetBytes(List<String> keys);
+
+    /**
+     * 通过管道批量设置原始字节值，过期时间相同
+     *
+     * @param values
+     * @param seconds
+     */
+    void multiSetBytes(Map<String, byte[]> values, long seconds);
+
     <T> T get(String key, Class<T> clazz);
 
     Long getExpire(String key, TimeUnit timeUnit);
@@ -37,7 +74,23 @@ public interface RedisService {
     @Deprecated
     Set<String> keys(String pattern);
 
-    ScanCursor<String> scan(Long cursorId, String pattern);
+    /**
+     * 集群的所有主节点，SCAN 只遍历当前连接的节点，集群需要分别遍历每个主节点
+     *
+     * @return 非集群返回空集合
+     */
+    List<RedisClusterNode> getMasterNodes();
+
+    /**
+     * 从指定游标开始使用 SCAN 遍历节点上匹配的key，每次 SCAN 的结果交给 consumer 处理，直到游标回到0
+     *
+     * @param node     集群主节点，非集群为null
+     * @param cursorId 开始的游标，0 为从头遍历，可以是上次中断时保存的游标
+     * @param pattern  匹配规则
+     * @param count    每次 SCAN 的 COUNT
+     * @param consumer 参数为本次扫描到的key（可能为空）及下一次的游标
+     */
+    void scan(RedisClusterNode node, long cursorId, String pattern, int count, BiConsumer<List<String>, Long> consumer);
 
     /**
      * 批量删除key，指定 key 集合
@@ -7,12 +7,21 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
 import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
 import org.springframework.data.redis.core.*;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
 
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.BiConsumer;
 
 /**
  * @author crh
@@ -23,6 +32,15 @@ import java.util.concurrent.*;
 @AllArgsConstructor
 public class RedisServiceImpl implements RedisService {
 
+    /**
+     * ScanCursor 只能从游标0开始遍历，各驱动的游标都通过 doScan 执行一次指定游标及节点的 SCAN，用于从保存的游标继续遍历
+     */
+    private static final Method DO_SCAN = ReflectionUtils.findMethod(ScanCursor.class, "doScan", long.class, ScanOptions.class);
+
+    static {
+        ReflectionUtils.makeAccessible(DO_SCAN);
+    }
+
     private final RedisTemplate<String, String> redisTemplate;
 
     @Override
@@ -35,6 +53,37 @@ public class RedisServiceImpl implements RedisService {
         redisTemplate.opsForValue().set(key, value, seconds, TimeUnit.SECONDS);
     }
 
+    @Override
+    public byte[] getBytes(String key) {
+        return redisTemplate.execute((RedisCallback<byte[]>) redisConnection -> redisConnection.get(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void setBytes(String key, byte[] value, long seconds) {
+        redisTemplate.execute((RedisCallback<Boolean>) redisConnection -> redisConnection.set(key.getBytes(StandardCharsets.UTF_8), value, Expiration.seconds(seconds), RedisStringCommands.SetOption.UPSERT));
+    }
+
+    @Override
+    public List<byte[]> multiGetBytes(List<String> keys) {
+        byte[][] rawKeys = new byte[keys.size()][];
+        for (int i = 0; i < rawKeys.length; i++) {
+            rawKeys[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        return redisTemplate.execute((RedisCallback<List<byte[]>>) redisConnection -> redisConnection.mGet(rawKeys));
+    }
+
+    @Override
+    public void multiSetBytes(Map<String, byte[]> values, long seconds) {
+        if (values.isEmpty()) {
+            return;
+        }
+        Expiration expiration = Expiration.seconds(seconds);
+        redisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            values.forEach((key, value) -> redisConnection.set(key.getBytes(StandardCharsets.UTF_8), value, expiration, RedisStringCommands.SetOption.UPSERT));
+            return null;
+        });
+    }
+
     @Override
     public <T> T get(String key, Class<T> clazz) {
         return BeanUtil.stringToBean(this.get(key), clazz);
@@ -61,25 +110,53 @@ public class RedisServiceImpl implements RedisService {
     }
 
     @Override
-    public ScanCursor<String> scan(Long cursorId, String pattern) {
-        Cursor<byte[]> cursor = redisTemplate.execute((RedisCallback<Cursor<byte[]>>) redisConnection -> redisConnection.scan(
-                ScanOptions.scanOptions()
-                        .count(cursorId == null ? 0L : cursorId)
-                        .match(pattern)
-                        .build()
-        ));
-        if (cursor == null || cursor.getCursorId() == 0L) {
-            return ScanCursor.EMPTY;
-        }
+    public List<RedisClusterNode> getMasterNodes() {
+        return redisTemplate.execute((RedisCallback<List<RedisClusterNode>>) redisConnection -> {
+            if (!(redisConnection instanceof RedisClusterConnection)) {
+                return Collections.emptyList();
+            }
+            List<RedisClusterNode> masters = new ArrayList<>();
+            for (RedisClusterNode node : ((RedisClusterConnection) redisConnection).clusterGetNodes()) {
+                if (node.isMaster()) {
+                    masters.add(node);
+                }
+            }
+            return masters;
+        });
+    }
+
+    @Override
+    public void scan(RedisClusterNode node, long cursorId, String pattern, int count, BiConsumer<List<String>, Long> consumer) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(count).build();
+        // 游标依赖当前连接，必须在回调内遍历完
+        redisTemplate.execute((RedisCallback<Void>) redisConnection -> {
+            try (Cursor<byte[]> cursor = node == null ? redisConnection.scan(options) : ((RedisClusterConnection) redisConnection).scan(node, options)) {
+                long next = cursorId;
+                do {
+                    ScanIteration<byte[]> iteration = doScan(cursor, next, options);
+                    if (iteration == null) {
+                        break;
+                    }
+                    next = iteration.getCursorId();
+                    List<String> keys = new ArrayList<>(iteration.getItems().size());
+                    for (byte[] key : iteration.getItems()) {
+                        keys.add(new String(key, StandardCharsets.UTF_8));
+                    }
+                    consumer.accept(keys, next);
+                } while (next != 0L);
+            } catch (IOException e) {
+                log.warn("close scan cursor error", e);
+            }
+            return null;
+        });
+    }
 
-        Set<String> set = new HashSet<>();
-        while (cursor.hasNext()) {
-            set.add(new String(cursor.next()));
+    @SuppressWarnings("unchecked")
+    private static ScanIteration<byte[]> doScan(Cursor<byte[]> cursor, long cursorId, ScanOptions options) {
+        if (!(cursor instanceof ScanCursor)) {
+            throw new IllegalStateException("unsupported scan cursor: " + cursor.getClass().getName());
         }
-        ScanCursor<String> scanCursor = new ScanCursor<>();
-        scanCursor.setCursorId(cursor.getCursorId());
-        scanCursor.setItems(set);
-        return scanCursor;
+        return (ScanIteration<byte[]>) ReflectionUtils.invokeMethod(DO_SCAN, cursor, cursorId, options);
     }
 
     @Override
@@ -1,17 +0,0 @@
-package com.evai.component.cache;
-
-import lombok.Getter;
-import lombok.Setter;
-
-import java.util.Collection;
-
-
-@Getter
-@Setter
-public class ScanCursor<T> {
-
-    public static final ScanCursor<String> EMPTY = new ScanCursor<>();
-
-    private long cursorId;
-    private Collection<T> items;
-}
\ No newline at end of file
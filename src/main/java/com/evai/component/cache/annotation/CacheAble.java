@@ -3,6 +3,7 @@ package com.evai.component.cache.annotation;
 
 
 import com.evai.component.cache.enums.KeyFormat;
+import com.evai.component.cache.enums.MissMode;
 
 import java.lang.annotation.*;
 
@@ -52,7 +53,32 @@ public @interface CacheAble {
 
     /**
      * 异步更新缓存时间阈值，当过期时间小于该值时，会查询数据库最新的数据同步到缓存中
+     * 缓存值的逻辑过期时间为 过期时间 - asyncSeconds，接近逻辑过期时间时按概率提前刷新
      */
     int asyncSeconds() default 30;
 
+    /**
+     * 本地缓存时间，单位秒，-1 使用全局配置 component.cache.local.seconds，0 不使用本地缓存
+     * 需开启 component.cache.local.enabled，命中本地缓存时返回的是共享对象，不要修改返回值
+     */
+    int localSeconds() default -1;
+
+    /**
+     * 缓存未命中时的处理方式，WAIT 表示整个集群只有一个节点查询数据库，其它节点等待结果
+     */
+    MissMode missMode() default MissMode.DIRECT;
+
+    /**
+     * 缓存值编码器名称，如 json、smile、cbor，为空时使用全局配置 component.cache.codec
+     * 读取时按缓存值中的编码器标识解码，修改编码器后旧数据仍可正常读取
+     */
+    String codec() default "";
+
+    /**
+     * 按集合元素分别缓存，适用于 Map<Long, User> load(Collection<Long> ids) 形式的方法
+     * keyId 中第一个方法参数必须为集合，返回值必须为以集合元素为key的 Map
+     * 每个元素单独缓存，一次 MGET 读取，只把未命中的元素传给方法执行，再合并结果
+     */
+    boolean batch() default false;
+
 }
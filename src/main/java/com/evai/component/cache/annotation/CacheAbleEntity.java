@@ -4,6 +4,7 @@ package com.evai.component.cache.annotation;
 
 import com.evai.component.cache.enums.CacheAction;
 import com.evai.component.cache.enums.KeyFormat;
+import com.evai.component.cache.enums.MissMode;
 
 import java.lang.annotation.*;
 
@@ -66,4 +67,28 @@ public @interface CacheAbleEntity {
      */
     int lockSeconds() default 30;
 
+    /**
+     * 本地缓存时间，单位秒，-1 使用全局配置 component.cache.local.seconds，0 不使用本地缓存
+     * 需开启 component.cache.local.enabled，命中本地缓存时返回的是共享对象，不要修改返回值
+     */
+    int localSeconds() default -1;
+
+    /**
+     * 缓存未命中时的处理方式，WAIT 表示整个集群只有一个节点查询数据库，其它节点等待结果
+     */
+    MissMode missMode() default MissMode.DIRECT;
+
+    /**
+     * 缓存值编码器名称，如 json、smile、cbor，为空时使用全局配置 component.cache.codec
+     * 读取时按缓存值中的编码器标识解码，修改编码器后旧数据仍可正常读取
+     */
+    String codec() default "";
+
+    /**
+     * 实体类版本字段名称，component.cache.consistency.mode 为 VERSION 时有效
+     * 必须是标注 MyBatis-Plus @Version 的数字字段，否则启动失败；回写缓存时只替换更旧的版本
+     * 某次读写取不到版本号（如按主键删除、更新参数中没有版本号）时，该次读写按写锁方案处理
+     */
+    String versionField() default "version";
+
 }
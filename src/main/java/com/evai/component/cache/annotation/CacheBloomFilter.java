@@ -0,0 +1,27 @@
+package com.evai.component.cache.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * @author crh
+ * @date 2019-12-19
+ * @description 实体类主键布隆过滤器，标注在实体类上，按主键查询缓存前先判断主键是否可能存在，不存在直接返回null
+ * 需开启 component.cache.bloom.enabled，并通过 BloomFilters.rebuild 从数据库初始化后才生效
+ * 只有通过 cacheInsert 新增的数据会加入过滤器，其它方式新增数据后需要重新初始化
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheBloomFilter {
+
+    /**
+     * 预计数据量，超过后误判率会升高
+     */
+    long expectedInsertions() default 1000000L;
+
+    /**
+     * 误判率
+     */
+    double fpp() default 0.01D;
+
+}
@@ -0,0 +1,36 @@
+package com.evai.component.cache.bloom;
+
+import lombok.Data;
+
+/**
+ * @author crh
+ * @date 2019-12-19
+ * @description 布隆过滤器容量及误判率
+ */
+@Data
+public class BloomFilterStats {
+    private String name;
+    /**
+     * 是否已初始化，未初始化时不生效
+     */
+    private boolean ready;
+    private long expectedInsertions;
+    /**
+     * 配置的误判率
+     */
+    private double fpp;
+    private long bits;
+    private int hashes;
+    /**
+     * 已设置的位数
+     */
+    private long bitCount;
+    /**
+     * 根据已设置位数估算的数据量
+     */
+    private long approximateInsertions;
+    /**
+     * 根据已设置位数估算的当前误判率
+     */
+    private double expectedFpp;
+}
@@ -0,0 +1,289 @@
+package com.evai.component.cache.bloom;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.evai.component.cache.CacheConstant;
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.annotation.CacheBloomFilter;
+import com.evai.component.cache.enums.KeyFormat;
+import com.evai.component.cache.exception.IllegalParamException;
+import com.evai.component.cache.metrics.CacheMetrics;
+import com.evai.component.mybatis.utils.ReflectUtil;
+import com.evai.component.utils.BeanUtil;
+import com.evai.component.utils.concurrent.ThreadPoolUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author crh
+ * @date 2019-12-19
+ * @description 实体类主键布隆过滤器，用于拦截查询不存在主键的请求，代替写入空值缓存
+ * 本地副本未命中时再读取 redis 确认（可能是其它节点刚新增的数据），本地副本定期在后台重新读取
+ */
+@Slf4j
+public class BloomFilters {
+
+    private static final String BITS = "bits";
+    private static final String HASHES = "hashes";
+    private static final String REBUILD_SUFFIX = ":rebuild";
+
+    private final CacheProperties.Bloom properties;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final CacheMetrics cacheMetrics;
+    private final ConcurrentHashMap<Class<?>, Optional<EntityBloomFilter>> filters = new ConcurrentHashMap<>();
+    /**
+     * 后台读取位图副本
+     */
+    private final ExecutorService refreshExecutor;
+
+    public BloomFilters(CacheProperties cacheProperties, RedisTemplate<String, String> redisTemplate, CacheMetrics cacheMetrics) {
+        this.properties = cacheProperties.getBloom();
+        this.redisTemplate = redisTemplate;
+        this.cacheMetrics = cacheMetrics;
+        this.refreshExecutor = ThreadPoolUtil.newFixedThreadPool("redis-bloomExecutor", 1);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 主键是否可能存在
+     *
+     * @param clazz 实体类
+     * @param id    主键值
+     * @return 实体类未开启布隆过滤器或过滤器未初始化时返回true
+     */
+    public boolean mightContain(Class<?> clazz, Object id) {
+        EntityBloomFilter filter = get(clazz);
+        if (filter == null || id == null) {
+            return true;
+        }
+        refreshIfNecessary(filter);
+        if (!filter.isReady()) {
+            return true;
+        }
+        long[] offsets = filter.offsets(id);
+        if (filter.localContains(offsets)) {
+            return true;
+        }
+        cacheMetrics.getBloomRemoteChecks().increment();
+        boolean contains = remoteContains(filter.getKey(), offsets);
+        if (contains) {
+            filter.setLocal(offsets);
+        } else {
+            cacheMetrics.getBloomRejected().increment();
+        }
+        return contains;
+    }
+
+    /**
+     * 新增实体类后加入过滤器，实体类未开启布隆过滤器时忽略
+     *
+     * @param entity
+     */
+    public void put(Object entity) {
+        if (entity == null) {
+            return;
+        }
+        EntityBloomFilter filter = get(entity.getClass());
+        if (filter == null) {
+            return;
+        }
+        Object id = ReflectUtil.getPrimaryValue(entity);
+        if (id == null) {
+            return;
+        }
+        long[] offsets = filter.offsets(id);
+        setBits(filter.getKey(), offsets);
+        filter.setLocal(offsets);
+    }
+
+    /**
+     * 从数据库按主键顺序分批读取所有主键，重新初始化过滤器
+     * 先写入临时位图再替换，初始化期间过滤器仍使用旧的位图，替换后补充初始化期间新增的主键
+     *
+     * @param clazz   实体类
+     * @param service 实体类对应的 service
+     * @param <T>
+     * @return 加入过滤器的主键数量
+     */
+    public <T> long rebuild(Class<T> clazz, IService<T> service) {
+        EntityBloomFilter filter = get(clazz);
+        if (filter == null) {
+            throw new IllegalParamException("未开启布隆过滤器的实体类: " + clazz.getName());
+        }
+        String rebuildKey = filter.getKey() + REBUILD_SUFFIX;
+        redisTemplate.delete(rebuildKey);
+        Object[] lastId = new Object[1];
+        long count = addIds(filter, rebuildKey, service, lastId);
+        if (count > 0) {
+            redisTemplate.rename(rebuildKey, filter.getKey());
+        } else {
+            redisTemplate.delete(filter.getKey());
+        }
+        Map<String, String> meta = new HashMap<>(4);
+        meta.put(BITS, String.valueOf(filter.getBits()));
+        meta.put(HASHES, String.valueOf(filter.getHashes()));
+        this.<String, String>hashOperations().putAll(getMetaKey(filter), meta);
+        count += addIds(filter, filter.getKey(), service, lastId);
+        // 立即重新读取本地副本
+        filter.getRefreshedAt().set(0L);
+        log.info("rebuild bloom filter: [{}], count: [{}], bits: [{}], hashes: [{}]", filter.getName(), count, filter.getBits(), filter.getHashes());
+        return count;
+    }
+
+    /**
+     * 所有已使用的过滤器容量及误判率
+     *
+     * @return
+     */
+    public List<BloomFilterStats> getStats() {
+        List<BloomFilterStats> statsList = new ArrayList<>();
+        for (Optional<EntityBloomFilter> optional : filters.values()) {
+            optional.ifPresent(filter -> {
+                BloomFilterStats stats = new BloomFilterStats();
+                stats.setName(filter.getName());
+                stats.setReady(filter.isReady());
+                stats.setExpectedInsertions(filter.getExpectedInsertions());
+                stats.setFpp(filter.getFpp());
+                stats.setBits(filter.getBits());
+                stats.setHashes(filter.getHashes());
+                Long bitCount = redisTemplate.execute((RedisCallback<Long>) redisConnection -> redisConnection.bitCount(toBytes(filter.getKey())));
+                long setBits = bitCount == null ? 0L : bitCount;
+                double ratio = (double) setBits / filter.getBits();
+                stats.setBitCount(setBits);
+                stats.setApproximateInsertions(Math.round(-(double) filter.getBits() / filter.getHashes() * Math.log1p(-Math.min(ratio, 1 - 1e-9))));
+                stats.setExpectedFpp(Math.pow(ratio, filter.getHashes()));
+                statsList.add(stats);
+            });
+        }
+        return statsList;
+    }
+
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private EntityBloomFilter get(Class<?> clazz) {
+        if (!isEnabled()) {
+            return null;
+        }
+        return filters.computeIfAbsent(clazz, c -> {
+            CacheBloomFilter annotation = c.getAnnotation(CacheBloomFilter.class);
+            return annotation == null
+                    ? Optional.empty()
+                    : Optional.of(new EntityBloomFilter(BeanUtil.formatKey(c, KeyFormat.UNDERLINE), annotation.expectedInsertions(), annotation.fpp()));
+        }).orElse(null);
+    }
+
+    /**
+     * 超过刷新时间后在后台检查位图是否已初始化，并重新读取本地副本
+     *
+     * @param filter
+     */
+    private void refreshIfNecessary(EntityBloomFilter filter) {
+        long now = System.currentTimeMillis();
+        long refreshedAt = filter.getRefreshedAt().get();
+        if (now - refreshedAt < TimeUnit.SECONDS.toMillis(properties.getRefreshSeconds()) || !filter.getRefreshedAt().compareAndSet(refreshedAt, now)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    Map<String, String> meta = this.<String, String>hashOperations().entries(getMetaKey(filter));
+                    // 位图参数和当前配置不一致时需要重新初始化
+                    boolean ready = NumberUtils.toLong(meta.get(BITS)) == filter.getBits() && NumberUtils.toInt(meta.get(HASHES)) == filter.getHashes();
+                    if (ready) {
+                        filter.replaceLocal(redisTemplate.execute((RedisCallback<byte[]>) redisConnection -> redisConnection.get(toBytes(filter.getKey()))));
+                    }
+                    filter.setReady(ready);
+                } catch (Exception e) {
+                    log.error("refresh bloom filter: [{}] error", filter.getName(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("refresh bloom filter: [{}] rejected", filter.getName());
+        }
+    }
+
+    private <T> long addIds(EntityBloomFilter filter, String key, IService<T> service, Object[] lastId) {
+        long count = 0L;
+        for (;;) {
+            QueryWrapper<T> wrapper = new QueryWrapper<T>().select(CacheConstant.PK);
+            if (lastId[0] != null) {
+                wrapper.gt(CacheConstant.PK, lastId[0]);
+            }
+            wrapper.orderByAsc(CacheConstant.PK).last("limit " + properties.getRebuildBatch());
+            List<Object> ids = service.listObjs(wrapper);
+            if (ids.isEmpty()) {
+                return count;
+            }
+            List<long[]> offsets = new ArrayList<>(ids.size());
+            for (Object id : ids) {
+                offsets.add(filter.offsets(id));
+            }
+            setBits(key, offsets.toArray(new long[0][]));
+            count += ids.size();
+            lastId[0] = ids.get(ids.size() - 1);
+            if (ids.size() < properties.getRebuildBatch()) {
+                return count;
+            }
+        }
+    }
+
+    private void setBits(String key, long[]... offsetsList) {
+        byte[] rawKey = toBytes(key);
+        redisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            for (long[] offsets : offsetsList) {
+                for (long offset : offsets) {
+                    redisConnection.setBit(rawKey, offset, true);
+                }
+            }
+            return null;
+        });
+    }
+
+    private boolean remoteContains(String key, long[] offsets) {
+        byte[] rawKey = toBytes(key);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            for (long offset : offsets) {
+                redisConnection.getBit(rawKey, offset);
+            }
+            return null;
+        });
+        for (Object result : results) {
+            if (!Boolean.TRUE.equals(result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private <HK, HV> HashOperations<String, HK, HV> hashOperations() {
+        return redisTemplate.opsForHash();
+    }
+
+    private String getMetaKey(EntityBloomFilter filter) {
+        return filter.getKey() + CacheConstant.BLOOM_FILTER_META;
+    }
+
+    private static byte[] toBytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
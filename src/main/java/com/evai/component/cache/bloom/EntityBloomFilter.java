@@ -0,0 +1,108 @@
+package com.evai.component.cache.bloom;
+
+import com.evai.component.cache.CacheConstant;
+import com.evai.component.utils.BeanUtil;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author crh
+ * @date 2019-12-19
+ * @description 单个实体类的布隆过滤器，位图保存在 redis，本地保存一份副本
+ * 位的顺序和 redis SETBIT 相同，可以直接使用 GET 读取的位图作为本地副本
+ */
+@Getter
+class EntityBloomFilter {
+
+    private final String name;
+    private final String key;
+    private final long expectedInsertions;
+    private final double fpp;
+    private final long bits;
+    private final int hashes;
+    /**
+     * 本地位图副本，只会增加位，并发写入丢失时会再次读取 redis，不影响正确性
+     */
+    private volatile byte[] local;
+    /**
+     * redis 中的位图是否已初始化且和当前配置一致
+     */
+    private volatile boolean ready;
+    private final AtomicLong refreshedAt = new AtomicLong();
+
+    EntityBloomFilter(String name, long expectedInsertions, double fpp) {
+        this.name = name;
+        this.key = CacheConstant.BLOOM_FILTER + name;
+        this.expectedInsertions = Math.max(1L, expectedInsertions);
+        this.fpp = fpp;
+        this.bits = optimalBits(this.expectedInsertions, fpp);
+        this.hashes = optimalHashes(this.expectedInsertions, bits);
+        this.local = new byte[(int) ((bits + 7) / 8)];
+    }
+
+    /**
+     * 主键对应的位下标
+     *
+     * @param id
+     * @return
+     */
+    long[] offsets(Object id) {
+        byte[] hash = Hashing.murmur3_128().hashString(BeanUtil.beanToString(id), StandardCharsets.UTF_8).asBytes();
+        long hash1 = Longs.fromBytes(hash[7], hash[6], hash[5], hash[4], hash[3], hash[2], hash[1], hash[0]);
+        long hash2 = Longs.fromBytes(hash[15], hash[14], hash[13], hash[12], hash[11], hash[10], hash[9], hash[8]);
+        long[] offsets = new long[hashes];
+        long combinedHash = hash1;
+        for (int i = 0; i < hashes; i++) {
+            offsets[i] = (combinedHash & Long.MAX_VALUE) % bits;
+            combinedHash += hash2;
+        }
+        return offsets;
+    }
+
+    boolean localContains(long[] offsets) {
+        byte[] bitmap = local;
+        for (long offset : offsets) {
+            if ((bitmap[(int) (offset >>> 3)] & (0x80 >>> (offset & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void setLocal(long[] offsets) {
+        byte[] bitmap = local;
+        for (long offset : offsets) {
+            bitmap[(int) (offset >>> 3)] |= (0x80 >>> (offset & 7));
+        }
+    }
+
+    /**
+     * 替换本地副本，redis 返回的位图会去掉末尾全为0的字节
+     *
+     * @param bitmap
+     */
+    void replaceLocal(byte[] bitmap) {
+        byte[] copy = new byte[local.length];
+        if (bitmap != null) {
+            System.arraycopy(bitmap, 0, copy, 0, Math.min(bitmap.length, copy.length));
+        }
+        this.local = copy;
+    }
+
+    void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    private static long optimalBits(long n, double p) {
+        return Math.max(64L, (long) (-n * Math.log(p) / (Math.log(2) * Math.log(2))));
+    }
+
+    private static int optimalHashes(long n, long m) {
+        return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.evai.component.cache.codec;
+
+import com.evai.component.utils.JacksonUtil;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+
+/**
+ * @author crh
+ * @date 2019-12-29
+ * @description 基于 Jackson 二进制数据格式的编码器，序列化配置和 json 相同
+ */
+@Slf4j
+public abstract class AbstractJacksonCacheCodec implements CacheCodec {
+
+    private final ObjectMapper objectMapper;
+
+    protected AbstractJacksonCacheCodec(JsonFactory jsonFactory) {
+        this.objectMapper = JacksonUtil.newObjectMapper(jsonFactory);
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("[" + name() + "] encode " + value.getClass() + " error", e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes, int offset, int length, JavaType javaType) {
+        try {
+            return (T) objectMapper.readValue(bytes, offset, length, javaType);
+        } catch (IOException e) {
+            log.warn("[{}] decode to {} error", name(), javaType, e);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.evai.component.cache.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+
+/**
+ * @author crh
+ * @date 2019-12-29
+ * @description 缓存值编解码器，注册为 bean 即可通过注解的 codec 属性按名称使用
+ * 除 json 外，写入的值都带有编码器标识，读取时按标识选择编码器，不同格式混合存放时也能正确读取
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码器名称，用于注解及全局配置
+     *
+     * @return
+     */
+    String name();
+
+    /**
+     * 编码器标识，写入缓存值的头部，所有编码器唯一，0 保留给 json
+     *
+     * @return
+     */
+    byte id();
+
+    /**
+     * 编码
+     *
+     * @param value 非null
+     * @return
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @param javaType
+     * @param <T>
+     * @return
+     */
+    <T> T decode(byte[] bytes, int offset, int length, JavaType javaType);
+
+}
@@ -0,0 +1,237 @@
+package com.evai.component.cache.codec;
+
+import com.evai.component.cache.CacheConstant;
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.metrics.CacheMetrics;
+import com.fasterxml.jackson.databind.JavaType;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @author crh
+ * @date 2019-12-29
+ * @description 缓存值编解码器注册表
+ * 写入格式：json 直接存放（兼容旧数据），其它编码为 \u001d + 编码器标识 + 编码后的值
+ * 开启压缩且超过阈值时，再整体压缩为 \u001c + 原始长度（4字节） + deflate 压缩后的值
+ * 读取时只根据头部判断格式，和注解当前配置的编码器无关，切换编码器时新旧数据可以同时读取
+ */
+public class CacheCodecs {
+
+    /**
+     * 带编码器标识的值开头标识，json 不会以该字符开头
+     */
+    public static final byte MARK = 0x1d;
+
+    /**
+     * 压缩值开头标识
+     */
+    public static final byte COMPRESSED_MARK = 0x1c;
+
+    private static final int HEADER_LEN = 2;
+
+    private static final int COMPRESSED_HEADER_LEN = 5;
+
+    private static final byte[] NULL_BYTES = CacheConstant.NULL.getBytes(StandardCharsets.UTF_8);
+
+    private final Map<String, CacheCodec> byName = new HashMap<>();
+    private final CacheCodec[] byId = new CacheCodec[256];
+    private final CacheCodec defaultCodec;
+    private final CacheCodec jsonCodec;
+    private final CacheProperties.Compression compression;
+    private final CacheMetrics cacheMetrics;
+    private final ThreadLocal<Deflater> deflater;
+    private final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(Inflater::new);
+
+    public CacheCodecs(List<CacheCodec> codecs, CacheProperties cacheProperties, CacheMetrics cacheMetrics) {
+        this.compression = cacheProperties.getCompression();
+        this.cacheMetrics = cacheMetrics;
+        this.deflater = ThreadLocal.withInitial(() -> new Deflater(compression.getLevel()));
+        for (CacheCodec codec : codecs) {
+            int id = codec.id() & 0xFF;
+            if (byId[id] != null || byName.containsKey(codec.name())) {
+                throw new IllegalStateException("duplicate cache codec, name: [" + codec.name() + "], id: [" + id + "]");
+            }
+            byId[id] = codec;
+            byName.put(codec.name(), codec);
+        }
+        this.jsonCodec = byId[JsonCacheCodec.ID] != null ? byId[JsonCacheCodec.ID] : new JsonCacheCodec();
+        String defaultName = cacheProperties.getCodec();
+        this.defaultCodec = StringUtils.isBlank(defaultName) ? jsonCodec : get(defaultName);
+    }
+
+    /**
+     * 按名称获取编码器
+     *
+     * @param name 为空时使用全局默认编码器
+     * @return
+     */
+    public CacheCodec get(String name) {
+        if (StringUtils.isBlank(name)) {
+            return defaultCodec;
+        }
+        CacheCodec codec = byName.get(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("未找到缓存编码器: [" + name + "]");
+        }
+        return codec;
+    }
+
+    /**
+     * 编码，null 统一存为 "null"
+     *
+     * @param codec
+     * @param value
+     * @return
+     */
+    public byte[] encode(CacheCodec codec, Object value) {
+        if (value == null) {
+            return NULL_BYTES;
+        }
+        byte[] bytes = codec.encode(value);
+        if (codec.id() != JsonCacheCodec.ID) {
+            byte[] result = new byte[bytes.length + HEADER_LEN];
+            result[0] = MARK;
+            result[1] = codec.id();
+            System.arraycopy(bytes, 0, result, HEADER_LEN, bytes.length);
+            bytes = result;
+        }
+        return compress(bytes);
+    }
+
+    /**
+     * 超过阈值时压缩，压缩后没有变小则返回原值
+     *
+     * @param bytes
+     * @return
+     */
+    private byte[] compress(byte[] bytes) {
+        if (!compression.isEnabled() || bytes.length < compression.getThreshold()) {
+            return bytes;
+        }
+        long start = System.nanoTime();
+        Deflater deflater = this.deflater.get();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        // 压缩后必须比原值小，否则直接存原值
+        byte[] buffer = new byte[bytes.length];
+        int length = COMPRESSED_HEADER_LEN;
+        while (!deflater.finished() && length < buffer.length) {
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        cacheMetrics.getCompressNanos().add(System.nanoTime() - start);
+        if (!deflater.finished()) {
+            cacheMetrics.getCompressSkipped().increment();
+            return bytes;
+        }
+        buffer[0] = COMPRESSED_MARK;
+        writeInt(buffer, 1, bytes.length);
+        cacheMetrics.getCompressCount().increment();
+        cacheMetrics.getCompressRawBytes().add(bytes.length);
+        cacheMetrics.getCompressedBytes().add(length);
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * 解压
+     *
+     * @param bytes
+     * @param offset
+     * @return
+     */
+    private byte[] decompress(byte[] bytes, int offset) {
+        long start = System.nanoTime();
+        Inflater inflater = this.inflater.get();
+        inflater.reset();
+        inflater.setInput(bytes, offset + COMPRESSED_HEADER_LEN, bytes.length - offset - COMPRESSED_HEADER_LEN);
+        byte[] result = new byte[readInt(bytes, offset + 1)];
+        try {
+            int length = 0;
+            while (length < result.length && !inflater.finished()) {
+                int n = inflater.inflate(result, length, result.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != result.length) {
+                throw new IllegalStateException("decompress cache value error, expected length: [" + result.length + "], actual: [" + length + "]");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("decompress cache value error", e);
+        }
+        cacheMetrics.getDecompressCount().increment();
+        cacheMetrics.getDecompressNanos().add(System.nanoTime() - start);
+        return result;
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24
+                | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8
+                | (bytes[offset + 3] & 0xFF);
+    }
+
+    /**
+     * 解码，根据头部的编码器标识选择编码器
+     *
+     * @param bytes
+     * @param offset
+     * @param javaType
+     * @param <T>
+     * @return
+     */
+    public <T> T decode(byte[] bytes, int offset, JavaType javaType) {
+        if (isNull(bytes, offset)) {
+            return null;
+        }
+        if (bytes.length - offset > COMPRESSED_HEADER_LEN && bytes[offset] == COMPRESSED_MARK) {
+            bytes = decompress(bytes, offset);
+            offset = 0;
+        }
+        int length = bytes.length - offset;
+        if (length >= HEADER_LEN && bytes[offset] == MARK) {
+            CacheCodec codec = byId[bytes[offset + 1] & 0xFF];
+            if (codec == null) {
+                throw new IllegalStateException("unknown cache codec id: [" + bytes[offset + 1] + "]");
+            }
+            return codec.decode(bytes, offset + HEADER_LEN, length - HEADER_LEN, javaType);
+        }
+        return jsonCodec.decode(bytes, offset, length, javaType);
+    }
+
+    /**
+     * 是否为空值标识 "null"，说明数据库没有该值
+     *
+     * @param bytes
+     * @param offset
+     * @return
+     */
+    public static boolean isNull(byte[] bytes, int offset) {
+        if (bytes.length - offset != NULL_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < NULL_BYTES.length; i++) {
+            if (bytes[offset + i] != NULL_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.evai.component.cache.codec;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * @author crh
+ * @date 2019-12-29
+ * @description CBOR（RFC 7049）二进制编码，便于其它语言读取缓存
+ */
+public class CborCacheCodec extends AbstractJacksonCacheCodec {
+
+    public static final String NAME = "cbor";
+
+    public static final byte ID = 2;
+
+    public CborCacheCodec() {
+        super(new CBORFactory());
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.evai.component.cache.codec;
+
+import com.evai.component.utils.BeanUtil;
+import com.evai.component.utils.JacksonUtil;
+import com.fasterxml.jackson.databind.JavaType;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author crh
+ * @date 2019-12-29
+ * @description json 编码，和旧版本写入的格式完全一致（不带编码器标识），字符串及数字直接存放原值
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final String NAME = "json";
+
+    public static final byte ID = 0;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        if (BeanUtil.isNumber(value.getClass())) {
+            return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        }
+        return JacksonUtil.objToBytes(value);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, int offset, int length, JavaType javaType) {
+        return JacksonUtil.bytesToObj(bytes, offset, length, javaType);
+    }
+
+}
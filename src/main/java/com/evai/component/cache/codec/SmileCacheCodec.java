@@ -0,0 +1,32 @@
+package com.evai.component.cache.codec;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * @author crh
+ * @date 2019-12-29
+ * @description Smile 二进制 json 编码，无需预先定义结构，体积及序列化速度均优于 json
+ * 开启重复属性名引用，列表结果中同一实体类的属性名只写一次
+ */
+public class SmileCacheCodec extends AbstractJacksonCacheCodec {
+
+    public static final String NAME = "smile";
+
+    public static final byte ID = 1;
+
+    public SmileCacheCodec() {
+        super(new SmileFactory().configure(SmileGenerator.Feature.CHECK_SHARED_NAMES, true));
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+}
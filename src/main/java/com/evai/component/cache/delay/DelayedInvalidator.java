@@ -0,0 +1,181 @@
+package com.evai.component.cache.delay;
+
+import com.evai.component.cache.CacheConstant;
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.local.NearCache;
+import com.evai.component.cache.script.RedisScripts;
+import com.evai.component.utils.concurrent.ThreadPoolUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.DefaultTuple;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author crh
+ * @date 2019-12-24
+ * @description 延迟双删：写操作删除缓存后，延迟一段时间再删除一次，清除从库延迟期间回写的旧数据
+ * 第一次删除时在同一个管道中把key写入 redis 有序集合（score 为到期时间），节点宕机也不会丢失第二次删除；
+ * 第一次删除在数据库更新之前（写锁方案）时，到期时间再加上写锁时间兜底，更新完成后 schedule 只记录到本地，
+ * 后台线程每次轮询批量写入准确的到期时间，到期时间按轮询间隔向上取整，同一时间窗口内重复的key只保留一个
+ * 后台线程再认领到期的key并删除，认领和删除在同一个脚本中执行，多个节点同时轮询时每个key只会被一个节点删除
+ */
+@Slf4j
+public class DelayedInvalidator {
+
+    private final CacheProperties.DoubleDelete properties;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisScripts redisScripts;
+    private final NearCache nearCache;
+    /**
+     * 本地待写入的key及到期时间
+     */
+    private final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService pollExecutor;
+
+    public DelayedInvalidator(CacheProperties cacheProperties, RedisTemplate<String, String> redisTemplate, RedisScripts redisScripts, NearCache nearCache) {
+        this.properties = cacheProperties.getDoubleDelete();
+        this.redisTemplate = redisTemplate;
+        this.redisScripts = redisScripts;
+        this.nearCache = nearCache;
+        if (properties.isEnabled()) {
+            long interval = getWindow();
+            this.pollExecutor = ThreadPoolUtil.newScheduledThreadPool(1, "redis-doubleDeleteExecutor");
+            this.pollExecutor.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.pollExecutor = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 延迟删除，只写入本地，不访问 redis
+     *
+     * @param keys
+     */
+    public void schedule(Collection<String> keys) {
+        if (!isEnabled() || keys == null || keys.isEmpty()) {
+            return;
+        }
+        long due = getDue(0L);
+        for (String key : keys) {
+            if (key != null) {
+                pending.merge(key, due, Math::max);
+            }
+        }
+    }
+
+    /**
+     * 延迟删除，在第一次删除所在的管道中直接写入有序集合
+     *
+     * @param redisConnection 第一次删除所在的管道连接
+     * @param keys
+     * @param extraMillis     延迟时间之外再推迟的时间，第一次删除在数据库更新之前时为写锁时间
+     */
+    public void schedule(RedisConnection redisConnection, Collection<String> keys, long extraMillis) {
+        if (!isEnabled() || keys == null || keys.isEmpty()) {
+            return;
+        }
+        double due = getDue(extraMillis);
+        Set<RedisZSetCommands.Tuple> tuples = new HashSet<>();
+        for (String key : keys) {
+            if (key != null) {
+                tuples.add(new DefaultTuple(key.getBytes(StandardCharsets.UTF_8), due));
+            }
+        }
+        if (!tuples.isEmpty()) {
+            redisConnection.zAdd(CacheConstant.DOUBLE_DELETE.getBytes(StandardCharsets.UTF_8), tuples);
+        }
+    }
+
+    public void shutdown() {
+        if (pollExecutor != null) {
+            pollExecutor.shutdownNow();
+        }
+    }
+
+    private void poll() {
+        try {
+            publish();
+            int batchSize = Math.max(1, properties.getBatchSize());
+            List<String> deleted;
+            do {
+                deleted = popDue(batchSize);
+                nearCache.invalidate(deleted);
+            } while (deleted.size() >= batchSize);
+        } catch (Exception e) {
+            log.error("delayed invalidate error", e);
+        }
+    }
+
+    /**
+     * 本地记录批量写入有序集合，同一个key只保留较晚的到期时间
+     */
+    private void publish() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        for (Map.Entry<String, Long> entry : pending.entrySet()) {
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                tuples.add(new DefaultTypedTuple<>(entry.getKey(), entry.getValue().doubleValue()));
+            }
+        }
+        if (!tuples.isEmpty()) {
+            redisTemplate.opsForZSet().add(CacheConstant.DOUBLE_DELETE, tuples);
+        }
+    }
+
+    /**
+     * 认领并删除到期的key
+     *
+     * @param batchSize
+     * @return 已删除的key
+     */
+    private List<String> popDue(int batchSize) {
+        List<byte[]> result = redisScripts.eval(CacheConstant.LuaScript.POP_DUE_AND_DELETE, ReturnType.MULTI, 1,
+                CacheConstant.DOUBLE_DELETE.getBytes(StandardCharsets.UTF_8),
+                String.valueOf(System.currentTimeMillis()).getBytes(),
+                String.valueOf(batchSize).getBytes());
+        List<String> keys = new ArrayList<>(result == null ? 0 : result.size());
+        if (result != null) {
+            for (byte[] key : result) {
+                keys.add(new String(key, StandardCharsets.UTF_8));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 到期时间，按轮询间隔向上取整
+     *
+     * @param extraMillis
+     * @return
+     */
+    private long getDue(long extraMillis) {
+        long window = getWindow();
+        return (System.currentTimeMillis() + properties.getDelayMillis() + extraMillis + window - 1) / window * window;
+    }
+
+    private long getWindow() {
+        return Math.max(1L, properties.getPollIntervalMillis());
+    }
+
+}
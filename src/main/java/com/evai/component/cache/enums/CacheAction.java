@@ -14,10 +14,30 @@ public enum CacheAction {
      * 先查询是否已经有缓存，有会使用缓存，没有则会执行方法并缓存。
      */
     SELECT,
+    /**
+     * 根据主键集合批量查询，一次读取所有主键key，只查询未命中的主键并批量放入缓存
+     * keyId 为主键集合参数，方法参数只传入未命中的主键，返回值为实体类集合
+     */
+    SELECT_BATCH,
     /**
      * 删除缓存
      */
     DEL,
+    /**
+     * 更新数据后把方法参数实体类中的非空字段写入缓存中的实体类，而不是删除缓存
+     * keyId 为实体类的主键，如 "#entity.id"，写入时缓存已被其它请求修改或不存在则删除缓存
+     */
+    PATCH,
+    /**
+     * 不执行方法，把方法参数实体类中的非空字段写入缓存中的实体类及更新缓冲区，由后台按批写入数据库
+     * keyId 为实体类的主键，如 "#entity.id"，主键为空时按 DEL 执行方法
+     */
+    WRITE_BEHIND,
+    /**
+     * 批量更新或删除，keyId 为主键集合或实体类集合参数
+     * 按批新增写锁并删除缓存，执行方法（方法参数只传入当前批次）后释放写锁，一致性和 DEL 相同
+     */
+    DEL_BATCH,
     /**
      * 匹配 keyName 批量删除
      */
@@ -0,0 +1,18 @@
+package com.evai.component.cache.enums;
+
+/**
+ * @author crh
+ * @date 2019-12-22
+ * @description 实体类缓存一致性方案
+ */
+public enum ConsistencyMode {
+    /**
+     * 写锁计数：更新前加写锁并删除缓存，写锁存在期间查询数据库后不写入缓存
+     */
+    LOCK,
+    /**
+     * 版本号：缓存中记录实体类版本，回写缓存时只替换更旧的版本，更新后删除缓存并留下墓碑版本，不需要写锁
+     */
+    VERSION,
+    ;
+}
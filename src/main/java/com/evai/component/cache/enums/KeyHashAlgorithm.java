@@ -0,0 +1,18 @@
+package com.evai.component.cache.enums;
+
+/**
+ * @author crh
+ * @date 2019-12-22
+ * @description 缓存keyId摘要算法
+ */
+public enum KeyHashAlgorithm {
+    /**
+     * 旧版本使用的 MD5，32位大写
+     */
+    MD5,
+    /**
+     * 128位 Murmur3，32位小写
+     */
+    MURMUR3,
+    ;
+}
@@ -0,0 +1,18 @@
+package com.evai.component.cache.enums;
+
+/**
+ * @author crh
+ * @date 2019-12-08
+ * @description 缓存未命中时的处理方式
+ */
+public enum MissMode {
+    /**
+     * 每个节点各自执行业务逻辑（单机内仍会合并请求）
+     */
+    DIRECT,
+    /**
+     * 整个集群只有一个节点执行业务逻辑，其它节点等待通知后读取缓存
+     */
+    WAIT,
+    ;
+}
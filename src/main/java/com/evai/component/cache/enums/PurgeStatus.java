@@ -0,0 +1,26 @@
+package com.evai.component.cache.enums;
+
+/**
+ * @author crh
+ * @date 2019-12-18
+ * @description 后台删除任务状态
+ */
+public enum PurgeStatus {
+    /**
+     * 执行中
+     */
+    RUNNING,
+    /**
+     * 已手动停止，可以继续执行
+     */
+    STOPPED,
+    /**
+     * 执行失败，可以继续执行
+     */
+    FAILED,
+    /**
+     * 已完成
+     */
+    DONE,
+    ;
+}
@@ -0,0 +1,26 @@
+package com.evai.component.cache.enums;
+
+/**
+ * @author crh
+ * @date 2019-12-25
+ * @description 缓存预热任务状态
+ */
+public enum WarmStatus {
+    /**
+     * 执行中
+     */
+    RUNNING,
+    /**
+     * 已手动停止
+     */
+    STOPPED,
+    /**
+     * 执行失败
+     */
+    FAILED,
+    /**
+     * 已完成
+     */
+    DONE,
+    ;
+}
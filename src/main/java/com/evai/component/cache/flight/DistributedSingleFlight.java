@@ -0,0 +1,121 @@
+package com.evai.component.cache.flight;
+
+import com.evai.component.cache.CacheConstant;
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.exception.GetLockFailedException;
+import com.evai.component.cache.local.NearCache;
+import com.evai.component.cache.lock.CacheLock;
+import com.evai.component.cache.metrics.CacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * @author crh
+ * @date 2019-12-08
+ * @description 集群请求合并，缓存未命中时整个集群只有一个节点执行业务逻辑
+ * 锁本身就是"计算中"标识：获取到锁的节点执行业务逻辑，释放锁后通过发布订阅通知其它节点
+ * 其它节点有本地过期副本时直接返回过期副本，否则等待通知后重新读取缓存，而不是轮询，超时后自行执行业务逻辑
+ */
+@Slf4j
+public class DistributedSingleFlight implements MessageListener {
+
+    private final CacheProperties.Flight properties;
+    private final CacheLock cacheLock;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final CacheMetrics cacheMetrics;
+    /**
+     * 等待其它节点计算结果的key
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> waiters = new ConcurrentHashMap<>();
+
+    public DistributedSingleFlight(CacheProperties cacheProperties, CacheLock cacheLock, RedisTemplate<String, String> redisTemplate, CacheMetrics cacheMetrics) {
+        this.properties = cacheProperties.getFlight();
+        this.cacheLock = cacheLock;
+        this.redisTemplate = redisTemplate;
+        this.cacheMetrics = cacheMetrics;
+    }
+
+    /**
+     * 合并执行
+     *
+     * @param key    缓存key
+     * @param loader 执行业务逻辑并写入缓存
+     * @param reader 其它节点计算完成后重新读取缓存，缓存仍不存在时自行执行业务逻辑
+     * @param stale  其它节点计算中时返回的过期副本，不存在时返回null
+     * @param <T>
+     * @return
+     */
+    public <T> T execute(String key, Supplier<T> loader, Supplier<T> reader, Supplier<NearCache.LocalValue> stale) {
+        String lockKey = CacheConstant.COMPUTE_LOCK + key;
+        AtomicBoolean leader = new AtomicBoolean();
+        try {
+            return cacheLock.tryLock(lockKey, properties.getLockSeconds(), () -> {
+                leader.set(true);
+                cacheMetrics.getDistributedLeader().increment();
+                return loader.get();
+            });
+        } catch (GetLockFailedException e) {
+            log.debug("key: [{}] is computing by other node", key);
+        } finally {
+            // 释放锁之后再通知，收到通知的节点不会再看到锁
+            if (leader.get()) {
+                publish(key);
+            }
+        }
+        // 获取锁失败即说明其它节点正在计算，有过期副本时不等待
+        NearCache.LocalValue staleValue = stale.get();
+        if (staleValue != null) {
+            cacheMetrics.getDistributedStale().increment();
+            return staleValue.getValue();
+        }
+        cacheMetrics.getDistributedWaiting().increment();
+        CompletableFuture<Void> waiter = waiters.computeIfAbsent(key, k -> new CompletableFuture<>());
+        try {
+            // 先登记等待再检查锁，锁已释放说明其它节点已经计算完成并通知过，直接读取缓存
+            if (cacheLock.getLock(lockKey).isLocked()) {
+                waiter.get(properties.getWaitMillis(), TimeUnit.MILLISECONDS);
+            } else {
+                waiters.remove(key, waiter);
+            }
+        } catch (TimeoutException e) {
+            waiters.remove(key, waiter);
+            cacheMetrics.getDistributedTimeout().increment();
+            log.warn("wait key: [{}] computed by other node timeout", key);
+        } catch (ExecutionException e) {
+            log.warn("wait key: [{}] computed by other node error", key, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("thread-{} interrupt", Thread.currentThread().getName());
+        }
+        return reader.get();
+    }
+
+    private void publish(String key) {
+        try {
+            redisTemplate.convertAndSend(CacheConstant.COMPUTED_CHANNEL, key);
+        } catch (Exception e) {
+            log.error("publish computed key: [{}] error", key, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        CompletableFuture<Void> waiter = waiters.remove(key);
+        if (waiter != null) {
+            waiter.complete(null);
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.evai.component.cache.flight;
+
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.metrics.CacheMetrics;
+import com.evai.component.utils.CommonUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * @author crh
+ * @date 2019-12-08
+ * @description 单机请求合并，同一个key同一时刻只有一个线程执行业务逻辑，其它线程等待该线程的结果
+ * 防止缓存失效时大量请求同时查询数据库，等待超时后自行执行业务逻辑
+ */
+@Slf4j
+public class SingleFlight {
+
+    private final CacheProperties.Flight properties;
+    private final CacheMetrics cacheMetrics;
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    public SingleFlight(CacheProperties cacheProperties, CacheMetrics cacheMetrics) {
+        this.properties = cacheProperties.getFlight();
+        this.cacheMetrics = cacheMetrics;
+    }
+
+    /**
+     * 合并执行
+     *
+     * @param key
+     * @param supplier
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> supplier) {
+        if (!properties.isEnabled()) {
+            return supplier.get();
+        }
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, future);
+        if (existing == null) {
+            cacheMetrics.getSingleFlightLeader().increment();
+            try {
+                T result = supplier.get();
+                future.complete(result);
+                return result;
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+                CommonUtil.doThrow(e);
+                return null;
+            } finally {
+                calls.remove(key, future);
+            }
+        }
+        cacheMetrics.getSingleFlightCoalesced().increment();
+        try {
+            return (T) existing.get(properties.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            cacheMetrics.getSingleFlightTimeout().increment();
+            log.warn("singleFlight wait key: [{}] timeout, execute by current thread", key);
+            return supplier.get();
+        } catch (ExecutionException e) {
+            CommonUtil.doThrow(e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("thread-{} interrupt", Thread.currentThread().getName());
+            return supplier.get();
+        }
+    }
+
+    /**
+     * 当前正在执行的key数量
+     *
+     * @return
+     */
+    public int inFlight() {
+        return calls.size();
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.evai.component.cache.hotkey;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * @author crh
+ * @date 2019-12-24
+ * @description 热点key
+ */
+@Getter
+public class HotKey {
+    private final String key;
+    /**
+     * 滑动窗口内估算的每秒请求数，每次窗口滑动时更新
+     */
+    @Setter
+    private volatile double qps;
+    /**
+     * 成为热点的时间戳，毫秒
+     */
+    private final long promotedAt;
+
+    public HotKey(String key, double qps, long promotedAt) {
+        this.key = key;
+        this.qps = qps;
+        this.promotedAt = promotedAt;
+    }
+}
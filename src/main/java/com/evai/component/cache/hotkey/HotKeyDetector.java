@@ -0,0 +1,193 @@
+package com.evai.component.cache.hotkey;
+
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.utils.concurrent.ThreadPoolUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author crh
+ * @date 2019-12-24
+ * @description 热点key探测
+ * 按 sampleRatio 抽样读取请求，写入滑动窗口内的 Count-Min Sketch，估算每个key的每秒请求数
+ * 超过阈值的key自动提升为热点key，在本地缓存中保存短时间的副本，不再每次访问同一个 redis 分片
+ * 低于阈值一半时取消热点，热点key的失效跟随本地缓存的失效通知
+ */
+@Slf4j
+public class HotKeyDetector {
+
+    /**
+     * 每行哈希的种子，行数即 sketch 深度
+     */
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+    private final CacheProperties.HotKey properties;
+    /**
+     * 滑动窗口，每个分片是一个 sketch，按行依次存放
+     */
+    private final AtomicLongArray[] slices;
+    private final int width;
+    private final int mask;
+    private volatile int current;
+    /**
+     * 当前热点key
+     */
+    private final ConcurrentHashMap<String, HotKey> hotKeys = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService rotateExecutor;
+
+    public HotKeyDetector(CacheProperties cacheProperties) {
+        this.properties = cacheProperties.getHotKey();
+        // 宽度取2的幂，用位运算代替取模
+        this.width = Integer.highestOneBit(Math.max(63, properties.getWidth() - 1) << 1);
+        this.mask = width - 1;
+        this.slices = new AtomicLongArray[Math.max(1, properties.getSlices())];
+        for (int i = 0; i < slices.length; i++) {
+            slices[i] = new AtomicLongArray(width * SEEDS.length);
+        }
+        if (properties.isEnabled()) {
+            long sliceMillis = getSliceMillis();
+            this.rotateExecutor = ThreadPoolUtil.newScheduledThreadPool(1, "redis-hotKeyExecutor");
+            this.rotateExecutor.scheduleWithFixedDelay(this::rotate, sliceMillis, sliceMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.rotateExecutor = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 记录一次读取，热点key返回提升后的本地缓存时间
+     *
+     * @param key
+     * @param nearSeconds 原本地缓存时间
+     * @return 非热点key返回原本地缓存时间
+     */
+    public int promote(String key, int nearSeconds) {
+        if (!isEnabled() || key == null) {
+            return nearSeconds;
+        }
+        if (ThreadLocalRandom.current().nextDouble() < properties.getSampleRatio()) {
+            sample(key);
+        }
+        return resolve(key, nearSeconds);
+    }
+
+    /**
+     * 热点key提升后的本地缓存时间，不记录读取，用于未命中后写入本地缓存等已经记录过的请求
+     *
+     * @param key
+     * @param nearSeconds 原本地缓存时间
+     * @return 非热点key返回原本地缓存时间
+     */
+    public int resolve(String key, int nearSeconds) {
+        if (!isEnabled() || key == null || !hotKeys.containsKey(key)) {
+            return nearSeconds;
+        }
+        return Math.max(nearSeconds, properties.getLocalSeconds());
+    }
+
+    /**
+     * 当前热点key，按每秒请求数从高到低排序
+     *
+     * @return
+     */
+    public List<HotKey> getHotKeys() {
+        List<HotKey> result = new ArrayList<>(hotKeys.values());
+        result.sort(Comparator.comparingDouble(HotKey::getQps).reversed());
+        return result;
+    }
+
+    public void shutdown() {
+        if (rotateExecutor != null) {
+            rotateExecutor.shutdownNow();
+        }
+    }
+
+    private void sample(String key) {
+        AtomicLongArray slice = slices[current];
+        long hash = hash(key);
+        for (int row = 0; row < SEEDS.length; row++) {
+            slice.incrementAndGet(row * width + index(hash, row));
+        }
+        if (hotKeys.containsKey(key)) {
+            return;
+        }
+        double qps = estimateQps(hash);
+        if (qps >= properties.getThresholdQps() && hotKeys.size() < properties.getMaxHotKeys()) {
+            long now = System.currentTimeMillis();
+            if (hotKeys.putIfAbsent(key, new HotKey(key, qps, now)) == null) {
+                log.info("热点key: [{}]，估算每秒请求数: [{}]", key, (long) qps);
+            }
+        }
+    }
+
+    /**
+     * 估算整个滑动窗口内的每秒请求数，每行取最小值，再除以抽样比例
+     *
+     * @param hash
+     * @return
+     */
+    private double estimateQps(long hash) {
+        long total = 0L;
+        for (AtomicLongArray slice : slices) {
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < SEEDS.length; row++) {
+                min = Math.min(min, slice.get(row * width + index(hash, row)));
+            }
+            total += min;
+        }
+        double seconds = getSliceMillis() * slices.length / 1000.0D;
+        return total / seconds / Math.max(properties.getSampleRatio(), 1e-6);
+    }
+
+    /**
+     * 清空最旧的分片并作为当前分片，同时重新估算热点key，低于阈值一半时取消热点
+     */
+    void rotate() {
+        try {
+            int next = (current + 1) % slices.length;
+            AtomicLongArray slice = slices[next];
+            for (int i = 0; i < slice.length(); i++) {
+                slice.set(i, 0L);
+            }
+            current = next;
+            double demoteQps = properties.getThresholdQps() / 2;
+            hotKeys.values().removeIf(hotKey -> {
+                double qps = estimateQps(hash(hotKey.getKey()));
+                hotKey.setQps(qps);
+                return qps < demoteQps;
+            });
+        } catch (Exception e) {
+            log.warn("热点key窗口滑动失败", e);
+        }
+    }
+
+    private long getSliceMillis() {
+        return Math.max(100L, properties.getSliceMillis());
+    }
+
+    private int index(long hash, int row) {
+        long h = (hash ^ SEEDS[row]) * 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private static long hash(String key) {
+        long h = 1125899906842597L;
+        for (int i = 0; i < key.length(); i++) {
+            h = 31 * h + key.charAt(i);
+        }
+        return h;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.evai.component.cache.hotkey;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+
+/**
+ * @author crh
+ * @date 2019-12-24
+ * @description 热点key监控端点，/actuator/hotkeys
+ */
+@Endpoint(id = "hotkeys")
+public class HotKeyEndpoint {
+
+    private final HotKeyDetector hotKeyDetector;
+
+    public HotKeyEndpoint(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    @ReadOperation
+    public List<HotKey> hotKeys() {
+        return hotKeyDetector.getHotKeys();
+    }
+}
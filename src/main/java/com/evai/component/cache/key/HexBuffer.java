@@ -0,0 +1,42 @@
+package com.evai.component.cache.key;
+
+/**
+ * @author crh
+ * @date 2019-12-22
+ * @description 线程内复用的摘要及十六进制字符缓冲区，避免每次计算摘要都分配中间对象
+ */
+class HexBuffer {
+
+    private static final char[] LOWER_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final char[] UPPER_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final byte[] bytes;
+    private final char[] chars;
+
+    HexBuffer(int byteLength) {
+        this.bytes = new byte[byteLength];
+        this.chars = new char[byteLength * 2];
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * 将 bytes 转为十六进制字符串
+     *
+     * @param upperCase 是否大写
+     * @return
+     */
+    String toHex(boolean upperCase) {
+        char[] digits = upperCase ? UPPER_DIGITS : LOWER_DIGITS;
+        for (int i = 0, j = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            chars[j++] = digits[b >>> 4];
+            chars[j++] = digits[b & 0x0F];
+        }
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.evai.component.cache.key;
+
+/**
+ * @author crh
+ * @date 2019-12-22
+ * @description 缓存keyId摘要算法，可通过注册自定义 KeyHasher bean 替换默认实现
+ * 实现类必须线程安全，并且相同的输入在所有节点上得到相同的输出
+ */
+public interface KeyHasher {
+
+    /**
+     * 计算keyId摘要
+     *
+     * @param keyId
+     * @return 固定长度的十六进制字符串
+     */
+    String hash(CharSequence keyId);
+
+}
@@ -0,0 +1,42 @@
+package com.evai.component.cache.key;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * @author crh
+ * @date 2019-12-22
+ * @description MD5 摘要，输出和 CommonUtil.getStringMD5 完全一致（32位大写），用于兼容旧的缓存key
+ * MessageDigest 及缓冲区按线程复用
+ */
+public class Md5KeyHasher implements KeyHasher {
+
+    private static final int MD5_BYTES = 16;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final ThreadLocal<HexBuffer> BUFFER = ThreadLocal.withInitial(() -> new HexBuffer(MD5_BYTES));
+
+    @Override
+    public String hash(CharSequence keyId) {
+        MessageDigest md = DIGEST.get();
+        HexBuffer buffer = BUFFER.get();
+        md.update(keyId.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            md.digest(buffer.bytes(), 0, MD5_BYTES);
+        } catch (DigestException e) {
+            md.reset();
+            throw new IllegalStateException(e);
+        }
+        return buffer.toHex(true);
+    }
+
+}
@@ -0,0 +1,470 @@
+package com.evai.component.cache.local;
+
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.utils.concurrent.ThreadPoolUtil;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.PatternMatchUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @author crh
+ * @date 2019-12-26
+ * @description 本地磁盘缓存，位于本地缓存之后、Redis 之前，重启后仍可使用
+ * 缓存值（编码后的字节）按追加写入内存映射的分段文件，内存中只保存 key 到文件位置的索引，启动时按顺序扫描分段文件重建索引
+ * 删除时追加墓碑记录，分段数超过上限时把最旧分段中仍有效的记录复制到当前分段后删除该分段
+ * 和本地缓存使用相同的失效通知保持一致；节点停止期间无法收到失效通知，停止时间超过 maxOfflineSeconds 时启动后清空，
+ * 未超过时恢复的记录标记为待校验，首次读取时由调用方和 redis 比较（值未修改且没有写锁）后才使用，校验失败的记录失效
+ * 记录格式：标识(int)|key长度(int)|过期时间戳(long)|值长度(int，墓碑为-1)|key|值
+ */
+@Slf4j
+public class DiskCache {
+
+    private static final int MAGIC = 0x43414448;
+    private static final int HEADER_LEN = 4 + 4 + 8 + 4;
+    private static final int TOMBSTONE = -1;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String LOCK_FILE = "disk.lock";
+    private static final String HEARTBEAT_FILE = "heartbeat";
+
+    private final CacheProperties.Disk properties;
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+    /**
+     * 分段文件，key 为分段编号，越大越新
+     */
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    /**
+     * 读取时加读锁，追加、切换及删除分段时加写锁
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private ScheduledExecutorService heartbeatExecutor;
+    private FileChannel lockChannel;
+    private FileLock fileLock;
+    private Segment active;
+    private volatile boolean enabled;
+
+    public DiskCache(CacheProperties cacheProperties) {
+        this.properties = cacheProperties.getDisk();
+        if (properties.isEnabled()) {
+            try {
+                open();
+                this.enabled = true;
+            } catch (Exception e) {
+                log.error("open disk cache: [{}] error, disk cache disabled", properties.getDirectory(), e);
+                close();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 查询磁盘缓存
+     *
+     * @param key
+     * @param verifier 重启后恢复的记录首次读取时的校验，返回false时失效该记录
+     * @return 未命中、已过期或校验失败返回null
+     */
+    public byte[] get(String key, Predicate<byte[]> verifier) {
+        if (!enabled) {
+            return null;
+        }
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        if (location.expireAt < System.currentTimeMillis()) {
+            index.remove(key, location);
+            return null;
+        }
+        byte[] value;
+        lock.readLock().lock();
+        try {
+            Segment segment = segments.get(location.segmentId);
+            if (segment == null) {
+                return null;
+            }
+            value = new byte[location.valueLen];
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(location.valueOffset);
+            buffer.get(value);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (location.restored) {
+            if (!verifier.test(value)) {
+                invalidate(Collections.singletonList(key));
+                return null;
+            }
+            index.replace(key, location, location.verified());
+        }
+        return value;
+    }
+
+    /**
+     * 写入磁盘缓存
+     *
+     * @param key
+     * @param value   编码后的缓存值
+     * @param seconds 过期时间，超过 maxSeconds 时取 maxSeconds，小于等于0不写入
+     */
+    public void put(String key, byte[] value, long seconds) {
+        if (!enabled || key == null || value == null || seconds <= 0 || value.length > properties.getMaxValueBytes()) {
+            return;
+        }
+        long expireAt = System.currentTimeMillis() + Math.min(seconds, properties.getMaxSeconds()) * 1000L;
+        lock.writeLock().lock();
+        try {
+            Location location = append(key.getBytes(StandardCharsets.UTF_8), expireAt, value);
+            if (location != null) {
+                index.put(key, location);
+            }
+        } catch (Exception e) {
+            log.error("write disk cache key: [{}] error", key, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 失效key，存在时追加墓碑记录，避免重启后恢复
+     *
+     * @param keys
+     */
+    public void invalidate(Collection<String> keys) {
+        if (!enabled || CollectionUtils.isEmpty(keys)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (String key : keys) {
+                if (key != null && index.remove(key) != null) {
+                    append(key.getBytes(StandardCharsets.UTF_8), 0L, null);
+                }
+            }
+        } catch (Exception e) {
+            log.error("invalidate disk cache error", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 失效匹配的key，只支持 "*" 通配符
+     *
+     * @param pattern
+     */
+    public void invalidatePattern(String pattern) {
+        if (!enabled || StringUtils.isBlank(pattern)) {
+            return;
+        }
+        invalidate(index.keySet().stream().filter(key -> PatternMatchUtils.simpleMatch(pattern, key)).collect(Collectors.toList()));
+    }
+
+    public long size() {
+        return index.size();
+    }
+
+    public void shutdown() {
+        enabled = false;
+        close();
+    }
+
+    /**
+     * 检查上次停止的时间，重建索引并开始更新心跳
+     *
+     * @throws IOException
+     */
+    private void open() throws IOException {
+        Path directory = Paths.get(properties.getDirectory());
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        fileLock = lockChannel.tryLock();
+        if (fileLock == null) {
+            throw new IOException("disk cache directory is used by another process");
+        }
+        Path heartbeat = directory.resolve(HEARTBEAT_FILE);
+        boolean fresh = Files.exists(heartbeat)
+                && System.currentTimeMillis() - Files.getLastModifiedTime(heartbeat).toMillis() <= TimeUnit.SECONDS.toMillis(properties.getMaxOfflineSeconds());
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)).collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            if (fresh) {
+                long id = Long.parseLong(StringUtils.substringBetween(file.getFileName().toString(), SEGMENT_PREFIX, SEGMENT_SUFFIX));
+                segments.put(id, Segment.open(id, file.toFile(), properties.getSegmentBytes()));
+            } else {
+                Files.delete(file);
+            }
+        }
+        for (Segment segment : segments.values()) {
+            load(segment);
+        }
+        active = segments.isEmpty() ? newSegment(0L) : segments.lastEntry().getValue();
+        touch(heartbeat);
+        heartbeatExecutor = ThreadPoolUtil.newScheduledThreadPool(1, "diskCache-heartbeatExecutor");
+        heartbeatExecutor.scheduleWithFixedDelay(() -> touch(heartbeat), 1L, 1L, TimeUnit.SECONDS);
+        log.info("open disk cache: [{}], segments: [{}], keys: [{}]", directory, segments.size(), index.size());
+    }
+
+    /**
+     * 扫描分段文件中的记录重建索引，后写入的记录覆盖先写入的记录
+     *
+     * @param segment
+     */
+    private void load(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        long now = System.currentTimeMillis();
+        int position = 0;
+        while (position + HEADER_LEN <= buffer.capacity() && buffer.getInt(position) == MAGIC) {
+            int keyLen = buffer.getInt(position + 4);
+            long expireAt = buffer.getLong(position + 8);
+            int valueLen = buffer.getInt(position + 16);
+            int end = position + HEADER_LEN + keyLen + Math.max(valueLen, 0);
+            if (keyLen <= 0 || end > buffer.capacity()) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLen];
+            buffer.position(position + HEADER_LEN);
+            buffer.get(keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            if (valueLen == TOMBSTONE || expireAt < now) {
+                index.remove(key);
+            } else {
+                // 停止期间可能错过失效通知，首次读取时校验
+                index.put(key, new Location(segment.id, position + HEADER_LEN + keyLen, valueLen, expireAt, true));
+            }
+            position = end;
+        }
+        segment.position = position;
+    }
+
+    /**
+     * 追加记录，调用方持有写锁
+     *
+     * @param keyBytes
+     * @param expireAt
+     * @param value    为null时写入墓碑
+     * @return 记录位置，记录超过分段大小时返回null
+     * @throws IOException
+     */
+    private Location append(byte[] keyBytes, long expireAt, byte[] value) throws IOException {
+        int length = recordLength(keyBytes, value);
+        if (length > properties.getSegmentBytes()) {
+            return null;
+        }
+        if (active.position + length > active.buffer.capacity()) {
+            roll(length);
+        }
+        return write(keyBytes, expireAt, value, length);
+    }
+
+    /**
+     * 在当前分段写入记录，调用方确保剩余空间足够
+     *
+     * @param keyBytes
+     * @param expireAt
+     * @param value
+     * @param length
+     * @return
+     */
+    private Location write(byte[] keyBytes, long expireAt, byte[] value, int length) {
+        int valueLen = value == null ? TOMBSTONE : value.length;
+        MappedByteBuffer buffer = active.buffer;
+        int position = active.position;
+        buffer.putInt(position + 4, keyBytes.length);
+        buffer.putLong(position + 8, expireAt);
+        buffer.putInt(position + 16, valueLen);
+        ByteBuffer body = buffer.duplicate();
+        body.position(position + HEADER_LEN);
+        body.put(keyBytes);
+        if (value != null) {
+            body.put(value);
+        }
+        // 最后写入标识，进程中断时不完整的记录不会被读取
+        buffer.putInt(position, MAGIC);
+        active.position = position + length;
+        return new Location(active.id, position + HEADER_LEN + keyBytes.length, Math.max(valueLen, 0), expireAt, false);
+    }
+
+    private static int recordLength(byte[] keyBytes, byte[] value) {
+        return HEADER_LEN + keyBytes.length + (value == null ? 0 : value.length);
+    }
+
+    /**
+     * 切换到新的分段，分段数超过上限时整理最旧的分段
+     *
+     * @param reserve 为待写入的记录保留的空间
+     * @throws IOException
+     */
+    private void roll(int reserve) throws IOException {
+        active = newSegment(active.id + 1);
+        while (segments.size() > Math.max(2, properties.getMaxSegments())) {
+            compact(segments.firstEntry().getValue(), reserve);
+        }
+    }
+
+    /**
+     * 复制最旧分段中仍有效的记录到当前分段，然后删除该分段
+     * 最旧分段中的墓碑记录之前已没有该key的记录，可以直接丢弃；当前分段除保留空间外写满后，剩余的记录也直接丢弃，分段数不会超过上限
+     *
+     * @param oldest
+     * @param reserve 为待写入的记录保留的空间
+     * @throws IOException
+     */
+    private void compact(Segment oldest, int reserve) throws IOException {
+        long now = System.currentTimeMillis();
+        int copied = 0;
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            if (location.segmentId != oldest.id) {
+                continue;
+            }
+            if (location.expireAt < now) {
+                index.remove(entry.getKey(), location);
+                continue;
+            }
+            byte[] value = new byte[location.valueLen];
+            ByteBuffer buffer = oldest.buffer.duplicate();
+            buffer.position(location.valueOffset);
+            buffer.get(value);
+            byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            int length = recordLength(keyBytes, value);
+            Location moved = active.position + length + reserve <= active.buffer.capacity()
+                    ? write(keyBytes, location.expireAt, value, length) : null;
+            if (moved != null && location.restored) {
+                moved = moved.restored();
+            }
+            if (moved != null && index.replace(entry.getKey(), location, moved)) {
+                copied++;
+            } else {
+                index.remove(entry.getKey(), location);
+            }
+        }
+        segments.remove(oldest.id);
+        Files.deleteIfExists(oldest.file.toPath());
+        log.info("compact disk cache segment: [{}], copied: [{}]", oldest.id, copied);
+    }
+
+    private Segment newSegment(long id) throws IOException {
+        File file = Paths.get(properties.getDirectory(), SEGMENT_PREFIX + id + SEGMENT_SUFFIX).toFile();
+        Segment segment = Segment.open(id, file, properties.getSegmentBytes());
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void touch(Path heartbeat) {
+        try {
+            if (!Files.exists(heartbeat)) {
+                Files.createFile(heartbeat);
+            }
+            Files.setLastModifiedTime(heartbeat, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.warn("update disk cache heartbeat error: [{}]", e.getMessage());
+        }
+    }
+
+    private void close() {
+        if (heartbeatExecutor != null) {
+            heartbeatExecutor.shutdownNow();
+        }
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                segment.buffer.force();
+            }
+            segments.clear();
+            index.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            if (fileLock != null) {
+                fileLock.release();
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            log.warn("release disk cache lock error: [{}]", e.getMessage());
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Location {
+        private final long segmentId;
+        private final int valueOffset;
+        private final int valueLen;
+        private final long expireAt;
+        /**
+         * 启动时从分段文件恢复，尚未和 redis 校验
+         */
+        private final boolean restored;
+
+        private Location verified() {
+            return new Location(segmentId, valueOffset, valueLen, expireAt, false);
+        }
+
+        private Location restored() {
+            return new Location(segmentId, valueOffset, valueLen, expireAt, true);
+        }
+    }
+
+    private static class Segment {
+        private final long id;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        /**
+         * 下一条记录的写入位置
+         */
+        private int position;
+
+        private Segment(long id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        private static Segment open(long id, File file, int size) throws IOException {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                FileChannel channel = randomAccessFile.getChannel();
+                // 映射后关闭文件不影响映射区的读写
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, (int) channel.size()));
+                return new Segment(id, file, buffer);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.evai.component.cache.local;
+
+import com.evai.component.cache.CacheConstant;
+import com.evai.component.cache.CacheProperties;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.PatternMatchUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * @author crh
+ * @date 2019-12-08
+ * @description 本地缓存（一级缓存），存放反序列化后的对象，位于 Redis 之前
+ * 通过 Redis 发布订阅通知所有节点失效对应的key
+ * 注意：命中本地缓存时返回的是共享对象，调用方不要修改返回值
+ */
+@Slf4j
+public class NearCache implements MessageListener {
+
+    private final CacheProperties.Local properties;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final Cache<String, LocalValue> cache;
+    /**
+     * 本地磁盘缓存，和本地缓存一起失效
+     */
+    private final DiskCache diskCache;
+    /**
+     * 热点key会放入本地缓存，即使没有开启本地缓存
+     */
+    private final boolean hotKeyEnabled;
+
+    public NearCache(CacheProperties cacheProperties, RedisTemplate<String, String> redisTemplate, DiskCache diskCache) {
+        this.properties = cacheProperties.getLocal();
+        this.redisTemplate = redisTemplate;
+        this.diskCache = diskCache;
+        this.hotKeyEnabled = cacheProperties.getHotKey().isEnabled();
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (properties.getMaximumWeight() > 0) {
+            builder.maximumWeight(properties.getMaximumWeight())
+                    .weigher((String key, LocalValue value) -> value.weight);
+        } else {
+            builder.maximumSize(properties.getMaximumSize());
+        }
+        this.cache = builder.build();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 本地缓存、本地磁盘缓存或热点key探测开启时需要订阅失效通知
+     *
+     * @return
+     */
+    public boolean isSubscribed() {
+        return isEnabled() || diskCache.isEnabled() || hotKeyEnabled;
+    }
+
+    /**
+     * 计算最终的本地缓存时间
+     *
+     * @param localSeconds 注解配置的时间，小于0时使用全局配置
+     * @return 0 表示不使用本地缓存
+     */
+    public int resolveSeconds(int localSeconds) {
+        if (!isEnabled()) {
+            return 0;
+        }
+        return localSeconds < 0 ? properties.getSeconds() : localSeconds;
+    }
+
+    /**
+     * 查询本地缓存
+     *
+     * @param key
+     * @return 未命中或已过期返回null
+     */
+    public LocalValue get(String key) {
+        LocalValue localValue = cache.getIfPresent(key);
+        // 过期的值不删除，保留给 getStale 使用，由容量上限淘汰
+        if (localValue == null || localValue.expireAt < System.currentTimeMillis()) {
+            return null;
+        }
+        return localValue;
+    }
+
+    /**
+     * 查询本地缓存，包括已按时间过期的值，被失效通知删除的值不会返回
+     *
+     * @param key
+     * @param staleMillis 最长过期时间，单位毫秒
+     * @return 不存在或过期时间超过 staleMillis 返回null
+     */
+    public LocalValue getStale(String key, long staleMillis) {
+        if (staleMillis <= 0) {
+            return null;
+        }
+        LocalValue localValue = cache.getIfPresent(key);
+        if (localValue == null || localValue.expireAt + staleMillis < System.currentTimeMillis()) {
+            return null;
+        }
+        return localValue;
+    }
+
+    /**
+     * 放入本地缓存
+     *
+     * @param key
+     * @param value   反序列化后的对象，可以为null
+     * @param weight  权重，一般为序列化后的长度
+     * @param seconds 过期时间，小于等于0不放入
+     */
+    public void put(String key, Object value, int weight, int seconds) {
+        if (seconds <= 0) {
+            return;
+        }
+        cache.put(key, new LocalValue(value, Math.max(weight, 1), System.currentTimeMillis() + seconds * 1000L));
+    }
+
+    /**
+     * 失效当前节点及其它节点的key
+     *
+     * @param keys
+     */
+    public void invalidate(Collection<String> keys) {
+        if (!isSubscribed() || CollectionUtils.isEmpty(keys)) {
+            return;
+        }
+        cache.invalidateAll(keys);
+        diskCache.invalidate(keys);
+        publish(CacheConstant.LOCAL_INVALIDATE_CHANNEL, keys.stream().filter(Objects::nonNull).collect(Collectors.joining(CacheConstant.LINE_SEPARATOR)));
+    }
+
+    /**
+     * 失效当前节点及其它节点匹配的key，只支持 "*" 通配符
+     *
+     * @param pattern
+     */
+    public void invalidatePattern(String pattern) {
+        if (!isSubscribed() || StringUtils.isBlank(pattern)) {
+            return;
+        }
+        invalidateLocalPattern(pattern);
+        diskCache.invalidatePattern(pattern);
+        publish(CacheConstant.LOCAL_INVALIDATE_PATTERN_CHANNEL, pattern);
+    }
+
+    private void invalidateLocalPattern(String pattern) {
+        cache.asMap().keySet().removeIf(key -> PatternMatchUtils.simpleMatch(pattern, key));
+    }
+
+    private void publish(String channel, String message) {
+        try {
+            redisTemplate.convertAndSend(channel, message);
+        } catch (Exception e) {
+            log.error("publish local cache invalidation error, channel: [{}]", channel, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (CacheConstant.LOCAL_INVALIDATE_CHANNEL.equals(channel)) {
+            List<String> keys = Arrays.asList(StringUtils.split(body, CacheConstant.LINE_SEPARATOR));
+            cache.invalidateAll(keys);
+            diskCache.invalidate(keys);
+        } else if (CacheConstant.LOCAL_INVALIDATE_PATTERN_CHANNEL.equals(channel)) {
+            invalidateLocalPattern(body);
+            diskCache.invalidatePattern(body);
+        }
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public static class LocalValue {
+        private final Object value;
+        private final int weight;
+        private final long expireAt;
+
+        private LocalValue(Object value, int weight, long expireAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> T getValue() {
+            return (T) value;
+        }
+    }
+
+}
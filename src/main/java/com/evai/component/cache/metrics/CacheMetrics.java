@@ -0,0 +1,136 @@
+package com.evai.component.cache.metrics;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * @author crh
+ * @date 2019-12-08
+ * @description 缓存组件运行指标
+ */
+@Getter
+public class CacheMetrics {
+
+    /**
+     * 合并请求中实际执行业务逻辑的次数
+     */
+    private final LongAdder singleFlightLeader = new LongAdder();
+    /**
+     * 被合并的请求次数（等待其它线程的结果）
+     */
+    private final LongAdder singleFlightCoalesced = new LongAdder();
+    /**
+     * 等待其它线程结果超时的次数
+     */
+    private final LongAdder singleFlightTimeout = new LongAdder();
+    /**
+     * 集群请求合并中获取到锁并执行业务逻辑的次数
+     */
+    private final LongAdder distributedLeader = new LongAdder();
+    /**
+     * 集群请求合并中等待其它节点计算结果的次数
+     */
+    private final LongAdder distributedWaiting = new LongAdder();
+    /**
+     * 等待其它节点计算结果超时的次数
+     */
+    private final LongAdder distributedTimeout = new LongAdder();
+    /**
+     * 集群请求合并中其它节点计算时直接返回本地过期副本的次数
+     */
+    private final LongAdder distributedStale = new LongAdder();
+    /**
+     * 压缩次数
+     */
+    private final LongAdder compressCount = new LongAdder();
+    /**
+     * 压缩前总字节数
+     */
+    private final LongAdder compressRawBytes = new LongAdder();
+    /**
+     * 压缩后总字节数
+     */
+    private final LongAdder compressedBytes = new LongAdder();
+    /**
+     * 压缩总耗时，纳秒
+     */
+    private final LongAdder compressNanos = new LongAdder();
+    /**
+     * 超过阈值但压缩后没有变小，按原值存放的次数
+     */
+    private final LongAdder compressSkipped = new LongAdder();
+    /**
+     * 解压次数
+     */
+    private final LongAdder decompressCount = new LongAdder();
+    /**
+     * 解压总耗时，纳秒
+     */
+    private final LongAdder decompressNanos = new LongAdder();
+    /**
+     * 提前刷新请求次数
+     */
+    private final LongAdder refreshRequested = new LongAdder();
+    /**
+     * 同一个key已在本机排队或执行中而被合并的刷新请求次数
+     */
+    private final LongAdder refreshDeduplicated = new LongAdder();
+    /**
+     * 刷新队列已满而丢弃的次数
+     */
+    private final LongAdder refreshDropped = new LongAdder();
+    /**
+     * 其它节点已经刷新而跳过的次数
+     */
+    private final LongAdder refreshSkipped = new LongAdder();
+    /**
+     * 刷新成功次数
+     */
+    private final LongAdder refreshCount = new LongAdder();
+    /**
+     * 刷新失败次数
+     */
+    private final LongAdder refreshFailed = new LongAdder();
+    /**
+     * 刷新成功总耗时，纳秒
+     */
+    private final LongAdder refreshNanos = new LongAdder();
+    /**
+     * 本地布隆过滤器副本未命中，读取 redis 确认的次数
+     */
+    private final LongAdder bloomRemoteChecks = new LongAdder();
+    /**
+     * 布隆过滤器判断主键不存在，直接返回null的次数
+     */
+    private final LongAdder bloomRejected = new LongAdder();
+    /**
+     * 刷新队列当前长度
+     */
+    @Setter
+    private volatile IntSupplier refreshQueueDepth = () -> 0;
+
+    /**
+     * 压缩率，压缩后字节数 / 压缩前字节数
+     *
+     * @return 没有压缩过时返回1
+     */
+    public double getCompressionRatio() {
+        long raw = compressRawBytes.sum();
+        return raw == 0 ? 1.0D : (double) compressedBytes.sum() / raw;
+    }
+
+    /**
+     * 刷新平均耗时，毫秒
+     *
+     * @return 没有刷新过时返回0
+     */
+    public double getRefreshAverageMillis() {
+        long count = refreshCount.sum();
+        return count == 0 ? 0.0D : (double) refreshNanos.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+}
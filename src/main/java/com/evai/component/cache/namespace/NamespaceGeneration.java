@@ -0,0 +1,111 @@
+package com.evai.component.cache.namespace;
+
+import com.evai.component.cache.CacheConstant;
+import com.evai.component.cache.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author crh
+ * @date 2019-12-17
+ * @description 缓存命名空间代数，每个 keyName 对应一个保存在 redis 的代数，代数大于0时拼接到最终key中
+ * 批量失效某个 keyName 的所有缓存只需把代数加1，旧代数的key不再被访问，自然过期
+ * 代数在本地缓存，超过重新校验时间后才重新读取，其它节点最多延迟该时间后看到新的代数
+ */
+@Slf4j
+public class NamespaceGeneration {
+
+    private final CacheProperties.Namespace properties;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ConcurrentHashMap<String, Generation> generations = new ConcurrentHashMap<>();
+
+    public NamespaceGeneration(CacheProperties cacheProperties, RedisTemplate<String, String> redisTemplate) {
+        this.properties = cacheProperties.getNamespace();
+        this.redisTemplate = redisTemplate;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 拼接当前代数后的 keyName，代数为0时原样返回，和未开启时的key相同
+     *
+     * @param keyName
+     * @return
+     */
+    public String apply(String keyName) {
+        if (!isEnabled()) {
+            return keyName;
+        }
+        long generation = current(keyName);
+        return generation == 0L ? keyName : keyName + CacheConstant.GENERATION + generation + CacheConstant.COLON;
+    }
+
+    /**
+     * 当前代数
+     *
+     * @param keyName
+     * @return
+     */
+    public long current(String keyName) {
+        long now = System.currentTimeMillis();
+        Generation generation = generations.computeIfAbsent(keyName, k -> new Generation(load(k), now));
+        long checkedAt = generation.checkedAt.get();
+        // 只由一个线程重新读取，其它线程继续使用旧的代数
+        if (now - checkedAt > properties.getRevalidateMillis() && generation.checkedAt.compareAndSet(checkedAt, now)) {
+            generation.value = Math.max(generation.value, load(keyName));
+        }
+        return generation.value;
+    }
+
+    /**
+     * 代数加1，使该 keyName 下的所有缓存失效
+     *
+     * @param keyName
+     * @return 新的代数
+     */
+    public long increment(String keyName) {
+        Long value = redisTemplate.opsForValue().increment(getGenerationKey(keyName));
+        long next = value == null ? 0L : value;
+        generations.put(keyName, new Generation(next, System.currentTimeMillis()));
+        log.info("namespace keyName: [{}] generation: [{}]", keyName, next);
+        return next;
+    }
+
+    private long load(String keyName) {
+        try {
+            return NumberUtils.toLong(redisTemplate.opsForValue().get(getGenerationKey(keyName)));
+        } catch (Exception e) {
+            // 读取失败时继续使用本地代数，下次校验时重试
+            log.error("load namespace keyName: [{}] generation error", keyName, e);
+            Generation generation = generations.get(keyName);
+            return generation == null ? 0L : generation.value;
+        }
+    }
+
+    /**
+     * 代数key不设置过期时间，否则过期后代数归0，旧代数的缓存会重新生效
+     *
+     * @param keyName
+     * @return
+     */
+    private String getGenerationKey(String keyName) {
+        return CacheConstant.NAMESPACE_GENERATION + keyName;
+    }
+
+    private static class Generation {
+        private volatile long value;
+        private final AtomicLong checkedAt;
+
+        private Generation(long value, long checkedAt) {
+            this.value = value;
+            this.checkedAt = new AtomicLong(checkedAt);
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.evai.component.cache.plan;
+
+import com.fasterxml.jackson.databind.JavaType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * @author crh
+ * @date 2019-12-15
+ * @description 缓存方法执行计划，每个方法（及目标类）只编译一次
+ * 包含完整的缓存名称、解析后的 keyId 表达式及返回值类型，调用时无需再解析注解和表达式
+ */
+@Getter
+@AllArgsConstructor
+public class CacheInvocationPlan {
+
+    /**
+     * 完整的缓存名称，包含前缀和后缀
+     */
+    private final String keyName;
+    /**
+     * 解析后的 keyId 表达式
+     */
+    private final List<KeySegment> segments;
+    /**
+     * 方法返回值类型，只有 CacheAble 有值
+     */
+    private final JavaType javaType;
+
+    /**
+     * keyId 中第一个直接引用的方法参数（#ids 形式）下标，批量查询时为集合参数
+     *
+     * @return 不存在返回 -1
+     */
+    public int getFirstParamIndex() {
+        for (KeySegment segment : segments) {
+            if (!segment.isLiteral() && segment.getFieldName() == null) {
+                return segment.getParamIndex();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * keyId 中第一个引用的方法参数（#entity 或 #entity.id 形式）下标
+     *
+     * @return 不存在返回 -1
+     */
+    public int getFirstArgIndex() {
+        for (KeySegment segment : segments) {
+            if (!segment.isLiteral()) {
+                return segment.getParamIndex();
+            }
+        }
+        return -1;
+    }
+
+}
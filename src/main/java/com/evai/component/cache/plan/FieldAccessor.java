@@ -0,0 +1,132 @@
+package com.evai.component.cache.plan;
+
+import com.evai.component.utils.BeanUtil;
+import com.evai.component.utils.CommonUtil;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * @author crh
+ * @date 2019-12-15
+ * @description 基于 MethodHandle 的字段读取器，每个类只解析一次，避免每次调用都反射查找字段
+ */
+public final class FieldAccessor {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<ClassAccessors> ACCESSORS = new ClassValue<ClassAccessors>() {
+        @Override
+        protected ClassAccessors computeValue(Class<?> type) {
+            return new ClassAccessors(type);
+        }
+    };
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final String name;
+    private final MethodHandle getter;
+    /**
+     * final 字段为null
+     */
+    private final MethodHandle setter;
+
+    private FieldAccessor(Field field) {
+        this.name = field.getName();
+        field.setAccessible(true);
+        try {
+            this.getter = MethodHandles.lookup().unreflectGetter(field).asType(GETTER_TYPE);
+            this.setter = Modifier.isFinal(field.getModifiers()) ? null : MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("unreflect field [" + field + "] failed", e);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 读取字段值
+     *
+     * @param target
+     * @return
+     */
+    public Object get(Object target) {
+        try {
+            return (Object) getter.invokeExact(target);
+        } catch (Throwable e) {
+            CommonUtil.doThrow(e);
+            return null;
+        }
+    }
+
+    /**
+     * 写入字段值，final 字段忽略
+     *
+     * @param target
+     * @param value
+     */
+    public void set(Object target, Object value) {
+        if (setter == null) {
+            return;
+        }
+        try {
+            setter.invokeExact(target, value);
+        } catch (Throwable e) {
+            CommonUtil.doThrow(e);
+        }
+    }
+
+    /**
+     * 获取类所有字段（包括父类，不包括静态及 transient 字段），顺序同 BeanUtil.getAllFields
+     *
+     * @param clazz
+     * @return
+     */
+    public static List<FieldAccessor> getAll(Class<?> clazz) {
+        return ACCESSORS.get(clazz).fields;
+    }
+
+    /**
+     * 获取指定名称的字段（包括父类）
+     *
+     * @param clazz
+     * @param fieldName
+     * @return 不存在返回null
+     */
+    public static FieldAccessor get(Class<?> clazz, String fieldName) {
+        return ACCESSORS.get(clazz).getByName(fieldName);
+    }
+
+    private static class ClassAccessors {
+        private final Class<?> type;
+        private final List<FieldAccessor> fields;
+        private final ConcurrentHashMap<String, Optional<FieldAccessor>> byName = new ConcurrentHashMap<>();
+
+        private ClassAccessors(Class<?> type) {
+            this.type = type;
+            this.fields = Collections.unmodifiableList(BeanUtil.getAllFields(type)
+                    .stream()
+                    .map(FieldAccessor::new)
+                    .collect(Collectors.toList()));
+        }
+
+        private FieldAccessor getByName(String fieldName) {
+            return byName.computeIfAbsent(fieldName, name -> {
+                Field field = ReflectionUtils.findField(type, name);
+                return field == null ? Optional.empty() : Optional.of(new FieldAccessor(field));
+            }).orElse(null);
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.evai.component.cache.plan;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * @author crh
+ * @date 2019-12-15
+ * @description 解析后的 keyId 表达式片段，例如 "#user.id + #type + list" 解析为三个片段
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class KeySegment {
+
+    /**
+     * 常量值或方法参数名称
+     */
+    private final String text;
+    /**
+     * 方法参数下标，常量为 -1
+     */
+    private final int paramIndex;
+    /**
+     * 方法参数的属性名称，只有 #user.id 形式才有值
+     */
+    private final String fieldName;
+
+    public static KeySegment literal(String text) {
+        return new KeySegment(text, -1, null);
+    }
+
+    public static KeySegment param(String paramName, int paramIndex) {
+        return new KeySegment(paramName, paramIndex, null);
+    }
+
+    public static KeySegment field(String paramName, int paramIndex, String fieldName) {
+        return new KeySegment(paramName, paramIndex, fieldName);
+    }
+
+    public boolean isLiteral() {
+        return paramIndex < 0;
+    }
+
+}
@@ -0,0 +1,296 @@
+package com.evai.component.cache.purge;
+
+import com.evai.component.cache.CacheConstant;
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.RedisService;
+import com.evai.component.cache.enums.PurgeStatus;
+import com.evai.component.cache.exception.IllegalParamException;
+import com.evai.component.utils.concurrent.ThreadPoolUtil;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author crh
+ * @date 2019-12-18
+ * @description 按匹配规则后台删除key
+ * 使用 SCAN 分批遍历，集群在删除线程池中并行遍历每个主节点，每批按限速配额执行后通过管道分组 UNLINK，避免阻塞 redis 影响其它业务
+ * 进度及每个节点的 SCAN 游标定期保存到 redis，任务中断后可以在任意节点从保存的游标继续执行，最多重复扫描一个检查点间隔的批次
+ * 继续执行前集群发生槽迁移时，已遍历完成的节点上迁入的key可能遗漏，可重新提交任务
+ */
+@Slf4j
+public class KeyPurger {
+
+    private static final String PATTERN = "pattern";
+    private static final String MATCHED = "matched";
+    private static final String DELETED = "deleted";
+    private static final String STATUS = "status";
+    private static final String CURSOR = "cursor:";
+    /**
+     * 非集群时的节点名称
+     */
+    private static final String STANDALONE = "standalone";
+
+    private final CacheProperties.Purge properties;
+    private final RedisService redisService;
+    private final RedisTemplate<String, String> redisTemplate;
+    /**
+     * 本节点所有删除任务共享的限速配额，单位：key/秒
+     */
+    private final RateLimiter rateLimiter;
+    private final ExecutorService purgeExecutor;
+    /**
+     * 本节点执行中的任务
+     */
+    private final ConcurrentHashMap<String, PurgeJob> jobs = new ConcurrentHashMap<>();
+
+    public KeyPurger(CacheProperties cacheProperties, RedisService redisService, RedisTemplate<String, String> redisTemplate) {
+        this.properties = cacheProperties.getPurge();
+        this.redisService = redisService;
+        this.redisTemplate = redisTemplate;
+        this.rateLimiter = RateLimiter.create(properties.getOpsPerSecond());
+        this.purgeExecutor = ThreadPoolUtil.newFixedThreadPool("redis-purgeExecutor", properties.getThreads());
+    }
+
+    /**
+     * 提交删除任务
+     *
+     * @param pattern 匹配规则
+     * @return
+     */
+    public PurgeJob submit(String pattern) {
+        if (StringUtils.isBlank(pattern)) {
+            throw new IllegalParamException("删除规则不能为空");
+        }
+        return start(new PurgeJob(UUID.randomUUID().toString(), pattern, 0L, 0L));
+    }
+
+    /**
+     * 继续执行已停止或失败的任务
+     *
+     * @param jobId
+     * @return
+     */
+    public PurgeJob resume(String jobId) {
+        PurgeJob running = jobs.get(jobId);
+        if (running != null) {
+            return running;
+        }
+        PurgeJob checkpoint = getJob(jobId);
+        if (checkpoint == null) {
+            throw new IllegalParamException("删除任务不存在或已过期: " + jobId);
+        }
+        if (checkpoint.getStatus() == PurgeStatus.DONE) {
+            return checkpoint;
+        }
+        PurgeJob job = new PurgeJob(jobId, checkpoint.getPattern(), checkpoint.getMatched().sum(), checkpoint.getDeleted().sum());
+        job.getCursors().putAll(checkpoint.getCursors());
+        return start(job);
+    }
+
+    /**
+     * 查询任务进度，本节点没有执行该任务时读取保存的进度
+     *
+     * @param jobId
+     * @return 任务不存在或已过期时返回null
+     */
+    public PurgeJob getJob(String jobId) {
+        PurgeJob job = jobs.get(jobId);
+        if (job != null) {
+            return job;
+        }
+        Map<String, String> checkpoint = this.<String, String>hashOperations().entries(getJobKey(jobId));
+        if (checkpoint.isEmpty()) {
+            return null;
+        }
+        job = new PurgeJob(jobId, checkpoint.get(PATTERN), NumberUtils.toLong(checkpoint.get(MATCHED)), NumberUtils.toLong(checkpoint.get(DELETED)));
+        for (Map.Entry<String, String> entry : checkpoint.entrySet()) {
+            if (entry.getKey().startsWith(CURSOR)) {
+                job.getCursors().put(entry.getKey().substring(CURSOR.length()), NumberUtils.toLong(entry.getValue()));
+            }
+        }
+        PurgeStatus status = PurgeStatus.valueOf(checkpoint.get(STATUS));
+        // 执行中的节点已宕机时，保存的状态仍为执行中，按失败处理以便继续执行
+        job.finish(status == PurgeStatus.RUNNING ? PurgeStatus.FAILED : status, null);
+        return job;
+    }
+
+    /**
+     * 停止本节点执行中的任务
+     *
+     * @param jobId
+     */
+    public void stop(String jobId) {
+        PurgeJob job = jobs.get(jobId);
+        if (job != null) {
+            job.stop();
+        }
+    }
+
+    public void shutdown() {
+        jobs.values().forEach(PurgeJob::stop);
+        purgeExecutor.shutdown();
+    }
+
+    private PurgeJob start(PurgeJob job) {
+        if (jobs.putIfAbsent(job.getId(), job) != null) {
+            return jobs.get(job.getId());
+        }
+        Map<String, RedisClusterNode> nodes;
+        try {
+            nodes = getScanNodes(job);
+        } catch (Exception e) {
+            log.error("purge job: [{}] get redis nodes error", job.getId(), e);
+            job.fail(e.getMessage());
+            nodes = Collections.emptyMap();
+        }
+        checkpoint(job);
+        if (nodes.isEmpty()) {
+            complete(job);
+            return job;
+        }
+        job.startScanning(nodes.size());
+        nodes.forEach((name, node) -> purgeExecutor.execute(() -> run(job, name, node)));
+        log.info("purge job: [{}] pattern: [{}] started, nodes: {}", job.getId(), job.getPattern(), nodes.keySet());
+        return job;
+    }
+
+    /**
+     * 需要遍历的节点：集群为所有主节点，否则为当前节点，不包含已遍历完成的节点
+     *
+     * @param job
+     * @return 节点名称及节点，非集群的节点为null
+     */
+    private Map<String, RedisClusterNode> getScanNodes(PurgeJob job) {
+        Map<String, RedisClusterNode> nodes = new LinkedHashMap<>();
+        List<RedisClusterNode> masters = redisService.getMasterNodes();
+        if (masters.isEmpty()) {
+            nodes.put(STANDALONE, null);
+        }
+        for (RedisClusterNode master : masters) {
+            nodes.put(master.getHost() + CacheConstant.COLON + master.getPort(), master);
+        }
+        nodes.keySet().removeIf(name -> job.getCursors().getOrDefault(name, 0L) == PurgeJob.FINISHED);
+        return nodes;
+    }
+
+    /**
+     * 从保存的游标开始遍历一个节点
+     *
+     * @param job
+     * @param name 节点名称
+     * @param node 集群主节点，非集群为null
+     */
+    private void run(PurgeJob job, String name, RedisClusterNode node) {
+        int checkpointBatches = Math.max(1, properties.getCheckpointBatches());
+        try {
+            redisService.scan(node, job.getCursors().getOrDefault(name, 0L), job.getPattern(), properties.getScanCount(), (keys, cursorId) -> {
+                if (!job.isRunning()) {
+                    throw new PurgeStoppedException();
+                }
+                long deleted = 0L;
+                if (!keys.isEmpty()) {
+                    rateLimiter.acquire(keys.size());
+                    deleted = unlink(keys);
+                }
+                job.progress(name, cursorId, keys.size(), deleted);
+                if (job.getBatches().sum() % checkpointBatches == 0) {
+                    checkpoint(job);
+                }
+            });
+        } catch (PurgeStoppedException e) {
+            log.info("purge job: [{}] node: [{}] stopped", job.getId(), name);
+        } catch (Exception e) {
+            log.error("purge job: [{}] pattern: [{}] node: [{}] error", job.getId(), job.getPattern(), name, e);
+            job.fail(e.getMessage());
+        } finally {
+            if (job.finishScanning()) {
+                complete(job);
+            }
+        }
+    }
+
+    private void complete(PurgeJob job) {
+        job.complete();
+        checkpoint(job);
+        jobs.remove(job.getId(), job);
+        log.info("purge job: [{}] pattern: [{}] {}, matched: [{}], deleted: [{}]", job.getId(), job.getPattern(), job.getStatus(), job.getMatched().sum(), job.getDeleted().sum());
+    }
+
+    /**
+     * 管道中分组 UNLINK，单条命令的key数量较少，不会长时间占用 redis
+     *
+     * @param keys
+     * @return 删除的key数量
+     */
+    private long unlink(List<String> keys) {
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            for (List<String> part : Lists.partition(keys, properties.getUnlinkBatch())) {
+                byte[][] rawKeys = new byte[part.size()][];
+                for (int i = 0; i < rawKeys.length; i++) {
+                    rawKeys[i] = part.get(i).getBytes(StandardCharsets.UTF_8);
+                }
+                redisConnection.unlink(rawKeys);
+            }
+            return null;
+        });
+        long deleted = 0L;
+        for (Object result : results) {
+            if (result instanceof Number) {
+                deleted += ((Number) result).longValue();
+            }
+        }
+        return deleted;
+    }
+
+    private void checkpoint(PurgeJob job) {
+        try {
+            Map<String, String> checkpoint = new HashMap<>(8);
+            checkpoint.put(PATTERN, job.getPattern());
+            checkpoint.put(MATCHED, String.valueOf(job.getMatched().sum()));
+            checkpoint.put(DELETED, String.valueOf(job.getDeleted().sum()));
+            checkpoint.put(STATUS, job.getStatus().name());
+            job.getCursors().forEach((node, cursorId) -> checkpoint.put(CURSOR + node, String.valueOf(cursorId)));
+            String jobKey = getJobKey(job.getId());
+            this.<String, String>hashOperations().putAll(jobKey, checkpoint);
+            redisTemplate.expire(jobKey, CacheConstant.SECOND_OF_A_DAY, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.error("checkpoint purge job: [{}] error", job.getId(), e);
+        }
+    }
+
+    private <HK, HV> HashOperations<String, HK, HV> hashOperations() {
+        return redisTemplate.opsForHash();
+    }
+
+    private String getJobKey(String jobId) {
+        return CacheConstant.PURGE_JOB + jobId;
+    }
+
+    /**
+     * 任务被停止时中断扫描
+     */
+    private static class PurgeStoppedException extends RuntimeException {
+        private PurgeStoppedException() {
+            super(null, null, false, false);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.evai.component.cache.purge;
+
+import com.evai.component.cache.enums.PurgeStatus;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author crh
+ * @date 2019-12-18
+ * @description 后台删除任务进度
+ */
+@Getter
+public class PurgeJob {
+
+    /**
+     * 已遍历完成的节点游标
+     */
+    public static final long FINISHED = -1L;
+
+    private final String id;
+    /**
+     * 匹配规则
+     */
+    private final String pattern;
+    /**
+     * 已扫描到的匹配key数量
+     */
+    private final LongAdder matched = new LongAdder();
+    /**
+     * 已删除的key数量
+     */
+    private final LongAdder deleted = new LongAdder();
+    /**
+     * 已处理的批次数量
+     */
+    private final LongAdder batches = new LongAdder();
+    /**
+     * 每个节点下一次 SCAN 的游标，遍历完成的节点为 FINISHED，继续执行时从该游标开始
+     */
+    private final Map<String, Long> cursors = new ConcurrentHashMap<>();
+    /**
+     * 本节点仍在遍历的 redis 节点数
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger scanning = new AtomicInteger();
+    private volatile PurgeStatus status = PurgeStatus.RUNNING;
+    private volatile String error;
+    private final long startTime = System.currentTimeMillis();
+    private volatile long endTime;
+
+    PurgeJob(String id, String pattern, long matched, long deleted) {
+        this.id = id;
+        this.pattern = pattern;
+        this.matched.add(matched);
+        this.deleted.add(deleted);
+    }
+
+    void progress(String node, long cursorId, int matchedCount, long deletedCount) {
+        matched.add(matchedCount);
+        deleted.add(deletedCount);
+        batches.increment();
+        cursors.put(node, cursorId == 0L ? FINISHED : cursorId);
+    }
+
+    void startScanning(int nodes) {
+        scanning.set(nodes);
+    }
+
+    /**
+     * 一个节点遍历结束
+     *
+     * @return 是否为最后一个结束的节点
+     */
+    boolean finishScanning() {
+        return scanning.decrementAndGet() == 0;
+    }
+
+    /**
+     * 某个节点遍历失败，其它节点在当前批次处理完后停止
+     *
+     * @param error
+     */
+    void fail(String error) {
+        this.status = PurgeStatus.FAILED;
+        this.error = error;
+    }
+
+    /**
+     * 所有节点遍历结束，没有停止或失败的任务为已完成
+     */
+    void complete() {
+        finish(status == PurgeStatus.RUNNING ? PurgeStatus.DONE : status, error);
+    }
+
+    void finish(PurgeStatus status, String error) {
+        this.status = status;
+        this.error = error;
+        this.endTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 停止任务，当前批次处理完后生效
+     */
+    public void stop() {
+        if (status == PurgeStatus.RUNNING) {
+            status = PurgeStatus.STOPPED;
+        }
+    }
+
+    public boolean isRunning() {
+        return status == PurgeStatus.RUNNING;
+    }
+
+}
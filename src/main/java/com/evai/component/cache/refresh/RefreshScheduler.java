@@ -0,0 +1,212 @@
+package com.evai.component.cache.refresh;
+
+import com.evai.component.cache.CacheConstant;
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.metrics.CacheMetrics;
+import com.evai.component.utils.concurrent.ThreadPoolUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author crh
+ * @date 2019-12-16
+ * @description 缓存提前刷新调度器
+ * 同一个key在本机只会有一个刷新任务排队或执行，重复请求只增加该key的热度，不访问redis
+ * 执行前通过一次 SET NX PX 在集群内去重，令牌不主动释放，过期前其它节点不会重复刷新刚刷新过的key
+ * 任务按热度排队，队列满时直接丢弃新任务，不会占用业务线程查询数据库
+ */
+@Slf4j
+public class RefreshScheduler {
+
+    private final CacheProperties.Refresh properties;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final CacheMetrics cacheMetrics;
+    /**
+     * 排队或执行中的刷新任务
+     */
+    private final ConcurrentHashMap<String, RefreshTask> inflight = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    /**
+     * 提交顺序，热度相同时先提交的先执行
+     */
+    private final AtomicLong sequence = new AtomicLong();
+    /**
+     * 当前节点的刷新令牌
+     */
+    private final String token = UUID.randomUUID().toString();
+    private final ExecutorService executorView = new AbstractExecutorService() {
+        @Override
+        public void execute(Runnable command) {
+            if (executor.getQueue().size() >= properties.getQueueCapacity()) {
+                throw new RejectedExecutionException("refresh queue is full");
+            }
+            executor.execute(new RefreshTask(null, command, sequence.incrementAndGet()));
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executor.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return executor.awaitTermination(timeout, unit);
+        }
+    };
+
+    public RefreshScheduler(CacheProperties cacheProperties, RedisTemplate<String, String> redisTemplate, CacheMetrics cacheMetrics) {
+        this.properties = cacheProperties.getRefresh();
+        this.redisTemplate = redisTemplate;
+        this.cacheMetrics = cacheMetrics;
+        int threads = Math.max(1, properties.getThreads());
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                ThreadPoolUtil.setThreadFactory("redis-refreshExecutor"), (r, e) -> drop((RefreshTask) r));
+        cacheMetrics.setRefreshQueueDepth(() -> executor.getQueue().size());
+    }
+
+    /**
+     * 提交刷新任务，不会阻塞调用线程
+     *
+     * @param key      缓存key
+     * @param runnable 执行业务逻辑并写入缓存
+     */
+    public void submit(String key, Runnable runnable) {
+        cacheMetrics.getRefreshRequested().increment();
+        RefreshTask task = new RefreshTask(key, runnable, sequence.incrementAndGet());
+        RefreshTask current = inflight.putIfAbsent(key, task);
+        if (current != null) {
+            cacheMetrics.getRefreshDeduplicated().increment();
+            current.hit();
+            return;
+        }
+        // 并发提交时队列长度可能略超过容量，不需要精确限制
+        if (executor.getQueue().size() >= properties.getQueueCapacity()) {
+            drop(task);
+            return;
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * 当前排队的刷新任务数
+     *
+     * @return
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * 刷新线程池的 ExecutorService 视图，兼容旧的 cacheExecutor bean
+     * 提交的任务和刷新任务共用线程及队列，不去重也不加集群令牌，队列满时抛出 RejectedExecutionException
+     * 线程池的生命周期由 RefreshScheduler 管理，视图的 shutdown 不会关闭线程池
+     *
+     * @return
+     */
+    public ExecutorService asExecutorService() {
+        return executorView;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void drop(RefreshTask task) {
+        if (task.key == null) {
+            throw new RejectedExecutionException("refresh queue is full");
+        }
+        inflight.remove(task.key, task);
+        cacheMetrics.getRefreshDropped().increment();
+        log.debug("refresh queue is full, drop key: [{}]", task.key);
+    }
+
+    private class RefreshTask implements Runnable, Comparable<RefreshTask> {
+
+        private final String key;
+        private final Runnable runnable;
+        private final long seq;
+        /**
+         * 排队期间收到的刷新请求次数
+         */
+        private final AtomicInteger hits = new AtomicInteger(1);
+        /**
+         * 入队时的热度，在队列中不能修改，否则会破坏堆的顺序
+         */
+        private volatile int priority = 1;
+
+        private RefreshTask(String key, Runnable runnable, long seq) {
+            this.key = key;
+            this.runnable = runnable;
+            this.seq = seq;
+        }
+
+        /**
+         * 热度每翻倍一次重新入队调整顺序，避免每次请求都移除队列元素
+         */
+        private void hit() {
+            int count = hits.incrementAndGet();
+            if (Integer.bitCount(count) == 1 && executor.remove(this)) {
+                priority = count;
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (key == null) {
+                runnable.run();
+                return;
+            }
+            try {
+                Boolean acquired = redisTemplate.opsForValue().setIfAbsent(CacheConstant.READ_LOCK + key, token, properties.getLockMillis(), TimeUnit.MILLISECONDS);
+                if (!Boolean.TRUE.equals(acquired)) {
+                    cacheMetrics.getRefreshSkipped().increment();
+                    return;
+                }
+                long start = System.nanoTime();
+                runnable.run();
+                cacheMetrics.getRefreshNanos().add(System.nanoTime() - start);
+                cacheMetrics.getRefreshCount().increment();
+            } catch (Exception e) {
+                cacheMetrics.getRefreshFailed().increment();
+                log.error("refresh key: [{}] error", key, e);
+            } finally {
+                inflight.remove(key, this);
+            }
+        }
+
+        @Override
+        public int compareTo(RefreshTask o) {
+            int result = Integer.compare(o.priority, priority);
+            return result != 0 ? result : Long.compare(seq, o.seq);
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.evai.component.cache.script;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author crh
+ * @date 2019-12-20
+ * @description lua 脚本注册表，通过 EVALSHA 执行脚本，避免每次都发送脚本内容并由 redis 重新解析
+ * redis 重启或切换主节点后脚本缓存会丢失，收到 NOSCRIPT 错误时重新加载并重试一次
+ */
+@Slf4j
+public class RedisScripts {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    /**
+     * 脚本内容 -> sha1
+     */
+    private final ConcurrentHashMap<String, String> shas = new ConcurrentHashMap<>();
+
+    public RedisScripts(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 执行脚本
+     *
+     * @param script      脚本内容
+     * @param returnType
+     * @param numKeys     key数量
+     * @param keysAndArgs
+     * @param <T>
+     * @return
+     */
+    public <T> T eval(String script, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        return redisTemplate.execute((RedisCallback<T>) redisConnection -> eval(redisConnection, script, returnType, numKeys, keysAndArgs));
+    }
+
+    /**
+     * 在指定连接上执行脚本
+     *
+     * @param redisConnection
+     * @param script
+     * @param returnType
+     * @param numKeys
+     * @param keysAndArgs
+     * @param <T>
+     * @return
+     */
+    public <T> T eval(RedisConnection redisConnection, String script, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        try {
+            return redisConnection.evalSha(sha(script), returnType, numKeys, keysAndArgs);
+        } catch (Exception e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            log.info("script not found, reload script sha: [{}]", sha(script));
+            // EVAL 执行的同时会缓存脚本，之后可以继续使用 EVALSHA
+            return redisConnection.eval(script.getBytes(StandardCharsets.UTF_8), returnType, numKeys, keysAndArgs);
+        }
+    }
+
+    /**
+     * 在管道中执行脚本，管道中的命令需要通过 evalSha 添加
+     * 执行结果中有 NOSCRIPT 错误时加载所有已注册的脚本后重试一次
+     *
+     * @param callback
+     * @return
+     */
+    public List<Object> executePipelined(RedisCallback<?> callback) {
+        try {
+            return redisTemplate.executePipelined(callback);
+        } catch (Exception e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            loadAll();
+            return redisTemplate.executePipelined(callback);
+        }
+    }
+
+    /**
+     * 管道中添加 EVALSHA 命令
+     *
+     * @param redisConnection
+     * @param script
+     * @param returnType
+     * @param numKeys
+     * @param keysAndArgs
+     */
+    public void evalSha(RedisConnection redisConnection, String script, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        redisConnection.evalSha(sha(script), returnType, numKeys, keysAndArgs);
+    }
+
+    private String sha(String script) {
+        return shas.computeIfAbsent(script, DigestUtils::sha1DigestAsHex);
+    }
+
+    private void loadAll() {
+        redisTemplate.execute((RedisCallback<Void>) redisConnection -> {
+            for (String script : shas.keySet()) {
+                redisConnection.scriptLoad(script.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        if (e instanceof RedisPipelineException) {
+            for (Throwable failure : ((RedisPipelineException) e).getFailures()) {
+                if (isNoScript(failure)) {
+                    return true;
+                }
+            }
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+            if (cause == cause.getCause()) {
+                break;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,252 @@
+package com.evai.component.cache.ttl;
+
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.utils.RandomUtil;
+import com.evai.component.utils.concurrent.ThreadPoolUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * @author crh
+ * @date 2019-12-23
+ * @description 自适应缓存过期时间
+ * 按 keyName 统计访问频率、命中率、业务逻辑耗时及更新频率，在注解声明的过期时间范围内调整过期时间：
+ * 访问频繁、计算耗时且很少更新的缓存接近上限，访问少或频繁更新的缓存接近下限
+ * 调用线程只累加计数，统计值由后台线程按窗口平滑计算
+ */
+@Slf4j
+public class AdaptiveTtl {
+
+    private final CacheProperties.Ttl properties;
+    private final ConcurrentHashMap<String, KeyNameStats> stats = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService statsExecutor;
+
+    public AdaptiveTtl(CacheProperties cacheProperties) {
+        this.properties = cacheProperties.getTtl();
+        if (properties.isEnabled()) {
+            long window = Math.max(1L, properties.getWindowSeconds());
+            this.statsExecutor = ThreadPoolUtil.newScheduledThreadPool(1, "redis-adaptiveTtlExecutor");
+            this.statsExecutor.scheduleWithFixedDelay(this::roll, window, window, TimeUnit.SECONDS);
+        } else {
+            this.statsExecutor = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 计算过期时间
+     *
+     * @param keyName  缓存名称
+     * @param expired  注解声明的过期时间范围
+     * @param fallback 未开启或统计数据不足时使用的过期时间
+     * @return
+     */
+    public int resolve(String keyName, int[] expired, int fallback) {
+        if (!isEnabled() || expired.length < 2 || expired[1] <= expired[0]) {
+            return fallback;
+        }
+        KeyNameStats current = stats.get(keyName);
+        if (current == null || current.samples < properties.getMinSamples()) {
+            return fallback;
+        }
+        int min = expired[0];
+        int max = expired[1];
+        int target = min + (int) Math.round((max - min) * current.factor);
+        // 保留随机范围，防止同一时间写入的缓存同时过期
+        int spread = (int) Math.ceil((max - min) * properties.getJitter() / 2);
+        return RandomUtil.getRandomInt(Math.max(min, target - spread), Math.min(max, target + spread));
+    }
+
+    /**
+     * 记录读取次数
+     *
+     * @param keyName
+     * @param count
+     */
+    public void recordAccess(String keyName, int count) {
+        KeyNameStats current = getStats(keyName);
+        if (current != null) {
+            current.accesses.add(count);
+        }
+    }
+
+    /**
+     * 记录更新或删除次数
+     *
+     * @param keyName
+     * @param count
+     */
+    public void recordWrite(String keyName, int count) {
+        KeyNameStats current = getStats(keyName);
+        if (current != null) {
+            current.writes.add(count);
+        }
+    }
+
+    /**
+     * 执行业务逻辑并记录耗时，缓存未命中及提前刷新都会执行
+     *
+     * @param keyName
+     * @param count    本次加载的数据条数
+     * @param supplier
+     * @param <T>
+     * @return
+     */
+    public <T> T load(String keyName, int count, Supplier<T> supplier) {
+        KeyNameStats current = getStats(keyName);
+        if (current == null) {
+            return supplier.get();
+        }
+        long start = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            current.loads.add(count);
+            current.loadNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 包装业务逻辑，执行时记录耗时
+     *
+     * @param keyName
+     * @param supplier
+     * @param <T>
+     * @return
+     */
+    public <T> Supplier<T> timed(String keyName, Supplier<T> supplier) {
+        return isEnabled() ? () -> load(keyName, 1, supplier) : supplier;
+    }
+
+    /**
+     * 各 keyName 当前的统计值
+     *
+     * @return
+     */
+    public Map<String, AdaptiveTtlStats> snapshot() {
+        Map<String, AdaptiveTtlStats> result = new TreeMap<>();
+        stats.forEach((keyName, current) -> {
+            AdaptiveTtlStats snapshot = new AdaptiveTtlStats();
+            snapshot.setKeyName(keyName);
+            snapshot.setSamples(current.samples);
+            snapshot.setAccessPerSecond(current.accessRate);
+            snapshot.setHitRatio(current.hitRatio);
+            snapshot.setLoadMillis(current.loadMillis);
+            snapshot.setWritePerSecond(current.writeRate);
+            snapshot.setFactor(current.factor);
+            result.put(keyName, snapshot);
+        });
+        return result;
+    }
+
+    public void shutdown() {
+        if (statsExecutor != null) {
+            statsExecutor.shutdownNow();
+        }
+    }
+
+    private KeyNameStats getStats(String keyName) {
+        if (!isEnabled() || keyName == null) {
+            return null;
+        }
+        KeyNameStats current = stats.get(keyName);
+        if (current != null) {
+            return current;
+        }
+        // keyName 由注解生成，数量有限，超过上限说明 keyName 中包含了参数值
+        if (stats.size() >= properties.getMaxKeyNames()) {
+            return null;
+        }
+        return stats.computeIfAbsent(keyName, k -> new KeyNameStats());
+    }
+
+    /**
+     * 按窗口平滑统计值并重新计算过期时间系数
+     */
+    private void roll() {
+        try {
+            double seconds = Math.max(1L, properties.getWindowSeconds());
+            double alpha = Math.min(1.0D, Math.max(0.0D, properties.getSmoothing()));
+            for (KeyNameStats current : stats.values()) {
+                current.roll(seconds, alpha);
+            }
+        } catch (Exception e) {
+            log.warn("统计自适应过期时间失败", e);
+        }
+    }
+
+    private class KeyNameStats {
+        private final LongAdder accesses = new LongAdder();
+        private final LongAdder loads = new LongAdder();
+        private final LongAdder loadNanos = new LongAdder();
+        private final LongAdder writes = new LongAdder();
+        /**
+         * 以下字段只由统计线程修改
+         */
+        private volatile long samples;
+        private volatile double accessRate;
+        private volatile double hitRatio = 1.0D;
+        private volatile double loadMillis;
+        private volatile double writeRate;
+        private volatile double factor;
+        private boolean initialized;
+
+        private void roll(double seconds, double alpha) {
+            long accessCount = accesses.sumThenReset();
+            long loadCount = loads.sumThenReset();
+            long nanos = loadNanos.sumThenReset();
+            long writeCount = writes.sumThenReset();
+            double weight = initialized ? alpha : 1.0D;
+            initialized = true;
+            accessRate = smooth(accessRate, accessCount / seconds, weight);
+            writeRate = smooth(writeRate, writeCount / seconds, weight);
+            if (accessCount > 0) {
+                // 提前刷新也会执行业务逻辑，命中率偏低但不影响比较
+                hitRatio = smooth(hitRatio, Math.max(0.0D, 1.0D - (double) loadCount / accessCount), weight);
+            }
+            if (loadCount > 0) {
+                loadMillis = smooth(loadMillis, (double) nanos / loadCount / TimeUnit.MILLISECONDS.toNanos(1), weight);
+            }
+            samples += accessCount;
+            factor = computeFactor();
+        }
+
+        /**
+         * 过期时间系数，0 为下限，1 为上限
+         * 热度和计算耗时各占一半，再按读写比例打折；命中率低且访问频繁时热度高，过期时间随之延长
+         *
+         * @return
+         */
+        private double computeFactor() {
+            double hot = ratio(accessRate * (2.0D - hitRatio), properties.getHotAccessPerSecond());
+            double cost = ratio(loadMillis, properties.getExpensiveLoadMillis());
+            double stable = accessRate + writeRate <= 0 ? 0.0D : accessRate / (accessRate + writeRate * properties.getWritePenalty());
+            return Math.min(1.0D, Math.max(0.0D, stable * (hot + cost) / 2));
+        }
+    }
+
+    private static double smooth(double current, double value, double weight) {
+        return current + (value - current) * weight;
+    }
+
+    /**
+     * value 等于 pivot 时返回 0.5，越大越接近 1
+     */
+    private static double ratio(double value, double pivot) {
+        if (value <= 0) {
+            return 0.0D;
+        }
+        return pivot <= 0 ? 1.0D : value / (value + pivot);
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.evai.component.cache.ttl;
+
+import lombok.Data;
+
+/**
+ * @author crh
+ * @date 2019-12-23
+ * @description 自适应过期时间的统计值
+ */
+@Data
+public class AdaptiveTtlStats {
+    private String keyName;
+    /**
+     * 累计读取次数，达到 minSamples 后才调整过期时间
+     */
+    private long samples;
+    private double accessPerSecond;
+    /**
+     * 未执行业务逻辑的比例
+     */
+    private double hitRatio;
+    /**
+     * 业务逻辑平均耗时，毫秒
+     */
+    private double loadMillis;
+    private double writePerSecond;
+    /**
+     * 过期时间系数，0 为下限，1 为上限
+     */
+    private double factor;
+}
@@ -13,22 +13,37 @@ import com.evai.component.cache.exception.IllegalFieldException;
 import com.evai.component.cache.exception.IllegalGenericTypeException;
 import com.evai.component.cache.exception.IllegalKeyIdException;
 import com.evai.component.utils.BeanUtil;
-import com.evai.component.utils.CommonUtil;
+import com.evai.component.cache.key.KeyHasher;
+import com.evai.component.cache.key.Md5KeyHasher;
+import com.evai.component.cache.namespace.NamespaceGeneration;
+import com.evai.component.cache.plan.CacheInvocationPlan;
+import com.evai.component.cache.plan.FieldAccessor;
+import com.evai.component.cache.plan.KeySegment;
+import com.evai.component.mybatis.utils.ReflectUtil;
+import com.evai.component.utils.JacksonUtil;
 import com.evai.component.utils.RandomUtil;
+import com.fasterxml.jackson.databind.JavaType;
 import com.google.common.collect.Maps;
+import com.google.common.primitives.Primitives;
 import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.ResolvableType;
 import org.springframework.stereotype.Component;
-import org.springframework.util.ReflectionUtils;
 
-import java.lang.reflect.Field;
+import java.io.Serializable;
+import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Evai
@@ -36,11 +51,39 @@ import java.util.Map;
  * description
  */
 @Slf4j
-@AllArgsConstructor
 public class CacheKeyUtil {
 
     private final CacheProperties cacheProperties;
 
+    /**
+     * keyId摘要算法
+     */
+    private final KeyHasher keyHasher;
+
+    /**
+     * 迁移模式下旧格式key的摘要算法，未开启迁移模式时为null
+     */
+    private final KeyHasher legacyHasher;
+
+    /**
+     * 命名空间代数
+     */
+    private final NamespaceGeneration namespaceGeneration;
+
+    /**
+     * 方法执行计划缓存
+     */
+    private final Map<PlanKey, CacheInvocationPlan> cacheAblePlans = new ConcurrentHashMap<>();
+    private final Map<PlanKey, CacheInvocationPlan> entityPlans = new ConcurrentHashMap<>();
+
+    public CacheKeyUtil(CacheProperties cacheProperties, KeyHasher keyHasher, NamespaceGeneration namespaceGeneration) {
+        this.cacheProperties = cacheProperties;
+        this.keyHasher = keyHasher;
+        this.namespaceGeneration = namespaceGeneration;
+        boolean legacyRead = cacheProperties.getKey().isLegacyRead() && !(keyHasher instanceof Md5KeyHasher);
+        this.legacyHasher = legacyRead ? new Md5KeyHasher() : null;
+    }
+
     /**
      * 生成keyName
      *
@@ -64,7 +107,7 @@ public class CacheKeyUtil {
      */
     public String generateKeyId(Object keyObj) {
         String keyId = BeanUtil.beanToString(keyObj);
-        return CommonUtil.getStringMD5(keyId);
+        return keyHasher.hash(keyId);
     }
 
     /**
@@ -78,11 +121,29 @@ public class CacheKeyUtil {
      * @return
      */
     public String assembleKey(String prefix, String suffix, Class keyNameClass, KeyFormat keyFormat, Object keyObj) {
-        String keyName = generateKeyName(prefix, suffix, keyNameClass, keyFormat);
+        String keyName = namespaceGeneration.apply(generateKeyName(prefix, suffix, keyNameClass, keyFormat));
         String keyId = generateKeyId(keyObj);
         return keyName + keyId;
     }
 
+    /**
+     * 组合旧格式（MD5）缓存key
+     *
+     * @param prefix
+     * @param suffix
+     * @param keyNameClass
+     * @param keyFormat
+     * @param keyObj
+     * @return 未开启迁移模式时返回null
+     */
+    public String assembleLegacyKey(String prefix, String suffix, Class keyNameClass, KeyFormat keyFormat, Object keyObj) {
+        if (legacyHasher == null) {
+            return null;
+        }
+        String keyName = namespaceGeneration.apply(generateKeyName(prefix, suffix, keyNameClass, keyFormat));
+        return keyName + legacyHasher.hash(BeanUtil.beanToString(keyObj));
+    }
+
     /**
      * 设置缓存名称前缀
      *
@@ -186,6 +247,16 @@ public class CacheKeyUtil {
         return getDefaultCacheKeyName(cacheKey, keyNamePrefix, keyNameSuffix);
     }
 
+    /**
+     * 实体类的默认缓存名称，和 CacheAbleService 中未指定 keyName 的方法相同
+     *
+     * @param clazz
+     * @return
+     */
+    public String getEntityKeyName(Class<?> clazz) {
+        return getDefaultCacheKeyName(BeanUtil.formatKey(clazz, KeyFormat.UNDERLINE), null, null);
+    }
+
     private String getDefaultCacheKeyName(String keyName, String keyPrefix, String keySuffix) {
         keyPrefix = StringUtils.isNotBlank(keyPrefix) ? keyPrefix : cacheProperties.getKeyNamePrefix();
         keySuffix = StringUtils.isNotBlank(keySuffix) ? keySuffix : cacheProperties.getKeyNameSuffix();
@@ -215,60 +286,218 @@ public class CacheKeyUtil {
     }
 
     /**
-     * 组合为最终的缓存key
+     * 获取 CacheAble 方法执行计划，每个方法（及目标类）只编译一次
+     *
+     * @param pjp
+     * @param methodSignature
+     * @param cacheAble
+     * @return
+     */
+    public CacheInvocationPlan getPlan(ProceedingJoinPoint pjp, MethodSignature methodSignature, CacheAble cacheAble) {
+        PlanKey planKey = new PlanKey(methodSignature.getMethod(), pjp.getTarget().getClass());
+        CacheInvocationPlan plan = cacheAblePlans.get(planKey);
+        if (plan == null) {
+            plan = cacheAblePlans.computeIfAbsent(planKey, k -> new CacheInvocationPlan(
+                    this.getCacheKeyName(cacheAble, pjp),
+                    parseKeyId(cacheAble.keyId(), methodSignature),
+                    getReturnJavaType(methodSignature)));
+        }
+        return plan;
+    }
+
+    /**
+     * 获取 CacheAbleEntity 方法执行计划，每个方法（及目标类）只编译一次
      *
      * @param pjp
+     * @param methodSignature
      * @param cacheAbleEntity
+     * @return
+     */
+    public CacheInvocationPlan getPlan(ProceedingJoinPoint pjp, MethodSignature methodSignature, CacheAbleEntity cacheAbleEntity) {
+        PlanKey planKey = new PlanKey(methodSignature.getMethod(), pjp.getTarget().getClass());
+        CacheInvocationPlan plan = entityPlans.get(planKey);
+        if (plan == null) {
+            plan = entityPlans.computeIfAbsent(planKey, k -> new CacheInvocationPlan(
+                    this.getCacheKeyName(cacheAbleEntity, pjp),
+                    parseKeyId(cacheAbleEntity.keyId(), methodSignature),
+                    null));
+        }
+        return plan;
+    }
+
+    /**
+     * 解析 keyId 表达式，#user.id + #id + list
+     *
+     * @param keyIdExp
      * @param methodSignature
      * @return
-     * @throws IllegalAccessException
      */
-    public CacheKeyDTO assembleFinalCacheKey(ProceedingJoinPoint pjp, CacheAbleEntity cacheAbleEntity, MethodSignature methodSignature) throws IllegalAccessException {
+    private List<KeySegment> parseKeyId(String keyIdExp, MethodSignature methodSignature) {
         // 去除所有空格
-        String keyId = cacheAbleEntity.keyId().replaceAll(CacheConstant.REG_SPACE, "");
+        String keyId = keyIdExp.replaceAll(CacheConstant.REG_SPACE, "");
         if (StringUtils.isBlank(keyId)) {
             throw new IllegalAnnotationException("缓存id不能为空");
         }
-        // 完整的缓存keyName
-        String cacheKey = this.getCacheKeyName(cacheAbleEntity, pjp);
+        String[] parameterNames = methodSignature.getParameterNames();
+        List<KeySegment> segments = new ArrayList<>();
+        for (String target : keyId.split(CacheConstant.REG_PLUS)) {
+            if (StringUtils.isBlank(target)) {
+                continue;
+            }
+            if (target.charAt(0) != CacheConstant.EL) {
+                // 不是表达式，直接赋值
+                segments.add(KeySegment.literal(target));
+                continue;
+            }
+            // 参数名称，去掉#
+            target = target.substring(1);
+            // user.id
+            String[] targetExp = target.split(CacheConstant.REG_DOT);
+            String paramName = targetExp.length >= CacheConstant.KEY_LEN ? targetExp[0] : target;
+            int index = ArrayUtils.indexOf(parameterNames, paramName);
+            if (index < 0) {
+                throw new IllegalArgumentException("未找到[" + methodSignature.getName() + "]方法参数名称，当前keyId表达式为: #" + target);
+            }
+            segments.add(targetExp.length >= CacheConstant.KEY_LEN ? KeySegment.field(paramName, index, targetExp[1]) : KeySegment.param(paramName, index));
+        }
+        if (segments.isEmpty()) {
+            throw new IllegalAnnotationException("缓存id不能为空");
+        }
+        return Collections.unmodifiableList(segments);
+    }
 
-        CacheKeyDTO cacheKeyDTO = new CacheKeyDTO();
-        // 最终完整的缓存keyId
-        keyId = assembleCacheKeyId(cacheKeyDTO, cacheKey, pjp, keyId, methodSignature);
+    /**
+     * 方法返回值类型，Map 及 Collection 的子类型（如 LinkedHashMap、HashMap）也解析泛型参数
+     * 泛型参数无法解析时按 Object 处理，已在父类中指定泛型的子类型由 Jackson 解析
+     *
+     * @param methodSignature
+     * @return
+     */
+    private JavaType getReturnJavaType(MethodSignature methodSignature) {
+        Class<?> returnType = methodSignature.getReturnType();
+        int typeParameters = returnType.getTypeParameters().length;
+        if (Map.class.isAssignableFrom(returnType) && typeParameters == 2) {
+            ResolvableType mapType = ResolvableType.forMethodReturnType(methodSignature.getMethod()).asMap();
+            return JacksonUtil.getJavaType(returnType, mapType.resolveGeneric(0) == null ? Object.class : mapType.resolveGeneric(0),
+                    mapType.resolveGeneric(1) == null ? Object.class : mapType.resolveGeneric(1));
+        }
+        if (Collection.class.isAssignableFrom(returnType) && typeParameters == 1) {
+            ResolvableType collectionType = ResolvableType.forMethodReturnType(methodSignature.getMethod()).asCollection();
+            return JacksonUtil.getJavaType(returnType, collectionType.resolveGeneric(0) == null ? Object.class : collectionType.resolveGeneric(0));
+        }
+        return JacksonUtil.getJavaType(returnType);
+    }
 
+    /**
+     * 组合为最终的缓存key，cacheName + hash(keyId)
+     *
+     * @param plan
+     * @param args
+     * @return
+     */
+    public String assembleFinalCacheKey(CacheInvocationPlan plan, Object[] args) {
         // 最终完整的key，cacheName + cacheKeyId
-        String finalKey = cacheKey + keyId;
-        cacheKeyDTO.setIndexKey(finalKey);
-        log.debug("finalKey:【{}】", finalKey);
-        return cacheKeyDTO;
+        String finalKey = namespaceGeneration.apply(plan.getKeyName()) + keyHasher.hash(assembleKeyIdValue(plan, args));
+        log.debug("assembleFinalCacheKey finalKey: [{}]", finalKey);
+        return finalKey;
     }
 
     /**
-     * 组合缓存id
+     * 组合旧格式的缓存key，cacheName + MD5(keyId)
+     *
+     * @param plan
+     * @param args
+     * @return 未开启迁移模式时返回null
+     */
+    public String assembleLegacyCacheKey(CacheInvocationPlan plan, Object[] args) {
+        if (legacyHasher == null) {
+            return null;
+        }
+        return namespaceGeneration.apply(plan.getKeyName()) + legacyHasher.hash(assembleKeyIdValue(plan, args));
+    }
+
+    /**
+     * 组合集合参数中单个元素的缓存key，等同于把集合参数替换为该元素后的缓存key
+     *
+     * @param plan
+     * @param args
+     * @param index   集合参数下标
+     * @param element 集合元素
+     * @return
+     */
+    public String assembleElementCacheKey(CacheInvocationPlan plan, Object[] args, int index, Object element) {
+        Object[] elementArgs = args.clone();
+        elementArgs[index] = element;
+        return namespaceGeneration.apply(plan.getKeyName()) + keyHasher.hash(assembleKeyIdValue(plan, elementArgs));
+    }
+
+    private StringBuilder assembleKeyIdValue(CacheInvocationPlan plan, Object[] args) {
+        StringBuilder keyIdValue = new StringBuilder();
+        // #user.id + #id
+        for (KeySegment segment : plan.getSegments()) {
+            if (segment.isLiteral()) {
+                keyIdValue.append(segment.getText());
+            } else if (segment.getFieldName() != null) {
+                keyIdValue.append(BeanUtil.beanToString(getFieldValue(args[segment.getParamIndex()], segment)));
+            } else {
+                keyIdValue.append(BeanUtil.beanToString(args[segment.getParamIndex()]));
+            }
+            keyIdValue.append(CacheConstant.AND);
+        }
+        // 去除末尾连接符
+        keyIdValue.setLength(keyIdValue.length() - 1);
+        return keyIdValue;
+    }
+
+    /**
+     * 组合为最终的缓存key
      *
-     * @param cacheKeyDTO
-     * @param cacheKey
      * @param pjp
-     * @param keyId
+     * @param cacheAbleEntity
      * @param methodSignature
-     * @return String
-     * @throws IllegalAccessException
+     * @return
      */
-    public String assembleCacheKeyId(CacheKeyDTO cacheKeyDTO, String cacheKey, ProceedingJoinPoint pjp, String keyId, MethodSignature methodSignature) throws IllegalAccessException {
-        String[] parameterNames = methodSignature.getParameterNames();
+    public CacheKeyDTO assembleFinalCacheKey(ProceedingJoinPoint pjp, CacheAbleEntity cacheAbleEntity, MethodSignature methodSignature) {
+        return assembleFinalEntityKey(getPlan(pjp, methodSignature, cacheAbleEntity), pjp.getArgs());
+    }
 
-        // 表达式解析
-        Object[] args = pjp.getArgs();
-        // 分割keyId
-        String[] keyIdExp = keyId.split(CacheConstant.REG_PLUS);
-
-        StringBuilder keyIdValue = new StringBuilder(StringUtils.EMPTY);
-        Map<String, Object> paramMap = Maps.newHashMapWithExpectedSize(keyIdExp.length);
-        for (String target : keyIdExp) {
-            if (StringUtils.isNotBlank(target)) {
-                analyzeKeyIdExp(cacheKeyDTO, cacheKey, methodSignature, target, parameterNames, args, keyIdValue, paramMap);
-                keyIdValue.append(CacheConstant.AND);
+    /**
+     * 组合为最终的实体类缓存key
+     *
+     * @param plan
+     * @param args
+     * @return
+     */
+    public CacheKeyDTO assembleFinalEntityKey(CacheInvocationPlan plan, Object[] args) {
+        String cacheKey = namespaceGeneration.apply(plan.getKeyName());
+        CacheKeyDTO cacheKeyDTO = new CacheKeyDTO();
+        cacheKeyDTO.setKeyName(plan.getKeyName());
+        List<KeySegment> segments = plan.getSegments();
+        StringBuilder keyIdValue = new StringBuilder();
+        Map<String, Object> paramMap = Maps.newHashMapWithExpectedSize(segments.size());
+        for (KeySegment segment : segments) {
+            if (segment.isLiteral()) {
+                // 不是表达式，直接赋值
+                keyIdValue.append(segment.getText());
+            } else if (segment.getFieldName() != null) {
+                // 获取对象的属性, user.id
+                String targetField = segment.getFieldName();
+                Object value = getFieldValue(args[segment.getParamIndex()], segment);
+                appendParam(cacheKeyDTO, cacheKey, keyIdValue, paramMap, targetField, value);
+            } else {
+                // id 或 user
+                Object obj = args[segment.getParamIndex()];
+                if (obj == null || String.class.equals(obj.getClass()) || Primitives.isWrapperType(obj.getClass())) {
+                    appendParam(cacheKeyDTO, cacheKey, keyIdValue, paramMap, segment.getText(), obj);
+                } else {
+                    // 否则取该对象所有属性值作为keyId
+                    for (FieldAccessor accessor : FieldAccessor.getAll(obj.getClass())) {
+                        appendParam(cacheKeyDTO, cacheKey, keyIdValue, paramMap, accessor.getName(), accessor.get(obj));
+                        keyIdValue.append(CacheConstant.AND);
+                    }
+                }
             }
+            keyIdValue.append(CacheConstant.AND);
         }
         if (StringUtils.isBlank(keyIdValue)) {
             throw new IllegalKeyIdException("keyId值不能为空");
@@ -276,110 +505,96 @@ public class CacheKeyUtil {
         cacheKeyDTO.setParamMap(paramMap);
         // 去除末尾连接符
         if (keyIdValue.charAt(keyIdValue.length() - 1) == CacheConstant.AND) {
-            keyIdValue = new StringBuilder(keyIdValue.substring(0, keyIdValue.length() - 1));
+            keyIdValue.setLength(keyIdValue.length() - 1);
         }
-        // 转为MD5
-        if (keyIdValue.length() > CacheConstant.MD5_LEN) {
-            keyIdValue.replace(0, keyIdValue.length(), CommonUtil.getStringMD5(keyIdValue.toString()));
+        setIndexKey(cacheKeyDTO, cacheKey, keyIdValue);
+        return cacheKeyDTO;
+    }
+
+    /**
+     * 组合主键查询的缓存key，和 keyId = "#id" 生成的key相同
+     *
+     * @param keyName 缓存名称，不含命名空间代数
+     * @param id      主键值
+     * @return
+     */
+    public CacheKeyDTO assembleIdKey(String keyName, Serializable id) {
+        CacheKeyDTO cacheKeyDTO = new CacheKeyDTO();
+        cacheKeyDTO.setKeyName(keyName);
+        keyName = namespaceGeneration.apply(keyName);
+        Map<String, Object> paramMap = Maps.newHashMapWithExpectedSize(1);
+        StringBuilder keyIdValue = new StringBuilder();
+        appendParam(cacheKeyDTO, keyName, keyIdValue, paramMap, CacheConstant.PK, id);
+        cacheKeyDTO.setParamMap(paramMap);
+        setIndexKey(cacheKeyDTO, keyName, keyIdValue);
+        return cacheKeyDTO;
+    }
+
+    /**
+     * 实体类的主键key，keyId 不含主键时按主键值组合，和主键查询的主键key相同（包含当前命名空间代数）
+     *
+     * @param cacheKeyDTO
+     * @param entity      查询结果
+     * @return 取不到主键值时返回null
+     */
+    public String assemblePrimaryKey(CacheKeyDTO cacheKeyDTO, Object entity) {
+        if (cacheKeyDTO.getPrimaryKey() != null) {
+            return cacheKeyDTO.getPrimaryKey();
         }
-        return keyIdValue.toString();
+        Serializable id = ReflectUtil.getPrimaryValue(entity);
+        if (id == null) {
+            return null;
+        }
+        return namespaceGeneration.apply(cacheKeyDTO.getKeyName()) + CacheConstant.PK + CacheConstant.COLON + BeanUtil.beanToString(id);
     }
 
     /**
-     * 解析 keyId 表达式
+     * 设置索引key，keyId超过摘要长度时转为摘要
      *
      * @param cacheKeyDTO
      * @param cacheKey
-     * @param methodSignature
-     * @param target
-     * @param parameterNames
-     * @param args
      * @param keyIdValue
-     * @param paramMap
-     * @throws IllegalAccessException
      */
-    public void analyzeKeyIdExp(CacheKeyDTO cacheKeyDTO, String cacheKey, MethodSignature methodSignature, String target, String[] parameterNames, Object[] args, StringBuilder keyIdValue, Map<String, Object> paramMap) throws IllegalAccessException {
-        // #user.id + id
-        if (target.charAt(0) != CacheConstant.EL) {
-            // 不是表达式，直接赋值
-            keyIdValue.append(target);
-            return;
-        }
-        // 参数名称，去掉#
-        target = target.substring(1);
-        // user.id
-        String[] targetExp = target.split(CacheConstant.REG_DOT);
-        if (targetExp.length >= CacheConstant.KEY_LEN) {
-            String targetObj = targetExp[0];
-            String targetField = targetExp[1];
-            // 获取方法参数名称, user
-            int index = ArrayUtils.indexOf(parameterNames, targetObj);
-            if (index < 0) {
-                throw new IllegalArgumentException("未找到[" + methodSignature.getName() + "]方法参数名称，当前keyId表达式为: #" + target);
+    private void setIndexKey(CacheKeyDTO cacheKeyDTO, String cacheKey, StringBuilder keyIdValue) {
+        String keyId;
+        if (keyIdValue.length() > CacheConstant.MD5_LEN) {
+            keyId = keyHasher.hash(keyIdValue);
+            if (legacyHasher != null) {
+                cacheKeyDTO.setLegacyIndexKey(cacheKey + legacyHasher.hash(keyIdValue));
             }
-            // 获取对象的属性, id
-            Object object = args[index];
-            Object value = getFieldValue(object, targetObj, targetField);
-            // 设置参数
-            paramMap.put(targetField, value);
-
-            String valueStr = BeanUtil.beanToString(value);
-
-            keyIdValue.append(targetField)
-                    .append(CacheConstant.ASSIGN)
-                    .append(valueStr);
-
-            setPrimaryKey(cacheKeyDTO, cacheKey, targetField, valueStr);
         } else {
-            // id 或 user
-            int index = ArrayUtils.indexOf(parameterNames, target);
-            if (index < 0) {
-                throw new IllegalArgumentException("未找到[" + methodSignature.getName() + "]方法参数名称，当前keyId表达式为: #" + target);
-            }
-            // 直接得到方法参数对象
-            Object obj = args[index];
-            if (obj == null || String.class.equals(obj.getClass()) || BeanUtil.isPrimitive(obj)) {
-                // 设置参数
-                paramMap.put(target, obj);
-                // 判断是否是基本数据类型
-                String valueStr = BeanUtil.beanToString(obj);
-                keyIdValue.append(target)
-                        .append(CacheConstant.ASSIGN)
-                        .append(valueStr);
-                setPrimaryKey(cacheKeyDTO, cacheKey, target, valueStr);
-            } else {
-                // 否则取该对象所有属性值作为keyId
-                List<Field> fieldList = BeanUtil.getAllFields(obj.getClass());
-                for (Field field : fieldList) {
-                    // 得到属性值
-                    field.setAccessible(true);
-                    Object value = field.get(obj);
-                    // 设置参数
-                    paramMap.put(field.getName(), value);
-                    String valueStr = BeanUtil.beanToString(value);
-                    keyIdValue.append(field.getName())
-                            .append(CacheConstant.ASSIGN)
-                            .append(valueStr)
-                            .append(CacheConstant.AND);
-                    setPrimaryKey(cacheKeyDTO, cacheKey, field.getName(), valueStr);
-                }
-                // 去除末尾连接符
-                if (keyIdValue.charAt(keyIdValue.length() - 1) == CacheConstant.AND) {
-                    keyIdValue.substring(0, keyIdValue.length());
-                }
-            }
-
+            keyId = keyIdValue.toString();
         }
+        // 最终完整的key，cacheName + cacheKeyId
+        String finalKey = cacheKey + keyId;
+        cacheKeyDTO.setIndexKey(finalKey);
+        log.debug("finalKey:【{}】", finalKey);
     }
 
-    public Object getFieldValue(Object object, String targetObj, String targetField) throws IllegalAccessException {
-        Field field = ReflectionUtils.findField(object.getClass(), targetField);
-        if (field == null) {
+    /**
+     * 添加参数键值对，name=value
+     */
+    private void appendParam(CacheKeyDTO cacheKeyDTO, String cacheKey, StringBuilder keyIdValue, Map<String, Object> paramMap, String name, Object value) {
+        // 设置参数
+        paramMap.put(name, value);
+        String valueStr = BeanUtil.beanToString(value);
+        keyIdValue.append(name)
+                .append(CacheConstant.ASSIGN)
+                .append(valueStr);
+        setPrimaryKey(cacheKeyDTO, cacheKey, name, valueStr);
+    }
+
+    private Object getFieldValue(Object object, KeySegment segment) {
+        return getFieldValue(object, segment.getText(), segment.getFieldName());
+    }
+
+    public Object getFieldValue(Object object, String targetObj, String targetField) {
+        FieldAccessor accessor = FieldAccessor.get(object.getClass(), targetField);
+        if (accessor == null) {
             throw new IllegalFieldException("未找到[" + targetObj + "]的[" + targetField + "]属性");
         }
         // 得到属性值
-        field.setAccessible(true);
-        return field.get(object);
+        return accessor.get(object);
     }
 
     /**
@@ -408,4 +623,14 @@ public class CacheKeyUtil {
         }
     }
 
+    /**
+     * 执行计划缓存key，同一个方法（如 CacheAbleService 的默认方法）在不同目标类中的缓存名称不同
+     */
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class PlanKey {
+        private final Method method;
+        private final Class<?> targetClass;
+    }
+
 }
@@ -0,0 +1,38 @@
+package com.evai.component.cache.version;
+
+import com.evai.component.cache.plan.FieldAccessor;
+
+/**
+ * @author crh
+ * @date 2019-12-22
+ * @description 读取实体类的版本号，只支持数字类型的版本字段（如 MyBatis-Plus @Version 乐观锁字段）
+ * 时间字段依赖应用服务器和数据库的时钟，存在时钟偏差时无法比较新旧，不作为版本号
+ */
+public final class EntityVersion {
+
+    private EntityVersion() {
+    }
+
+    /**
+     * 实体类版本号
+     *
+     * @param entity
+     * @param fieldName 版本字段名称，如 version
+     * @return 字段不存在、不是数字或值为空返回null
+     */
+    public static Long of(Object entity, String fieldName) {
+        if (entity == null || entity instanceof Number || entity instanceof CharSequence) {
+            return null;
+        }
+        FieldAccessor accessor = FieldAccessor.get(entity.getClass(), fieldName);
+        if (accessor == null) {
+            return null;
+        }
+        Object value = accessor.get(entity);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return null;
+    }
+
+}
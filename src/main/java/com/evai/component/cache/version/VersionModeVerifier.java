@@ -0,0 +1,121 @@
+package com.evai.component.cache.version;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.annotation.Version;
+import com.evai.component.cache.CacheAbleService;
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.annotation.CacheAbleEntity;
+import com.evai.component.cache.enums.ConsistencyMode;
+import com.evai.component.cache.exception.IllegalFieldException;
+import com.evai.component.mybatis.BaseEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * @author crh
+ * @date 2019-12-22
+ * @description 版本号方案启动校验
+ * component.cache.consistency.mode 为 VERSION 时，所有 CacheAbleEntity 方法的实体类必须声明真正的版本字段：
+ * 名称为 versionField、标注 MyBatis-Plus @Version 的数字字段，由数据库行决定版本，不依赖应用服务器时钟
+ * 否则启动失败；运行时某次读写取不到版本号（如按主键删除）时，该次读写按写锁方案处理
+ */
+@Slf4j
+public class VersionModeVerifier implements SmartInitializingSingleton {
+
+    private final CacheProperties cacheProperties;
+    private final ApplicationContext applicationContext;
+
+    public VersionModeVerifier(CacheProperties cacheProperties, ApplicationContext applicationContext) {
+        this.cacheProperties = cacheProperties;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (cacheProperties.getConsistency().getMode() != ConsistencyMode.VERSION) {
+            return;
+        }
+        for (String beanName : applicationContext.getBeanDefinitionNames()) {
+            Class<?> beanType = applicationContext.getType(beanName);
+            if (beanType == null) {
+                continue;
+            }
+            Class<?> targetClass = ClassUtils.getUserClass(beanType);
+            Map<Method, CacheAbleEntity> methods = MethodIntrospector.selectMethods(targetClass,
+                    (MethodIntrospector.MetadataLookup<CacheAbleEntity>) method -> AnnotatedElementUtils.findMergedAnnotation(method, CacheAbleEntity.class));
+            methods.forEach((method, cacheAbleEntity) -> {
+                Class<?> entityClass = getEntityClass(targetClass, method);
+                if (entityClass == null) {
+                    log.warn("无法确定实体类，跳过版本字段校验，method: [{}]", method);
+                    return;
+                }
+                verify(entityClass, cacheAbleEntity.versionField(), method);
+            });
+        }
+    }
+
+    /**
+     * 校验版本字段
+     *
+     * @param entityClass
+     * @param versionField
+     * @param method
+     */
+    static void verify(Class<?> entityClass, String versionField, Object method) {
+        Field field = ReflectionUtils.findField(entityClass, versionField);
+        if (field == null || field.getDeclaredAnnotation(Version.class) == null) {
+            throw new IllegalFieldException("版本号方案要求实体类 [" + entityClass.getName() + "] 声明标注 @Version 的版本字段 [" + versionField + "]，method: [" + method + "]");
+        }
+        Class<?> type = field.getType();
+        if (!(Number.class.isAssignableFrom(type) || int.class.equals(type) || long.class.equals(type))) {
+            throw new IllegalFieldException("版本字段必须为数字类型，实体类: [" + entityClass.getName() + "]，字段: [" + versionField + "]");
+        }
+    }
+
+    /**
+     * 方法对应的实体类：CacheAbleService 的泛型、ServiceImpl 的实体类泛型、实体类返回值或参数
+     *
+     * @param targetClass
+     * @param method
+     * @return 无法确定时返回null
+     */
+    private Class<?> getEntityClass(Class<?> targetClass, Method method) {
+        Class<?> entityClass = ResolvableType.forClass(targetClass).as(CacheAbleService.class).resolveGeneric(0);
+        if (isEntity(entityClass)) {
+            return entityClass;
+        }
+        Type superclass = targetClass.getGenericSuperclass();
+        if (superclass instanceof ParameterizedType && ((ParameterizedType) superclass).getActualTypeArguments().length > 1) {
+            Type type = ((ParameterizedType) superclass).getActualTypeArguments()[1];
+            if (type instanceof Class && isEntity((Class<?>) type)) {
+                return (Class<?>) type;
+            }
+        }
+        if (isEntity(method.getReturnType())) {
+            return method.getReturnType();
+        }
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            if (isEntity(parameterType)) {
+                return parameterType;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isEntity(Class<?> clazz) {
+        return clazz != null && (BaseEntity.class.isAssignableFrom(clazz) && !BaseEntity.class.equals(clazz) || clazz.getDeclaredAnnotation(TableName.class) != null);
+    }
+
+}
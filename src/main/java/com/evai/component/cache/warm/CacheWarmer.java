@@ -0,0 +1,204 @@
+package com.evai.component.cache.warm;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.evai.component.cache.CacheAbleService;
+import com.evai.component.cache.CacheComponent;
+import com.evai.component.cache.CacheConstant;
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.utils.CacheKeyUtil;
+import com.evai.component.mybatis.utils.ReflectUtil;
+import com.evai.component.utils.concurrent.ThreadPoolUtil;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.ResolvableType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * @author crh
+ * @date 2019-12-25
+ * @description 实体类缓存预热
+ * 按主键范围把数据表分为多个区间并行读取，每个区间按主键顺序分批查询（id > 上一批最大主键），
+ * 每批通过管道写入主键key及id索引key，过期时间在配置范围内随机，所有任务共享限速配额，不阻塞调用线程
+ * 应用启动完成后自动预热 component.cache.warm.startupEntities 中的实体类，redis 故障恢复或清空缓存后可调用 warm 重新预热
+ */
+@Slf4j
+public class CacheWarmer implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final CacheProperties.Warm properties;
+    private final CacheComponent cacheComponent;
+    private final CacheKeyUtil cacheKeyUtil;
+    private final ApplicationContext applicationContext;
+    /**
+     * 本节点所有预热任务共享的限速配额，单位：行/秒
+     */
+    private final RateLimiter rateLimiter;
+    private final ExecutorService warmExecutor;
+    private final ConcurrentHashMap<String, WarmUpJob> jobs = new ConcurrentHashMap<>();
+
+    public CacheWarmer(CacheProperties cacheProperties, CacheComponent cacheComponent, CacheKeyUtil cacheKeyUtil, ApplicationContext applicationContext) {
+        this.properties = cacheProperties.getWarm();
+        this.cacheComponent = cacheComponent;
+        this.cacheKeyUtil = cacheKeyUtil;
+        this.applicationContext = applicationContext;
+        this.rateLimiter = RateLimiter.create(properties.getRowsPerSecond());
+        this.warmExecutor = ThreadPoolUtil.newFixedThreadPool("redis-warmExecutor", Math.max(1, properties.getParallelism()));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (properties.getStartupEntities().isEmpty()) {
+            return;
+        }
+        for (CacheAbleService service : applicationContext.getBeansOfType(CacheAbleService.class).values()) {
+            Class<?> clazz = ResolvableType.forClass(AopUtils.getTargetClass(service)).as(CacheAbleService.class).resolveGeneric(0);
+            if (clazz != null && (properties.getStartupEntities().contains(clazz.getSimpleName()) || properties.getStartupEntities().contains(clazz.getName()))) {
+                try {
+                    warm((Class<Object>) clazz, (IService<Object>) service);
+                } catch (Exception e) {
+                    log.error("warm up entity: [{}] error", clazz.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 提交预热任务
+     *
+     * @param clazz   实体类
+     * @param service 实体类对应的 service
+     * @param <T>
+     * @return
+     */
+    public <T> WarmUpJob warm(Class<T> clazz, IService<T> service) {
+        WarmUpJob job = new WarmUpJob(UUID.randomUUID().toString(), cacheKeyUtil.getEntityKeyName(clazz));
+        List<Object[]> segments = split(service);
+        job.getRemaining().set(segments.size());
+        jobs.put(job.getId(), job);
+        log.info("warm up job: [{}] started, keyName: [{}], segments: [{}]", job.getId(), job.getKeyName(), segments.size());
+        if (segments.isEmpty()) {
+            job.getRemaining().set(1);
+            job.segmentFinished(null);
+        }
+        for (Object[] segment : segments) {
+            warmExecutor.execute(() -> runSegment(job, service, segment[0], segment[1]));
+        }
+        return job;
+    }
+
+    /**
+     * 查询本节点提交的任务进度
+     *
+     * @param jobId
+     * @return 不存在返回null
+     */
+    public WarmUpJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    public Map<String, WarmUpJob> getJobs() {
+        return jobs;
+    }
+
+    public void shutdown() {
+        jobs.values().forEach(WarmUpJob::stop);
+        warmExecutor.shutdown();
+    }
+
+    /**
+     * 按主键范围平均分为多个区间 (下限, 上限]，主键不是数字时只有一个区间
+     *
+     * @param service
+     * @param <T>
+     * @return
+     */
+    private <T> List<Object[]> split(IService<T> service) {
+        List<Object[]> segments = new ArrayList<>();
+        Object min = first(service, true);
+        if (min == null) {
+            return segments;
+        }
+        Object max = first(service, false);
+        int parallelism = Math.max(1, properties.getParallelism());
+        if (!(min instanceof Number) || !(max instanceof Number) || parallelism == 1) {
+            segments.add(new Object[]{null, null});
+            return segments;
+        }
+        long lower = ((Number) min).longValue() - 1;
+        long upper = ((Number) max).longValue();
+        long step = Math.max(1L, (upper - lower + parallelism - 1) / parallelism);
+        for (long start = lower; start < upper; start += step) {
+            segments.add(new Object[]{start, Math.min(start + step, upper)});
+        }
+        return segments;
+    }
+
+    private <T> Object first(IService<T> service, boolean asc) {
+        QueryWrapper<T> wrapper = new QueryWrapper<T>().select(CacheConstant.PK);
+        if (asc) {
+            wrapper.orderByAsc(CacheConstant.PK);
+        } else {
+            wrapper.orderByDesc(CacheConstant.PK);
+        }
+        List<Object> ids = service.listObjs(wrapper.last("limit 1"));
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * 按主键顺序分批预热一个区间
+     *
+     * @param job
+     * @param service
+     * @param lower   不包含，为空时从头开始
+     * @param upper   包含，为空时到最后
+     * @param <T>
+     */
+    private <T> void runSegment(WarmUpJob job, IService<T> service, Object lower, Object upper) {
+        String error = null;
+        try {
+            int batchSize = Math.max(1, properties.getBatchSize());
+            Object lastId = lower;
+            while (job.isRunning()) {
+                QueryWrapper<T> wrapper = new QueryWrapper<>();
+                if (lastId != null) {
+                    wrapper.gt(CacheConstant.PK, lastId);
+                }
+                if (upper != null) {
+                    wrapper.le(CacheConstant.PK, upper);
+                }
+                wrapper.orderByAsc(CacheConstant.PK).last("limit " + batchSize);
+                List<T> entities = service.list(wrapper);
+                if (entities.isEmpty()) {
+                    break;
+                }
+                rateLimiter.acquire(entities.size());
+                int written = cacheComponent.warmEntities(job.getKeyName(), entities, properties.getExpired(), properties.getVersionField());
+                job.progress(entities.size(), written);
+                if (entities.size() < batchSize) {
+                    break;
+                }
+                lastId = ReflectUtil.getPrimaryValue(entities.get(entities.size() - 1));
+            }
+        } catch (Exception e) {
+            error = e.getMessage();
+            log.error("warm up job: [{}] segment ({}, {}] error", job.getId(), lower, upper, e);
+        } finally {
+            job.segmentFinished(error);
+            if (job.getRemaining().get() <= 0) {
+                log.info("warm up job: [{}] {}, loaded: [{}], written: [{}]", job.getId(), job.getStatus(), job.getLoaded().sum(), job.getWritten().sum());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.evai.component.cache.warm;
+
+import com.evai.component.cache.enums.WarmStatus;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author crh
+ * @date 2019-12-25
+ * @description 缓存预热任务进度
+ */
+@Getter
+public class WarmUpJob {
+
+    private final String id;
+    /**
+     * 缓存名称
+     */
+    private final String keyName;
+    /**
+     * 已从数据库读取的数量
+     */
+    private final LongAdder loaded = new LongAdder();
+    /**
+     * 已写入缓存的数量，写锁存在或已有更新版本的实体类不写入
+     */
+    private final LongAdder written = new LongAdder();
+    /**
+     * 未完成的主键区间数量
+     */
+    private final AtomicInteger remaining = new AtomicInteger();
+    private volatile WarmStatus status = WarmStatus.RUNNING;
+    private volatile String error;
+    private final long startTime = System.currentTimeMillis();
+    private volatile long endTime;
+
+    WarmUpJob(String id, String keyName) {
+        this.id = id;
+        this.keyName = keyName;
+    }
+
+    void progress(int loadedCount, int writtenCount) {
+        loaded.add(loadedCount);
+        written.add(writtenCount);
+    }
+
+    /**
+     * 一个主键区间执行结束，全部结束时任务完成
+     *
+     * @param error 执行失败的原因
+     */
+    void segmentFinished(String error) {
+        if (error != null) {
+            this.error = error;
+        }
+        if (remaining.decrementAndGet() <= 0) {
+            if (status == WarmStatus.RUNNING) {
+                status = this.error == null ? WarmStatus.DONE : WarmStatus.FAILED;
+            }
+            endTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 停止任务，当前批次处理完后生效
+     */
+    public void stop() {
+        if (status == WarmStatus.RUNNING) {
+            status = WarmStatus.STOPPED;
+        }
+    }
+
+    public boolean isRunning() {
+        return status == WarmStatus.RUNNING;
+    }
+
+}
@@ -0,0 +1,457 @@
+package com.evai.component.cache.writebehind;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.evai.component.cache.CacheComponent;
+import com.evai.component.cache.CacheConstant;
+import com.evai.component.cache.CacheKeyDTO;
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.RedisService;
+import com.evai.component.cache.annotation.CacheAbleEntity;
+import com.evai.component.cache.local.NearCache;
+import com.evai.component.cache.script.RedisScripts;
+import com.evai.component.cache.utils.CacheKeyUtil;
+import com.evai.component.mybatis.MybatisBatchExecutor;
+import com.evai.component.mybatis.utils.ReflectUtil;
+import com.evai.component.utils.JacksonUtil;
+import com.evai.component.utils.concurrent.ThreadPoolUtil;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.BeanInstantiationException;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @author crh
+ * @date 2019-12-23
+ * @description 实体类更新写入缓冲区（write-behind），由后台按批写入数据库
+ * 每个 keyName 一个 redis hash，field 为 "主键:字段名"，值为字段的json，同一主键同一字段的多次更新只保留最后一次
+ * 写入数据库前把 hash 整体改名为"写入中"，写入成功后删除；节点宕机时"写入中"的数据保留在 redis，
+ * 任意节点下一次执行时先写入"写入中"的数据，再认领新的更新，保证同一主键按更新顺序写入
+ * "写入中"的数据连续写入失败 maxRetries 次后移入死信 hash，不再阻塞后续更新
+ * 缓冲期间数据库是旧数据，缓存始终保存合并了未写入字段的实体类：缓存中没有实体类时，从数据库读取后合并缓冲区的字段写入缓存
+ */
+@Slf4j
+public class WriteBehindBuffer {
+
+    private static final String FLUSHING = ":flushing";
+    private static final String SINCE = ":since";
+    private static final String LOCK = ":lock";
+    private static final String RETRIES = ":retries";
+    private static final String DEAD_LETTER = CacheConstant.WRITE_BEHIND + "deadLetter:";
+    private static final String REGISTRY = CacheConstant.WRITE_BEHIND + "registry";
+    private static final String CLASS_SEPARATOR = ",";
+
+    /**
+     * 小数按 BigDecimal 解析，避免精度丢失
+     */
+    private static final ObjectMapper MAPPER = JacksonUtil.newObjectMapper(null).enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+
+    private final CacheProperties.WriteBehind properties;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisService redisService;
+    private final RedisScripts redisScripts;
+    private final NearCache nearCache;
+    private final CacheKeyUtil cacheKeyUtil;
+    private final MybatisBatchExecutor mybatisBatchExecutor;
+    private final CacheComponent cacheComponent;
+    private final SqlSessionFactory sqlSessionFactory;
+    private final ScheduledExecutorService flushExecutor;
+    /**
+     * keyName 对应的 Mapper 及实体类
+     */
+    private final ConcurrentHashMap<String, Target> targets = new ConcurrentHashMap<>();
+    /**
+     * 当前节点的写入令牌
+     */
+    private final String token = UUID.randomUUID().toString();
+    /**
+     * 是否已读取其它节点登记的 keyName，用于重启后写入宕机前未写入的数据
+     */
+    private volatile boolean registryLoaded = false;
+
+    public WriteBehindBuffer(CacheProperties cacheProperties, RedisTemplate<String, String> redisTemplate, RedisService redisService, RedisScripts redisScripts,
+                             NearCache nearCache, CacheKeyUtil cacheKeyUtil, MybatisBatchExecutor mybatisBatchExecutor, CacheComponent cacheComponent, SqlSessionFactory sqlSessionFactory) {
+        this.properties = cacheProperties.getWriteBehind();
+        this.redisTemplate = redisTemplate;
+        this.redisService = redisService;
+        this.redisScripts = redisScripts;
+        this.nearCache = nearCache;
+        this.cacheKeyUtil = cacheKeyUtil;
+        this.mybatisBatchExecutor = mybatisBatchExecutor;
+        this.cacheComponent = cacheComponent;
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.flushExecutor = ThreadPoolUtil.newScheduledThreadPool(1, "redis-writeBehindExecutor");
+        long interval = Math.max(1L, properties.getFlushIntervalMillis());
+        this.flushExecutor.scheduleWithFixedDelay(this::flushAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 写入缓冲区，只写入非空字段，主键字段除外，再把修改字段合并到缓存中的实体类
+     *
+     * @param keyName         缓存名称
+     * @param mapperClass     实体类的 BaseMapper
+     * @param id              主键
+     * @param entity          包含修改字段的实体类
+     * @param cacheKeyDTO     实体类的缓存key
+     * @param cacheAbleEntity
+     * @param seconds         缓存中没有实体类时写入缓存的过期时间，单位秒
+     */
+    public void buffer(String keyName, Class<?> mapperClass, Serializable id, Object entity, CacheKeyDTO cacheKeyDTO, CacheAbleEntity cacheAbleEntity, int seconds) {
+        Target target = register(keyName, mapperClass, entity.getClass(), cacheAbleEntity);
+        ObjectNode node = MAPPER.valueToTree(entity);
+        List<byte[]> keysAndArgs = new ArrayList<>();
+        keysAndArgs.add(getPendingKey(keyName).getBytes(StandardCharsets.UTF_8));
+        keysAndArgs.add((getPendingKey(keyName) + SINCE).getBytes(StandardCharsets.UTF_8));
+        keysAndArgs.add(String.valueOf(System.currentTimeMillis()).getBytes());
+        for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = it.next();
+            if (target.primaryKey.equals(field.getKey()) || field.getValue().isNull()) {
+                continue;
+            }
+            keysAndArgs.add((id + String.valueOf(CacheConstant.COLON) + field.getKey()).getBytes(StandardCharsets.UTF_8));
+            keysAndArgs.add(field.getValue().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (keysAndArgs.size() <= 3) {
+            return;
+        }
+        Long pending = redisScripts.eval(CacheConstant.LuaScript.WRITE_BEHIND_BUFFER, ReturnType.INTEGER, 2, keysAndArgs.toArray(new byte[0][]));
+        writeCache(target, keyName, id.toString(), cacheKeyDTO, entity, cacheAbleEntity, seconds);
+        if (pending != null && pending >= properties.getMaxPending()) {
+            flushExecutor.execute(() -> flush(keyName));
+        }
+    }
+
+    public void shutdown() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(properties.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 检查所有 keyName，存在"写入中"的数据或最早的更新超过最大延迟时写入数据库
+     */
+    private void flushAll() {
+        try {
+            if (!registryLoaded) {
+                loadRegistry();
+            }
+            long now = System.currentTimeMillis();
+            for (String keyName : targets.keySet()) {
+                String pendingKey = getPendingKey(keyName);
+                String since = redisTemplate.opsForValue().get(pendingKey + SINCE);
+                boolean lagged = since != null && now - Long.parseLong(since) >= properties.getMaxLagMillis();
+                if (lagged || Boolean.TRUE.equals(redisTemplate.hasKey(pendingKey + FLUSHING))) {
+                    flush(keyName);
+                }
+            }
+        } catch (Exception e) {
+            log.error("write behind flush error", e);
+        }
+    }
+
+    /**
+     * 集群内同一 keyName 同时只有一个节点写入，先写入"写入中"的数据，没有时认领缓冲区的数据
+     *
+     * @param keyName
+     */
+    private void flush(String keyName) {
+        Target target = targets.get(keyName);
+        String pendingKey = getPendingKey(keyName);
+        String lockKey = pendingKey + LOCK;
+        if (target == null || !Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, token, properties.getLockMillis(), TimeUnit.MILLISECONDS))) {
+            return;
+        }
+        String flushingKey = pendingKey + FLUSHING;
+        String retriesKey = flushingKey + RETRIES;
+        boolean claimed = false;
+        try {
+            claimed = Long.valueOf(1L).equals(redisScripts.eval(CacheConstant.LuaScript.WRITE_BEHIND_CLAIM, ReturnType.INTEGER, 3,
+                    pendingKey.getBytes(StandardCharsets.UTF_8), flushingKey.getBytes(StandardCharsets.UTF_8), (pendingKey + SINCE).getBytes(StandardCharsets.UTF_8)));
+            if (!claimed) {
+                return;
+            }
+            Map<String, ObjectNode> nodes = toNodes(target, this.<String, String>hashOperations().entries(flushingKey));
+            List<Object> entities = new ArrayList<>(nodes.size());
+            for (ObjectNode node : nodes.values()) {
+                entities.add(MAPPER.treeToValue(node, target.entityClass));
+            }
+            @SuppressWarnings("unchecked")
+            Class<BaseMapper<Object>> mapperClass = (Class<BaseMapper<Object>>) target.mapperClass;
+            mybatisBatchExecutor.batch(mapperClass, entities, Math.max(1, properties.getBatchSize()), BaseMapper::updateById);
+            redisTemplate.delete(Arrays.asList(flushingKey, retriesKey));
+            refreshCache(target, keyName, nodes.keySet());
+            log.info("write behind flushed keyName: [{}], size: [{}]", keyName, entities.size());
+        } catch (Exception e) {
+            if (claimed) {
+                retryOrDeadLetter(keyName, flushingKey, retriesKey, e);
+            } else {
+                log.error("write behind flush keyName: [{}] error", keyName, e);
+            }
+        } finally {
+            redisScripts.eval(CacheConstant.LuaScript.RELEASE_IF_EQUAL, ReturnType.INTEGER, 1, lockKey.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 写入数据库后刷新缓存
+     * 没有新的更新的主键删除缓存，删除写入期间可能从数据库读到旧数据的缓存；
+     * 写入期间又有新的更新的主键，从数据库读取后合并剩余的字段写入缓存，不能删除，否则读请求会读到缺少这些字段的数据库数据
+     *
+     * @param target
+     * @param keyName
+     * @param ids     已写入数据库的主键
+     */
+    private void refreshCache(Target target, String keyName, Set<String> ids) {
+        Set<String> pendingIds = this.<String, String>hashOperations().keys(getPendingKey(keyName)).stream()
+                .map(field -> field.substring(0, field.lastIndexOf(CacheConstant.COLON)))
+                .collect(Collectors.toSet());
+        List<String> keys = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            CacheKeyDTO cacheKeyDTO = cacheKeyUtil.assembleIdKey(keyName, id);
+            if (target.cacheAbleEntity != null && pendingIds.contains(id)) {
+                writeCache(target, keyName, id, cacheKeyDTO, null, target.cacheAbleEntity, cacheKeyUtil.randomExpired(target.cacheAbleEntity.expired()));
+            } else {
+                keys.add(cacheKeyDTO.getPrimaryKey());
+            }
+        }
+        if (!keys.isEmpty()) {
+            redisService.unlink(keys);
+            nearCache.invalidate(keys);
+        }
+    }
+
+    /**
+     * 把修改字段合并到缓存中的实体类，缓存中没有实体类时写入数据库中的实体类合并缓冲区字段后的结果，失败时删除缓存
+     *
+     * @param target
+     * @param keyName
+     * @param id
+     * @param cacheKeyDTO
+     * @param patch           包含修改字段的实体类，为空时直接写入合并后的实体类
+     * @param cacheAbleEntity
+     * @param seconds
+     */
+    private void writeCache(Target target, String keyName, String id, CacheKeyDTO cacheKeyDTO, Object patch, CacheAbleEntity cacheAbleEntity, int seconds) {
+        try {
+            cacheComponent.writeBehindCache(cacheKeyDTO, patch, seconds, cacheAbleEntity, () -> load(target, keyName, id));
+        } catch (Exception e) {
+            log.warn("write behind cache keyName: [{}], id: [{}] error", keyName, id, e);
+            List<String> keys = Collections.singletonList(cacheKeyDTO.getPrimaryKey());
+            redisService.unlink(keys);
+            nearCache.invalidate(keys);
+        }
+    }
+
+    /**
+     * 从数据库读取实体类，再合并缓冲区中（包括"写入中"）尚未写入数据库的字段
+     *
+     * @param target
+     * @param keyName
+     * @param id
+     * @return 数据库中不存在时返回null
+     */
+    private Object load(Target target, String keyName, String id) {
+        try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+            // 主键转换为实体类主键字段的类型
+            Serializable primaryValue = ReflectUtil.getPrimaryValue(MAPPER.treeToValue(MAPPER.createObjectNode().put(target.primaryKey, id), target.entityClass));
+            Object entity = ((BaseMapper<?>) sqlSession.getMapper(target.mapperClass)).selectById(primaryValue);
+            if (entity == null) {
+                return null;
+            }
+            ObjectNode fields = MAPPER.createObjectNode();
+            String pendingKey = getPendingKey(keyName);
+            // 先读取"写入中"，新的更新覆盖旧的更新
+            for (String key : Arrays.asList(pendingKey + FLUSHING, pendingKey)) {
+                scanFields(key, id, fields);
+            }
+            return fields.size() == 0 ? entity : MAPPER.readerForUpdating(entity).readValue(fields);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 读取 hash 中主键的所有字段
+     *
+     * @param key
+     * @param id
+     * @param fields 字段名称及值
+     * @throws IOException
+     */
+    private void scanFields(String key, String id, ObjectNode fields) throws IOException {
+        ScanOptions options = ScanOptions.scanOptions().match(escapePattern(id) + CacheConstant.COLON + "*").count(1000).build();
+        try (Cursor<Map.Entry<String, String>> cursor = this.<String, String>hashOperations().scan(key, options)) {
+            while (cursor.hasNext()) {
+                Map.Entry<String, String> entry = cursor.next();
+                fields.set(entry.getKey().substring(entry.getKey().lastIndexOf(CacheConstant.COLON) + 1), MAPPER.readTree(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * 写入失败时增加重试次数，超过 maxRetries 后把"写入中"的数据移入死信 hash，并删除包含这些未写入字段的缓存
+     *
+     * @param keyName
+     * @param flushingKey
+     * @param retriesKey
+     * @param e
+     */
+    private void retryOrDeadLetter(String keyName, String flushingKey, String retriesKey, Exception e) {
+        Long retries = redisTemplate.opsForValue().increment(retriesKey);
+        if (retries == null || retries < properties.getMaxRetries()) {
+            // "写入中"的数据保留，下次执行时重试
+            log.error("write behind flush keyName: [{}] error, retries: [{}]", keyName, retries, e);
+            return;
+        }
+        String deadLetterKey = DEAD_LETTER + keyName;
+        Set<String> fields = this.<String, String>hashOperations().keys(flushingKey);
+        Long moved = redisScripts.eval(CacheConstant.LuaScript.WRITE_BEHIND_DEAD_LETTER, ReturnType.INTEGER, 3,
+                flushingKey.getBytes(StandardCharsets.UTF_8), deadLetterKey.getBytes(StandardCharsets.UTF_8), retriesKey.getBytes(StandardCharsets.UTF_8));
+        List<String> keys = fields.stream()
+                .map(field -> field.substring(0, field.lastIndexOf(CacheConstant.COLON)))
+                .distinct()
+                .map(id -> cacheKeyUtil.assembleIdKey(keyName, id).getPrimaryKey())
+                .collect(Collectors.toList());
+        redisService.unlink(keys);
+        nearCache.invalidate(keys);
+        log.error("write behind flush keyName: [{}] failed [{}] times, [{}] fields moved to dead letter: [{}]", keyName, retries, moved, deadLetterKey, e);
+    }
+
+    private static String escapePattern(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * hash 按主键分组为实体类的 json 对象
+     *
+     * @param target
+     * @param entries
+     * @return key 为主键
+     * @throws IOException
+     */
+    private Map<String, ObjectNode> toNodes(Target target, Map<String, String> entries) throws IOException {
+        Map<String, ObjectNode> nodes = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            int index = entry.getKey().lastIndexOf(CacheConstant.COLON);
+            String id = entry.getKey().substring(0, index);
+            ObjectNode node = nodes.computeIfAbsent(id, k -> MAPPER.createObjectNode().put(target.primaryKey, k));
+            node.set(entry.getKey().substring(index + 1), MAPPER.readTree(entry.getValue()));
+        }
+        return nodes;
+    }
+
+    /**
+     * 登记 keyName 对应的 Mapper 及实体类，重启后的节点据此写入宕机前未写入的数据
+     *
+     * @param keyName
+     * @param mapperClass
+     * @param entityClass
+     * @param cacheAbleEntity
+     * @return
+     */
+    private Target register(String keyName, Class<?> mapperClass, Class<?> entityClass, CacheAbleEntity cacheAbleEntity) {
+        Target target = targets.computeIfAbsent(keyName, k -> {
+            this.<String, String>hashOperations().put(REGISTRY, k, mapperClass.getName() + CLASS_SEPARATOR + entityClass.getName());
+            return new Target(mapperClass, entityClass, cacheAbleEntity);
+        });
+        if (target.cacheAbleEntity == null) {
+            // 从登记信息加载的 keyName 没有注解，本节点写入后补充
+            target = new Target(target.mapperClass, target.entityClass, cacheAbleEntity, target.primaryKey);
+            targets.put(keyName, target);
+        }
+        return target;
+    }
+
+    private void loadRegistry() {
+        Map<String, String> registry = this.<String, String>hashOperations().entries(REGISTRY);
+        for (Map.Entry<String, String> entry : registry.entrySet()) {
+            String[] classNames = StringUtils.split(entry.getValue(), CLASS_SEPARATOR);
+            try {
+                targets.putIfAbsent(entry.getKey(), new Target(Class.forName(classNames[0]), Class.forName(classNames[1]), null));
+            } catch (ClassNotFoundException | ArrayIndexOutOfBoundsException e) {
+                log.warn("write behind registry keyName: [{}] ignored: [{}]", entry.getKey(), entry.getValue());
+            }
+        }
+        registryLoaded = true;
+    }
+
+    private String getPendingKey(String keyName) {
+        return CacheConstant.WRITE_BEHIND + keyName;
+    }
+
+    private <HK, HV> HashOperations<String, HK, HV> hashOperations() {
+        return redisTemplate.opsForHash();
+    }
+
+    private static class Target {
+        private final Class<?> mapperClass;
+        private final Class<?> entityClass;
+        /**
+         * 写入数据库后刷新缓存使用，从登记信息加载时为空，此时只删除缓存
+         */
+        private final CacheAbleEntity cacheAbleEntity;
+        /**
+         * 实体类主键的字段名
+         */
+        private final String primaryKey;
+
+        private Target(Class<?> mapperClass, Class<?> entityClass, CacheAbleEntity cacheAbleEntity) {
+            this(mapperClass, entityClass, cacheAbleEntity, getPrimaryKey(entityClass));
+        }
+
+        private Target(Class<?> mapperClass, Class<?> entityClass, CacheAbleEntity cacheAbleEntity, String primaryKey) {
+            this.mapperClass = mapperClass;
+            this.entityClass = entityClass;
+            this.cacheAbleEntity = cacheAbleEntity;
+            this.primaryKey = primaryKey;
+        }
+
+        private static String getPrimaryKey(Class<?> entityClass) {
+            try {
+                String primaryKey = ReflectUtil.getPrimaryKey(BeanUtils.instantiateClass(entityClass)).getKey();
+                return StringUtils.isBlank(primaryKey) ? CacheConstant.PK : primaryKey;
+            } catch (BeanInstantiationException e) {
+                return CacheConstant.PK;
+            }
+        }
+    }
+
+}
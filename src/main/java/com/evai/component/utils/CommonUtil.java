@@ -23,6 +23,7 @@ public class CommonUtil {
 
     private static final String MD5 = "MD5";
     private static final String SHA_256 = "SHA-256";
+    private static final String SHA_1 = "SHA-1";
 
     /**
      * 文件MD5
@@ -129,6 +130,20 @@ public class CommonUtil {
         return encodeStr.toUpperCase();
     }
 
+    /**
+     * sha1，小写十六进制，和 redis lua 中的 redis.sha1hex 结果相同
+     *
+     * @param bytes
+     * @return
+     */
+    public static String sha1Hex(byte[] bytes) {
+        try {
+            return byte2Hex(MessageDigest.getInstance(SHA_1).digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static String randomUUID() {
         return UUID
                 .randomUUID()
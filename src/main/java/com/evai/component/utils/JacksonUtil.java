@@ -1,6 +1,7 @@
 package com.evai.component.utils;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -13,6 +14,7 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,22 +29,30 @@ import java.util.List;
 @Slf4j
 public class JacksonUtil {
 
-    private static ObjectMapper objectMapper = new ObjectMapper();
+    private static ObjectMapper objectMapper = newObjectMapper(null);
 
     private static final Object[] EMPTY_ARRAY = new Object[0];
 
-    static {
+    /**
+     * 创建和默认json序列化配置相同的 ObjectMapper
+     *
+     * @param jsonFactory 数据格式，如 SmileFactory、CBORFactory，为null时为json
+     * @return
+     */
+    public static ObjectMapper newObjectMapper(JsonFactory jsonFactory) {
+        ObjectMapper mapper = new ObjectMapper(jsonFactory);
         // 忽略值为NULL的字段
-        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
         //取消默认转换时间戳格式
-        objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
         //忽略空Bean转json的错误
-        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
         //所有的日期格式统一为 yyyy-MM-dd HH:mm:ss
-        objectMapper.setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
+        mapper.setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
         //        objectMapper.setDateFormat(DateFormat.getTimeInstance());
         // 忽略json字符串中存在，但Java对象中不存在对应属性的错误
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return mapper;
     }
 
     /**
@@ -142,6 +152,48 @@ public class JacksonUtil {
         }
     }
 
+    /**
+     * json序列化为UTF-8字节数组，不经过中间字符串
+     *
+     * @param obj
+     * @param <T>
+     * @return
+     */
+    public static <T> byte[] objToBytes(T obj) {
+        if (obj == null) {
+            return new byte[0];
+        }
+        try {
+            return obj instanceof String ? ((String) obj).getBytes(StandardCharsets.UTF_8) : objectMapper.writeValueAsBytes(obj);
+        } catch (JsonProcessingException e) {
+            log.warn("parse object to json error", e);
+            return new byte[0];
+        }
+    }
+
+    /**
+     * 直接从UTF-8字节数组反序列化，不经过中间字符串
+     *
+     * @param bytes
+     * @param offset
+     * @param len
+     * @param javaType
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T bytesToObj(byte[] bytes, int offset, int len, JavaType javaType) {
+        if (bytes == null || len <= 0 || javaType == null) {
+            return null;
+        }
+        try {
+            return (T) (javaType.getRawClass().equals(String.class) ? new String(bytes, offset, len, StandardCharsets.UTF_8) : objectMapper.readValue(bytes, offset, len, javaType));
+        } catch (IOException e) {
+            log.warn("Parse bytes to Object error", e);
+            return null;
+        }
+    }
+
     /**
      * 获取泛型的Collection Type
      *
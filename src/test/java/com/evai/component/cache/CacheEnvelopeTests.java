@@ -0,0 +1,90 @@
+package com.evai.component.cache;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author crh
+ * @date 2019-12-08
+ * @description 缓存值信封的编码、解析及概率提前刷新
+ */
+public class CacheEnvelopeTests {
+
+    private static final byte[] PAYLOAD = "{\"id\":1,\"name\":\"a|b\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void encodeAndDecode() {
+        long before = System.currentTimeMillis();
+        byte[] value = CacheEnvelope.encode(PAYLOAD, 60L, 15L);
+        long after = System.currentTimeMillis();
+
+        CacheEnvelope envelope = CacheEnvelope.decode(value);
+        assertNotNull(envelope);
+        assertEquals(1, envelope.getVersion());
+        assertEquals(15L, envelope.getDelta());
+        assertTrue(envelope.getSoftExpireAt() >= before + 60000L && envelope.getSoftExpireAt() <= after + 60000L);
+        int offset = CacheEnvelope.payloadOffset(envelope);
+        assertArrayEquals(PAYLOAD, Arrays.copyOfRange(value, offset, value.length));
+    }
+
+    @Test
+    public void legacyValueNotDecoded() {
+        assertNull(CacheEnvelope.decode(null));
+        assertNull(CacheEnvelope.decode(new byte[0]));
+        assertNull(CacheEnvelope.decode(PAYLOAD));
+        assertNull(CacheEnvelope.decode("1".getBytes(StandardCharsets.UTF_8)));
+        // 头部不完整
+        assertNull(CacheEnvelope.decode("\u001e1|1576000000000".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(0, CacheEnvelope.payloadOffset(null));
+    }
+
+    @Test
+    public void refreshAfterSoftExpire() {
+        CacheEnvelope envelope = CacheEnvelope.decode(CacheEnvelope.encode(PAYLOAD, 0L, 0L));
+        assertNotNull(envelope);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(envelope.shouldRefresh(1.0D));
+        }
+    }
+
+    @Test
+    public void noRefreshWithoutComputeTime() {
+        CacheEnvelope envelope = CacheEnvelope.decode(CacheEnvelope.encode(PAYLOAD, 60L, 0L));
+        assertNotNull(envelope);
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(envelope.shouldRefresh(1.0D));
+        }
+    }
+
+    @Test
+    public void refreshEarlierWhenComputeIsSlow() {
+        // 计算耗时远大于剩余时间，几乎每次都提前刷新
+        CacheEnvelope slow = CacheEnvelope.decode(CacheEnvelope.encode(PAYLOAD, 1L, 1000000L));
+        // 计算耗时远小于剩余时间，几乎不会提前刷新
+        CacheEnvelope fast = CacheEnvelope.decode(CacheEnvelope.encode(PAYLOAD, 60L, 1L));
+        assertNotNull(slow);
+        assertNotNull(fast);
+        int slowRefreshed = 0;
+        int fastRefreshed = 0;
+        for (int i = 0; i < 1000; i++) {
+            slowRefreshed += slow.shouldRefresh(1.0D) ? 1 : 0;
+            fastRefreshed += fast.shouldRefresh(1.0D) ? 1 : 0;
+        }
+        assertTrue(slowRefreshed > 900);
+        assertTrue(fastRefreshed < 100);
+        // beta 为0时不提前刷新
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(slow.shouldRefresh(0D));
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.evai.component.cache.codec;
+
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.metrics.CacheMetrics;
+import com.evai.component.utils.JacksonUtil;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author crh
+ * @date 2019-12-29
+ * @description 缓存值编解码的格式标识、新旧格式混合读取及压缩
+ */
+public class CacheCodecsTests {
+
+    private static final JavaType MAP_TYPE = TypeFactory.defaultInstance().constructMapType(LinkedHashMap.class, String.class, Object.class);
+    private static final JavaType LIST_TYPE = TypeFactory.defaultInstance().constructCollectionType(List.class, String.class);
+
+    private final Map<String, Object> user = new LinkedHashMap<>();
+
+    private CacheProperties cacheProperties;
+    private CacheMetrics cacheMetrics;
+
+    @Before
+    public void setUp() {
+        user.put("id", 1);
+        user.put("name", "张三");
+        cacheProperties = new CacheProperties();
+        cacheMetrics = new CacheMetrics();
+    }
+
+    @Test
+    public void jsonWrittenWithoutMarker() {
+        CacheCodecs cacheCodecs = newCodecs();
+        CacheCodec json = cacheCodecs.get(null);
+        assertEquals(JsonCacheCodec.NAME, json.name());
+        // 和旧版本写入的格式一致
+        assertArrayEquals(JacksonUtil.objToBytes(user), cacheCodecs.encode(json, user));
+        assertArrayEquals("1".getBytes(StandardCharsets.UTF_8), cacheCodecs.encode(json, 1L));
+        assertArrayEquals("null".getBytes(StandardCharsets.UTF_8), cacheCodecs.encode(json, null));
+        assertEquals(user, cacheCodecs.decode(cacheCodecs.encode(json, user), 0, MAP_TYPE));
+        assertNull(cacheCodecs.decode(cacheCodecs.encode(json, null), 0, MAP_TYPE));
+    }
+
+    @Test
+    public void binaryCodecWrittenWithMarker() {
+        CacheCodecs cacheCodecs = newCodecs();
+        for (String name : Arrays.asList(SmileCacheCodec.NAME, CborCacheCodec.NAME)) {
+            CacheCodec codec = cacheCodecs.get(name);
+            byte[] bytes = cacheCodecs.encode(codec, user);
+            assertEquals(CacheCodecs.MARK, bytes[0]);
+            assertEquals(codec.id(), bytes[1]);
+            assertEquals(user, cacheCodecs.decode(bytes, 0, MAP_TYPE));
+        }
+    }
+
+    @Test
+    public void mixedFormatsReadByHeader() {
+        // 默认编码器为 smile 时仍能读取 json 写入的旧数据，反之亦然
+        cacheProperties.setCodec(SmileCacheCodec.NAME);
+        CacheCodecs cacheCodecs = newCodecs();
+        byte[] json = cacheCodecs.encode(cacheCodecs.get(JsonCacheCodec.NAME), user);
+        byte[] smile = cacheCodecs.encode(cacheCodecs.get(null), user);
+        assertEquals(CacheCodecs.MARK, smile[0]);
+        assertEquals(user, cacheCodecs.decode(json, 0, MAP_TYPE));
+        assertEquals(user, cacheCodecs.decode(smile, 0, MAP_TYPE));
+        // 带前缀（如信封头部）时从 offset 开始读取
+        assertEquals(user, cacheCodecs.decode(prefix(smile), 3, MAP_TYPE));
+        assertEquals(user, cacheCodecs.decode(prefix(json), 3, MAP_TYPE));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unknownCodecId() {
+        CacheCodecs cacheCodecs = newCodecs();
+        byte[] cbor = cacheCodecs.encode(cacheCodecs.get(CborCacheCodec.NAME), user);
+        new CacheCodecs(Collections.singletonList(new JsonCacheCodec()), cacheProperties, cacheMetrics).decode(cbor, 0, MAP_TYPE);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void duplicateCodec() {
+        new CacheCodecs(Arrays.asList(new SmileCacheCodec(), new SmileCacheCodec()), cacheProperties, cacheMetrics);
+    }
+
+    @Test
+    public void compressAboveThreshold() {
+        cacheProperties.getCompression().setEnabled(true);
+        cacheProperties.getCompression().setThreshold(256);
+        CacheCodecs cacheCodecs = newCodecs();
+        List<String> large = new ArrayList<>(Collections.nCopies(200, "cacheAble:user:id:1"));
+
+        for (String name : Arrays.asList(JsonCacheCodec.NAME, SmileCacheCodec.NAME)) {
+            CacheCodec codec = cacheCodecs.get(name);
+            byte[] bytes = cacheCodecs.encode(codec, large);
+            assertEquals(CacheCodecs.COMPRESSED_MARK, bytes[0]);
+            assertTrue(bytes.length < 256);
+            assertEquals(large, cacheCodecs.decode(bytes, 0, LIST_TYPE));
+            assertEquals(large, cacheCodecs.decode(prefix(bytes), 3, LIST_TYPE));
+        }
+        // 低于阈值不压缩
+        assertArrayEquals(JacksonUtil.objToBytes(user), cacheCodecs.encode(cacheCodecs.get(JsonCacheCodec.NAME), user));
+        assertEquals(2L, cacheMetrics.getCompressCount().sum());
+        assertEquals(4L, cacheMetrics.getDecompressCount().sum());
+    }
+
+    @Test
+    public void skipIncompressibleValue() {
+        cacheProperties.getCompression().setEnabled(true);
+        cacheProperties.getCompression().setThreshold(256);
+        CacheCodecs cacheCodecs = newCodecs();
+        byte[] random = new byte[1024];
+        new Random(1L).nextBytes(random);
+
+        // cbor 直接存放二进制，随机字节压缩后不会变小
+        byte[] bytes = cacheCodecs.encode(cacheCodecs.get(CborCacheCodec.NAME), random);
+        assertEquals(CacheCodecs.MARK, bytes[0]);
+        assertArrayEquals(random, cacheCodecs.decode(bytes, 0, TypeFactory.defaultInstance().constructType(byte[].class)));
+        assertEquals(1L, cacheMetrics.getCompressSkipped().sum());
+        assertEquals(0L, cacheMetrics.getCompressCount().sum());
+    }
+
+    private CacheCodecs newCodecs() {
+        return new CacheCodecs(Arrays.asList(new JsonCacheCodec(), new SmileCacheCodec(), new CborCacheCodec()), cacheProperties, cacheMetrics);
+    }
+
+    private static byte[] prefix(byte[] bytes) {
+        byte[] result = new byte[bytes.length + 3];
+        result[0] = 0x1e;
+        result[1] = '1';
+        result[2] = '|';
+        System.arraycopy(bytes, 0, result, 3, bytes.length);
+        return result;
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.evai.component.cache.hotkey;
+
+import com.evai.component.cache.CacheProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author crh
+ * @date 2019-12-24
+ * @description 热点key探测的滑动窗口
+ */
+public class HotKeyDetectorTests {
+
+    private static final String KEY = "cacheAble:user:id:1";
+
+    private HotKeyDetector hotKeyDetector;
+
+    @Before
+    public void setUp() {
+        CacheProperties cacheProperties = new CacheProperties();
+        CacheProperties.HotKey hotKey = cacheProperties.getHotKey();
+        hotKey.setEnabled(true);
+        hotKey.setSampleRatio(1D);
+        hotKey.setSlices(2);
+        // 窗口 120 秒，后台线程在测试期间不会滑动窗口
+        hotKey.setSliceMillis(60000L);
+        hotKey.setThresholdQps(1D);
+        hotKey.setLocalSeconds(5);
+        hotKeyDetector = new HotKeyDetector(cacheProperties);
+    }
+
+    @After
+    public void tearDown() {
+        hotKeyDetector.shutdown();
+    }
+
+    @Test
+    public void promoteAfterThreshold() {
+        // 119 次 / 120 秒低于阈值
+        for (int i = 0; i < 119; i++) {
+            assertEquals(0, hotKeyDetector.promote(KEY, 0));
+        }
+        assertEquals(5, hotKeyDetector.promote(KEY, 0));
+        assertEquals(5, hotKeyDetector.resolve(KEY, 0));
+        assertEquals(10, hotKeyDetector.resolve(KEY, 10));
+        assertEquals(0, hotKeyDetector.resolve("cacheAble:user:id:2", 0));
+        assertEquals(1, hotKeyDetector.getHotKeys().size());
+    }
+
+    @Test
+    public void demoteAfterWindowRotation() {
+        for (int i = 0; i < 200; i++) {
+            hotKeyDetector.promote(KEY, 0);
+        }
+        assertEquals(5, hotKeyDetector.resolve(KEY, 0));
+        // 计数仍在窗口内的另一个分片
+        hotKeyDetector.rotate();
+        assertEquals(5, hotKeyDetector.resolve(KEY, 0));
+        // 记录计数的分片被清空，低于阈值一半时取消热点
+        hotKeyDetector.rotate();
+        assertEquals(0, hotKeyDetector.resolve(KEY, 0));
+        assertTrue(hotKeyDetector.getHotKeys().isEmpty());
+        assertEquals(0, hotKeyDetector.promote(KEY, 0));
+    }
+
+    @Test
+    public void disabledDetectorKeepsSeconds() {
+        CacheProperties cacheProperties = new CacheProperties();
+        HotKeyDetector disabled = new HotKeyDetector(cacheProperties);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(3, disabled.promote(KEY, 3));
+        }
+        assertTrue(disabled.getHotKeys().isEmpty());
+        disabled.shutdown();
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.evai.component.cache.local;
+
+import com.evai.component.cache.CacheProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author crh
+ * @date 2019-12-26
+ * @description 磁盘缓存的记录读写、墓碑、分段整理及重启后的校验
+ */
+public class DiskCacheTests {
+
+    /**
+     * 新写入的记录不需要校验
+     */
+    private static final Predicate<byte[]> UNVERIFIED = value -> {
+        throw new AssertionError("verifier called for a written entry");
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CacheProperties cacheProperties;
+    private DiskCache diskCache;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheProperties = new CacheProperties();
+        CacheProperties.Disk disk = cacheProperties.getDisk();
+        disk.setEnabled(true);
+        disk.setDirectory(folder.newFolder("disk").getAbsolutePath());
+        // 每条记录 20 + 2 + 32 字节，每个分段 4 条
+        disk.setSegmentBytes(256);
+        disk.setMaxSegments(3);
+        diskCache = new DiskCache(cacheProperties);
+    }
+
+    @After
+    public void tearDown() {
+        diskCache.shutdown();
+    }
+
+    @Test
+    public void putAndGet() {
+        assertTrue(diskCache.isEnabled());
+        diskCache.put("k1", value("v1"), 60L);
+        assertArrayEquals(value("v1"), diskCache.get("k1", UNVERIFIED));
+        diskCache.put("k1", value("v2"), 60L);
+        assertArrayEquals(value("v2"), diskCache.get("k1", UNVERIFIED));
+        assertNull(diskCache.get("k2", UNVERIFIED));
+        // 不写入
+        diskCache.put("k2", value("v1"), 0L);
+        assertNull(diskCache.get("k2", UNVERIFIED));
+        assertEquals(1L, diskCache.size());
+    }
+
+    @Test
+    public void tombstoneSurvivesReopen() {
+        diskCache.put("k1", value("v1"), 60L);
+        diskCache.put("k2", value("v2"), 60L);
+        diskCache.invalidate(Collections.singletonList("k1"));
+        assertNull(diskCache.get("k1", UNVERIFIED));
+
+        reopen();
+        assertEquals(1L, diskCache.size());
+        assertNull(diskCache.get("k1", value -> true));
+        assertArrayEquals(value("v2"), diskCache.get("k2", value -> true));
+    }
+
+    @Test
+    public void restoredEntryVerifiedOnce() {
+        diskCache.put("k1", value("v1"), 60L);
+        diskCache.put("k2", value("v2"), 60L);
+
+        reopen();
+        AtomicInteger verified = new AtomicInteger();
+        Predicate<byte[]> verifier = value -> {
+            verified.incrementAndGet();
+            return true;
+        };
+        assertArrayEquals(value("v1"), diskCache.get("k1", verifier));
+        assertArrayEquals(value("v1"), diskCache.get("k1", verifier));
+        assertEquals(1, verified.get());
+        // 校验失败的记录失效，再次重启也不会恢复
+        assertNull(diskCache.get("k2", value -> false));
+        assertNull(diskCache.get("k2", UNVERIFIED));
+
+        reopen();
+        assertNull(diskCache.get("k2", value -> true));
+        assertArrayEquals(value("v1"), diskCache.get("k1", value -> true));
+    }
+
+    @Test
+    public void compactKeepsLatestValues() {
+        for (int i = 0; i < 20; i++) {
+            diskCache.put("k1", value("k1-" + i), 60L);
+            diskCache.put("k2", value("k2-" + i), 60L);
+        }
+        diskCache.invalidate(Collections.singletonList("k2"));
+        assertTrue(segmentCount() <= 3);
+        assertArrayEquals(value("k1-19"), diskCache.get("k1", UNVERIFIED));
+        assertNull(diskCache.get("k2", UNVERIFIED));
+
+        reopen();
+        assertEquals(1L, diskCache.size());
+        assertArrayEquals(value("k1-19"), diskCache.get("k1", value -> true));
+        assertNull(diskCache.get("k2", value -> true));
+    }
+
+    @Test
+    public void compactDropsRecordsBeyondCapacity() {
+        for (int i = 0; i < 50; i++) {
+            diskCache.put("k" + i, value("v" + i), 60L);
+        }
+        assertTrue(segmentCount() <= 3);
+        assertTrue(diskCache.size() < 50);
+        assertArrayEquals(value("v49"), diskCache.get("k49", UNVERIFIED));
+    }
+
+    private void reopen() {
+        diskCache.shutdown();
+        diskCache = new DiskCache(cacheProperties);
+        assertTrue(diskCache.isEnabled());
+    }
+
+    private int segmentCount() {
+        File[] files = new File(cacheProperties.getDisk().getDirectory()).listFiles((dir, name) -> name.startsWith("segment-"));
+        return files == null ? 0 : files.length;
+    }
+
+    private static byte[] value(String text) {
+        return String.format("%-32s", text).getBytes(StandardCharsets.UTF_8);
+    }
+
+}
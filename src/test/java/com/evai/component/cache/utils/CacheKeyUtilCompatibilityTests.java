@@ -0,0 +1,250 @@
+package com.evai.component.cache.utils;
+
+import com.evai.component.cache.CacheConstant;
+import com.evai.component.cache.CacheKeyDTO;
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.key.KeyHasher;
+import com.evai.component.cache.key.Md5KeyHasher;
+import com.evai.component.cache.key.Murmur3KeyHasher;
+import com.evai.component.cache.namespace.NamespaceGeneration;
+import com.evai.component.cache.plan.CacheInvocationPlan;
+import com.evai.component.cache.plan.KeySegment;
+import com.evai.component.utils.BeanUtil;
+import com.evai.component.utils.CommonUtil;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.Test;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author crh
+ * @date 2019-12-24
+ * @description 缓存key兼容性，MD5 摘要下生成的key必须和原 CacheKeyUtil / CacheAbleAspect 逐字节一致
+ * 原实现按 baseline 代码原样保留在本类中作为对照
+ */
+public class CacheKeyUtilCompatibilityTests {
+
+    private static final String KEY_NAME = "cacheAble:user:";
+
+    private static final String[] PARAMETER_NAMES = {"id", "user", "ids", "type"};
+
+    private final User user = new User(1L, "张三", 18);
+    private final Admin admin = new Admin("root");
+    private final List<Long> ids = Arrays.asList(1L, 2L, 3L);
+
+    @Test
+    public void md5KeyHasherMatchesGetStringMD5() {
+        KeyHasher hasher = new Md5KeyHasher();
+        for (String data : Arrays.asList("", "id=1", "张三&18", "name=张三&age=18&id=1&&type=vip")) {
+            assertEquals(CommonUtil.getStringMD5(data), hasher.hash(data));
+            assertEquals(CommonUtil.getStringMD5(data), hasher.hash(new StringBuilder(data)));
+        }
+    }
+
+    @Test
+    public void fieldOrderMatchesGetAllFields() {
+        admin.setId(2L);
+        CacheKeyDTO expected = baselineEntityKey("#user", admin);
+        CacheKeyDTO actual = md5KeyUtil().assembleFinalEntityKey(plan(KeySegment.param("user", 1)), args(null, admin));
+        assertEquals(expected.getIndexKey(), actual.getIndexKey());
+        assertEquals(expected.getPrimaryKey(), actual.getPrimaryKey());
+    }
+
+    @Test
+    public void entityKeyMatchesBaseline() {
+        CacheKeyUtil cacheKeyUtil = md5KeyUtil();
+        // 基本类型包装类
+        assertEntityKey(cacheKeyUtil, "#id", 1L, KeySegment.param("id", 0));
+        assertEquals("cacheAble:user:id=1", cacheKeyUtil.assembleFinalEntityKey(plan(KeySegment.param("id", 0)), args(1L, null)).getIndexKey());
+        // null
+        assertEntityKey(cacheKeyUtil, "#id", null, KeySegment.param("id", 0));
+        // 对象参数，每个属性后追加连接符，片段后再追加一次，即 &&
+        assertEntityKey(cacheKeyUtil, "#user+#type", user, KeySegment.param("user", 1), KeySegment.param("type", 3));
+        // 对象属性
+        assertEntityKey(cacheKeyUtil, "#user.id", user, KeySegment.field("user", 1, "id"));
+        assertEntityKey(cacheKeyUtil, "#user.name+#type", user, KeySegment.field("user", 1, "name"), KeySegment.param("type", 3));
+        // 常量
+        assertEntityKey(cacheKeyUtil, "vip+#id", 1L, KeySegment.literal("vip"), KeySegment.param("id", 0));
+        // 主键查询
+        CacheKeyDTO expected = baselineEntityKey("#id", 1L);
+        CacheKeyDTO idKey = cacheKeyUtil.assembleIdKey(KEY_NAME, 1L);
+        assertEquals(expected.getIndexKey(), idKey.getIndexKey());
+        assertEquals(expected.getPrimaryKey(), idKey.getPrimaryKey());
+    }
+
+    @Test
+    public void cacheKeyMatchesBaseline() {
+        CacheKeyUtil cacheKeyUtil = md5KeyUtil();
+        assertCacheKey(cacheKeyUtil, "#id", KeySegment.param("id", 0));
+        assertCacheKey(cacheKeyUtil, "#user", KeySegment.param("user", 1));
+        assertCacheKey(cacheKeyUtil, "#ids", KeySegment.param("ids", 2));
+        assertCacheKey(cacheKeyUtil, "#user.name+#type", KeySegment.field("user", 1, "name"), KeySegment.param("type", 3));
+        assertCacheKey(cacheKeyUtil, "list+#ids", KeySegment.literal("list"), KeySegment.param("ids", 2));
+        assertNull(cacheKeyUtil.assembleLegacyCacheKey(plan(KeySegment.param("id", 0)), args(1L, user)));
+    }
+
+    @Test
+    public void legacyReadKeepsMd5Keys() {
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.getKey().setLegacyRead(true);
+        CacheKeyUtil cacheKeyUtil = new CacheKeyUtil(cacheProperties, new Murmur3KeyHasher(), new NamespaceGeneration(cacheProperties, null));
+
+        // keyId 超过摘要长度，新key为 Murmur3，旧key为 MD5
+        CacheInvocationPlan plan = plan(KeySegment.param("user", 1), KeySegment.param("type", 3));
+        Object[] args = args(null, user);
+        CacheKeyDTO expected = baselineEntityKey("#user+#type", user);
+        CacheKeyDTO actual = cacheKeyUtil.assembleFinalEntityKey(plan, args);
+        assertEquals(expected.getIndexKey(), actual.getLegacyIndexKey());
+        assertEquals(expected.getPrimaryKey(), actual.getPrimaryKey());
+        assertNotEquals(expected.getIndexKey(), actual.getIndexKey());
+        assertTrue(actual.getIndexKey().matches(KEY_NAME + "[0-9a-f]{32}"));
+
+        // keyId 无需摘要时新旧key相同
+        CacheKeyDTO shortKey = cacheKeyUtil.assembleFinalEntityKey(plan(KeySegment.param("id", 0)), args(1L, null));
+        assertEquals(baselineEntityKey("#id", 1L).getIndexKey(), shortKey.getIndexKey());
+        assertNull(shortKey.getLegacyIndexKey());
+
+        CacheInvocationPlan cachePlan = plan(KeySegment.param("ids", 2));
+        assertEquals(baselineCacheKey("#ids", args(null, null)), cacheKeyUtil.assembleLegacyCacheKey(cachePlan, args(null, null)));
+        assertNotEquals(baselineCacheKey("#ids", args(null, null)), cacheKeyUtil.assembleFinalCacheKey(cachePlan, args(null, null)));
+    }
+
+    private void assertEntityKey(CacheKeyUtil cacheKeyUtil, String keyId, Object arg, KeySegment... segments) {
+        Object[] args = arg instanceof User ? args(null, arg) : args(arg, null);
+        CacheKeyDTO expected = baselineEntityKey(keyId, args);
+        CacheKeyDTO actual = cacheKeyUtil.assembleFinalEntityKey(plan(segments), args);
+        assertEquals(keyId, expected.getIndexKey(), actual.getIndexKey());
+        assertEquals(keyId, expected.getPrimaryKey(), actual.getPrimaryKey());
+        assertNull(keyId, actual.getLegacyIndexKey());
+    }
+
+    private void assertCacheKey(CacheKeyUtil cacheKeyUtil, String keyId, KeySegment... segments) {
+        Object[] args = args(1L, user);
+        assertEquals(keyId, baselineCacheKey(keyId, args), cacheKeyUtil.assembleFinalCacheKey(plan(segments), args));
+    }
+
+    private static CacheKeyUtil md5KeyUtil() {
+        CacheProperties cacheProperties = new CacheProperties();
+        return new CacheKeyUtil(cacheProperties, new Md5KeyHasher(), new NamespaceGeneration(cacheProperties, null));
+    }
+
+    private static CacheInvocationPlan plan(KeySegment... segments) {
+        return new CacheInvocationPlan(KEY_NAME, Arrays.asList(segments), null);
+    }
+
+    private Object[] args(Object id, Object user) {
+        return new Object[]{id, user, ids, "vip"};
+    }
+
+    private CacheKeyDTO baselineEntityKey(String keyId, Object arg) {
+        return baselineEntityKey(keyId, arg instanceof User ? args(null, arg) : args(arg, null));
+    }
+
+    /**
+     * 原 CacheKeyUtil.assembleCacheKeyId / analyzeKeyIdExp
+     */
+    private static CacheKeyDTO baselineEntityKey(String keyId, Object[] args) {
+        CacheKeyDTO cacheKeyDTO = new CacheKeyDTO();
+        StringBuilder keyIdValue = new StringBuilder();
+        for (String target : keyId.split(CacheConstant.REG_PLUS)) {
+            if (target.charAt(0) != CacheConstant.EL) {
+                keyIdValue.append(target);
+            } else {
+                target = target.substring(1);
+                String[] targetExp = target.split(CacheConstant.REG_DOT);
+                if (targetExp.length >= CacheConstant.KEY_LEN) {
+                    Object value = getField(args[ArrayUtils.indexOf(PARAMETER_NAMES, targetExp[0])], targetExp[1]);
+                    baselineAppend(cacheKeyDTO, keyIdValue, targetExp[1], value);
+                } else {
+                    Object obj = args[ArrayUtils.indexOf(PARAMETER_NAMES, target)];
+                    if (obj == null || String.class.equals(obj.getClass()) || BeanUtil.isPrimitive(obj)) {
+                        baselineAppend(cacheKeyDTO, keyIdValue, target, obj);
+                    } else {
+                        for (Field field : BeanUtil.getAllFields(obj.getClass())) {
+                            ReflectionUtils.makeAccessible(field);
+                            baselineAppend(cacheKeyDTO, keyIdValue, field.getName(), ReflectionUtils.getField(field, obj));
+                            keyIdValue.append(CacheConstant.AND);
+                        }
+                    }
+                }
+            }
+            keyIdValue.append(CacheConstant.AND);
+        }
+        if (keyIdValue.charAt(keyIdValue.length() - 1) == CacheConstant.AND) {
+            keyIdValue = new StringBuilder(keyIdValue.substring(0, keyIdValue.length() - 1));
+        }
+        if (keyIdValue.length() > CacheConstant.MD5_LEN) {
+            keyIdValue.replace(0, keyIdValue.length(), CommonUtil.getStringMD5(keyIdValue.toString()));
+        }
+        cacheKeyDTO.setIndexKey(KEY_NAME + keyIdValue);
+        return cacheKeyDTO;
+    }
+
+    private static void baselineAppend(CacheKeyDTO cacheKeyDTO, StringBuilder keyIdValue, String name, Object value) {
+        String valueStr = BeanUtil.beanToString(value);
+        keyIdValue.append(name).append(CacheConstant.ASSIGN).append(valueStr);
+        if (CacheConstant.PK.equals(name)) {
+            cacheKeyDTO.setPrimaryKey(KEY_NAME + name + CacheConstant.COLON + valueStr);
+        }
+    }
+
+    /**
+     * 原 CacheAbleAspect.assembleCacheKeyId / analyzeKeyIdExp
+     */
+    private static String baselineCacheKey(String keyId, Object[] args) {
+        StringBuilder keyIdValue = new StringBuilder();
+        for (String target : keyId.split(CacheConstant.REG_PLUS)) {
+            if (target.charAt(0) != CacheConstant.EL) {
+                keyIdValue.append(target);
+            } else {
+                String[] targetExp = target.substring(1).split(CacheConstant.REG_DOT);
+                Object obj = args[ArrayUtils.indexOf(PARAMETER_NAMES, targetExp[0])];
+                if (targetExp.length >= CacheConstant.KEY_LEN) {
+                    obj = getField(obj, targetExp[1]);
+                }
+                keyIdValue.append(BeanUtil.beanToString(obj));
+            }
+            keyIdValue.append(CacheConstant.AND);
+        }
+        if (keyIdValue.charAt(keyIdValue.length() - 1) == CacheConstant.AND) {
+            keyIdValue = new StringBuilder(keyIdValue.substring(0, keyIdValue.length() - 1));
+        }
+        return KEY_NAME + CommonUtil.getStringMD5(keyIdValue.toString());
+    }
+
+    private static Object getField(Object object, String fieldName) {
+        Field field = ReflectionUtils.findField(object.getClass(), fieldName);
+        ReflectionUtils.makeAccessible(field);
+        return ReflectionUtils.getField(field, object);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User {
+        private Long id;
+        private String name;
+        private Integer age;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode(callSuper = true)
+    public static class Admin extends User {
+        private String role;
+    }
+
+}
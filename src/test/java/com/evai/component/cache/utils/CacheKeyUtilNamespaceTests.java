@@ -0,0 +1,91 @@
+package com.evai.component.cache.utils;
+
+import com.evai.component.cache.CacheKeyDTO;
+import com.evai.component.cache.CacheProperties;
+import com.evai.component.cache.key.Md5KeyHasher;
+import com.evai.component.cache.namespace.NamespaceGeneration;
+import com.evai.component.cache.plan.CacheInvocationPlan;
+import com.evai.component.cache.plan.KeySegment;
+import com.evai.component.mybatis.BaseEntity;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author crh
+ * @date 2019-12-17
+ * @description 开启命名空间代数后，主键查询和非主键查询使用相同的主键key
+ */
+public class CacheKeyUtilNamespaceTests {
+
+    private static final String KEY_NAME = "cacheAble:user:";
+
+    private NamespaceGeneration namespaceGeneration;
+    private CacheKeyUtil cacheKeyUtil;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(anyString())).thenReturn(null);
+        when(valueOperations.increment(anyString())).thenReturn(1L);
+
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.getNamespace().setEnabled(true);
+        namespaceGeneration = new NamespaceGeneration(cacheProperties, redisTemplate);
+        cacheKeyUtil = new CacheKeyUtil(cacheProperties, new Md5KeyHasher(), namespaceGeneration);
+    }
+
+    @Test
+    public void samePrimaryKeyBeforeIncrement() {
+        assertPrimaryKey("cacheAble:user:id:1");
+    }
+
+    @Test
+    public void samePrimaryKeyAfterIncrement() {
+        assertEquals(1L, namespaceGeneration.increment(KEY_NAME));
+        assertPrimaryKey("cacheAble:user:v1:id:1");
+    }
+
+    private void assertPrimaryKey(String expected) {
+        User user = new User();
+        user.setId(1L);
+        user.setName("张三");
+
+        // 主键查询
+        CacheKeyDTO idKey = cacheKeyUtil.assembleFinalEntityKey(plan(KeySegment.param("id", 0)), new Object[]{1L});
+        assertEquals(expected, idKey.getPrimaryKey());
+        assertEquals(expected, cacheKeyUtil.assembleIdKey(KEY_NAME, 1L).getPrimaryKey());
+        assertEquals(expected, cacheKeyUtil.assemblePrimaryKey(idKey, user));
+
+        // 非主键查询，主键key由查询结果的主键值组合
+        CacheKeyDTO nameKey = cacheKeyUtil.assembleFinalEntityKey(plan(KeySegment.param("name", 0)), new Object[]{"张三"});
+        assertNull(nameKey.getPrimaryKey());
+        assertEquals(expected, cacheKeyUtil.assemblePrimaryKey(nameKey, user));
+        assertNull(cacheKeyUtil.assemblePrimaryKey(nameKey, new User()));
+    }
+
+    private static CacheInvocationPlan plan(KeySegment segment) {
+        return new CacheInvocationPlan(KEY_NAME, Collections.singletonList(segment), null);
+    }
+
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    public static class User extends BaseEntity {
+        private String name;
+    }
+
+}